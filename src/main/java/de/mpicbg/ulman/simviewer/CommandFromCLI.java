@@ -72,6 +72,9 @@ public class CommandFromCLI implements Runnable
 	    the reference must be null */
 	CommandFromFlightRecorder flightRecorder = null;
 
+	/** the rate (time points per second) at which the FlightRecording is played */
+	private float playingRate = 5.f;
+
 	/** reads the console and dispatches the commands */
 	public void run()
 	{
@@ -119,6 +122,8 @@ public class CommandFromCLI implements Runnable
 			System.out.println("A - Toggles display of the axes in the scene centre");
 			System.out.println("B - Toggles display of the scene border");
 			System.out.println("R - Resizes the scene around its current content");
+			System.out.println("r - Resizes the scene around the current FlightRecording's time point");
+			System.out.println("a - Toggles automatic resizing of the scene around its content (checked after every tick)");
 			System.out.println("I - Toggles between front/back/both/none ramp lights");
 			System.out.println("1,2 - Dims/Brightens the ramp lights");
 			System.out.println("s - Saves the current content as a screenshot image");
@@ -129,6 +134,9 @@ public class CommandFromCLI implements Runnable
 			System.out.println("W - Deletes (Wipes away) all objects (even if not displayed)");
 			System.out.println("d - Deletes old/not-recently-updated objects (even if not displayed)");
 			System.out.println("D - Toggle \"garbage collection\" of old/not-recently-updated objects");
+			System.out.println("k number - Toggles display of all objects of the given cell");
+			System.out.println("K number - Highlights all objects of the given cell (-1 for none), and reports their span");
+			System.out.println("e number - Deletes all objects of the given cell");
 			System.out.println();
 
 			System.out.println("c,C - Toggles display of the cell/general-debug points (shape)");
@@ -142,6 +150,9 @@ public class CommandFromCLI implements Runnable
 			System.out.println("O filename - Open FlightRecording saved in the given file");
 			System.out.println("7,0 - Replays the first/last time point from the current FlightRecording");
 			System.out.println("8,9 - Replays previous/next time point from the current FlightRecording");
+			System.out.println("t number - Replays the given time point from the current FlightRecording");
+			System.out.println("x - Starts/Stops playing the current FlightRecording");
+			System.out.println("3,4 - Decreases/Increases the playing rate (time points per second)");
 			break;
 		case 'o':
 			scene.reportSettings();
@@ -157,6 +168,16 @@ public class CommandFromCLI implements Runnable
 			System.out.println("Scene offset and size will be resized.");
 			scene.ResizeScene();
 			break;
+		case 'r':
+			if (scene.ResizeSceneToFlightRecording())
+				System.out.println("Scene offset and size resized after the FlightRecording.");
+			else
+				System.out.println("No FlightRecording's time point is replayed.");
+			break;
+		case 'a':
+			scene.autoFitScene ^= true;
+			System.out.println("Scene auto-fitting activated: "+scene.autoFitScene);
+			break;
 		case 'I':
 			System.out.println("Current ramp lights: "+scene.ToggleFixedLights());
 			break;
@@ -173,10 +194,12 @@ public class CommandFromCLI implements Runnable
 			break;
 		case 'W':
 			scene.removeAllObjects();
+			scene.publishChanges();
 			System.out.println("All objects removed (incl. lines and vectors)");
 			break;
 		case 'd':
 			scene.garbageCollect(1);
+			scene.publishChanges();
 			System.out.println("Garbage removed (incl. lines and vectors)");
 			break;
 		case 'D':
@@ -184,6 +207,37 @@ public class CommandFromCLI implements Runnable
 			System.out.println("Garbage collection activated: "+scene.garbageCollecting);
 			break;
 
+		case 'k':
+		case 'K':
+		case 'e':
+			try {
+				final int cellID = Integer.parseInt( console.readLine().trim() );
+				if (key == 'k')
+					System.out.println("Cell "+cellID+" displayed: "+scene.ToggleDisplayCell(cellID));
+				else if (key == 'e')
+					System.out.println("Cell "+cellID+" objects removed: "+scene.RemoveCell(cellID));
+				else
+				{
+					scene.HighlightCell(cellID);
+					final float[] min = new float[3];
+					final float[] max = new float[3];
+					if (cellID < 0)
+						System.out.println("No cell highlighted");
+					else if (scene.GetCellBoundingBox(cellID,min,max))
+						System.out.println("Cell "+cellID+" highlighted, its span: "
+						       +min[0]+"-"+max[0]+"  x  "+min[1]+"-"+max[1]+"  x  "+min[2]+"-"+max[2]);
+					else
+						System.out.println("Cell "+cellID+" highlighted, but it has no objects now");
+				}
+			}
+			catch (IOException | NumberFormatException e) {
+				System.out.println("Please, specify also the cell ID, e.g. as \""+(char)key+" 42\"");
+			}
+			catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage());
+			}
+			break;
+
 		case 'c':
 			System.out.println("Cell points displayed: "+scene.ToggleDisplayCellSpheres());
 			break;
@@ -296,6 +350,41 @@ public class CommandFromCLI implements Runnable
 			else System.out.println("FlightRecording is not available.");
 			break;
 
+		case 't':
+			if (flightRecorder != null)
+			{
+				try {
+					final String tpString = console.readLine().trim();
+					if (!flightRecorder.seekToTimepoint( Integer.parseInt(tpString) ))
+						System.out.println("No FlightRecording file is opened.");
+				}
+				catch (IOException | NumberFormatException e) {
+					System.out.println("Please, specify also the time point, e.g. as \"t 5000\"");
+				}
+			}
+			else System.out.println("FlightRecording is not available.");
+			break;
+
+		case 'x':
+			if (flightRecorder != null)
+			{
+				if (flightRecorder.isPlaying()) flightRecorder.stopPlaying();
+				else if (!flightRecorder.startPlaying(playingRate))
+					System.out.println("No FlightRecording file is opened.");
+			}
+			else System.out.println("FlightRecording is not available.");
+			break;
+		case '3':
+			playingRate = Math.max(0.8f * playingRate, 0.1f);
+			System.out.println("Playing rate is now: "+playingRate+" time points per second");
+			if (flightRecorder != null && flightRecorder.isPlaying()) flightRecorder.startPlaying(playingRate);
+			break;
+		case '4':
+			playingRate = 1.25f * playingRate;
+			System.out.println("Playing rate is now: "+playingRate+" time points per second");
+			if (flightRecorder != null && flightRecorder.isPlaying()) flightRecorder.startPlaying(playingRate);
+			break;
+
 		case 'q':
 			throw new InterruptedException("User requested exit.");
 		default:
@@ -325,26 +414,23 @@ public class CommandFromCLI implements Runnable
 			{
 				int ID = (x+10*y +1) << 17; //cell ID
 				ID++;                   //1st element of this cell
-				c.centre.x = xCentre + xStep*(x-2.0f) -2.0f;
-				c.centre.y = yCentre + yStep*(y-2.0f);
-				c.centre.z = zCentre - 1.0f;
-				c.radius.x = 3.0f;
-				c.radius.y = 3.0f;
-				c.radius.z = 3.0f;
-				c.colorRGB.y = 0.2f;
+				c.setCentre(xCentre + xStep*(x-2.0f) -2.0f,
+				            yCentre + yStep*(y-2.0f),
+				            zCentre - 1.0f);
+				c.setRadius(3.0f);
+				c.setColorRGB(1.0f,0.2f,0.2f);
 				scene.addUpdateOrRemovePoint(ID,c);
 
 				ID++;                   //2nd element of this cell
-				c.centre.x = xCentre + xStep*(x-2.0f) +2.0f;
-				c.centre.y = yCentre + yStep*(y-2.0f);
-				c.centre.z = zCentre + 1.0f;
-				c.radius.x = 3.0f;
-				c.radius.y = 3.0f;
-				c.radius.z = 3.0f;
-				c.colorRGB.y = 0.9f;
+				c.setCentre(xCentre + xStep*(x-2.0f) +2.0f,
+				            yCentre + yStep*(y-2.0f),
+				            zCentre + 1.0f);
+				c.setRadius(3.0f);
+				c.setColorRGB(1.0f,0.9f,0.2f);
 				scene.addUpdateOrRemovePoint(ID,c);
 			}
 		}
+		scene.publishChanges();
 	 }
 	}
 }
@@ -29,11 +29,14 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package de.mpicbg.ulman.simviewer;
 
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Paths;
 import java.io.IOException;
-import java.util.ListIterator;
 
+import de.mpicbg.ulman.simviewer.util.FlightRecording;
+import de.mpicbg.ulman.simviewer.util.FlightRecordingKeyframes;
+import de.mpicbg.ulman.simviewer.util.TimepointsPrefetcher;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
 import de.mpicbg.ulman.simviewer.util.NetMessagesProcessor;
 
 /**
@@ -46,6 +49,41 @@ import de.mpicbg.ulman.simviewer.util.NetMessagesProcessor;
  * which case the individual time points are separated with the "tick"
  * messages.
  *
+ * The file is a sequence of messages, each followed by a newline. Textual
+ * messages are thus simply lines of the file, the binary "v3" messages (see
+ * the BinaryProtocol) are recognized by their prefix and their length is
+ * given in their header (so they may contain any bytes, incl. newlines).
+ *
+ * The file is not loaded into the memory, it is memory-mapped and indexed
+ * by the FlightRecording class instead, so that any time point is reached
+ * directly, and replaying it costs only the reading of its own messages.
+ * The file may be also a compressed recording (made with the main() of the
+ * CompressedFlightRecordingWriter), then only the block with the replayed
+ * time point is read and inflated.
+ *
+ * Replaying the next time point just adds its messages on top of the current
+ * scene. Any other move, see seekToTimepoint(), first restores the closest
+ * preceding full-state keyframe, which are built in the background right after
+ * the recording is opened (see the FlightRecordingKeyframes) into a sidecar file
+ * (the recording's filename with ".kf" appended), and replays the (at most
+ * keyframesInterval) time points after it. The result is thus the same as if the
+ * recording was replayed from its very beginning, except for the elements not
+ * updated for more than keyframesMaxElementAge time points (which matters only
+ * when the garbage collection is off).
+ *
+ * The recording can be also played continuously, see startPlaying(): the time
+ * points are then read ahead and parsed in a background thread (TimepointsPrefetcher)
+ * and applied at the given rate (time points per second) in another thread. If
+ * the applying is late by more than one period, the time point is "dropped": it
+ * is still applied (to keep the scene exact) but not presented (no inspector
+ * panel refresh and no screenshot), the timing restarts after it, and the drops
+ * are reported. Since the dropped time points are still applied, the rate is not
+ * guaranteed by this alone; when the applying is late by more than a keyframe
+ * interval, the player therefore skips ahead instead: it restores the latest
+ * keyframe that is due and continues after it, the time points in between
+ * are counted as dropped too. Any other operation on this object stops the
+ * playing first.
+ *
  * The class's API is synchronized on this object so multiple callers may
  * operate (request to replay previous or next time point) on this object.
  *
@@ -78,17 +116,73 @@ public class CommandFromFlightRecorder
 	void open(final String FRfilename)
 	throws IOException, InterruptedException
 	{
-		nextMsgs = null;
+		stopPlaying();
+
+		if (keyframesBuilder != null)
+		{
+			keyframesBuilder.interrupt();
+			keyframesBuilder.join();
+		}
+		keyframesBuilder = null;
+		if (keyframes != null) keyframes.close();
+		keyframes = null;
+
+		if (recording != null) recording.close();
+		recording = null;
 		//NB: stays null if the consequent operations should fail
 
-		nextMsgs = Files.readAllLines(Paths.get(FRfilename)).listIterator();
+		final long time = System.currentTimeMillis();
+		recording = new FlightRecording( Paths.get(FRfilename) );
+		nextTimepoint = 0;
+
+		keyframes = new FlightRecordingKeyframes(recording, keyframesInterval, keyframesMaxElementAge,
+		                                         Paths.get(FRfilename+".kf"));
+		keyframesBuilder = new Thread(keyframes, "FlightRecording keyframes");
+		keyframesBuilder.setDaemon(true);
+		keyframesBuilder.start();
+
+		System.out.println("FlightRecorder: "+(recording.indexReused ? "Loaded index of " : "Indexed ")
+			+recording.getTimepointsCount()+" time points in "+(System.currentTimeMillis()-time)+" ms");
 	}
 
-	/** should always point just before the first message of a time point,
-	    this time point is termed as the "next time point"; that often
-	    means that this iterator should point just after some "tick" message */
+	/** the currently opened recording, or null */
 	private
-	ListIterator<String> nextMsgs = null;
+	FlightRecording recording = null;
+
+	/** the full-state snapshots of the currently opened recording, or null */
+	private
+	FlightRecordingKeyframes keyframes = null;
+
+	/** the thread that is building the keyframes */
+	private
+	Thread keyframesBuilder = null;
+
+	/** a keyframe is built after every this number of time points,
+	    the change takes effect with the next opened recording */
+	public
+	int keyframesInterval = 50;
+
+	/** the keyframes hold only the elements updated at most this number of time points
+	    before them, so the older ones are not restored if the garbage collection is off,
+	    the change takes effect with the next opened recording */
+	public
+	int keyframesMaxElementAge = 1000;
+
+	/** the time point that is to be replayed with the sendNextTimepointMessages(),
+	    this time point is termed as the "next time point"; that often means that
+	    the previous time point (nextTimepoint-1) is the one currently displayed */
+	private
+	int nextTimepoint = 0;
+
+	/** fills the min and max corners of the bounding box of the elements of the
+	    time point that was replayed last (as stored in the recording's index),
+	    returns false if there is no such time point or it has no elements */
+	public synchronized
+	boolean getReplayedTimepointBoundingBox(final float[] min, final float[] max)
+	{
+		if (recording == null || nextTimepoint == 0) return false;
+		return recording.getTimepointBoundingBox(nextTimepoint-1, min,max);
+	}
 
 	//--------------------------------------------
 
@@ -99,18 +193,27 @@ public class CommandFromFlightRecorder
 	boolean sendNextTimepointMessages()
 	throws InterruptedException
 	{
-		if (nextMsgs == null) return false; //stop if the no file is opened
+		if (recording == null) return false; //stop if the no file is opened
+		stopPlaying();
 
-		//advance and "transmit" the messages up to the next tick messages
-		boolean readNextMsg = true;
-		while (nextMsgs.hasNext() && readNextMsg)
-		{
-			final String msg = nextMsgs.next();
-			netMsgProcessor.processMsg(msg);
+		//nothing to "transmit" after the last time point
+		if (nextTimepoint >= recording.getTimepointsCount()) return true;
 
-			if (msg.startsWith("v1 tick")) readNextMsg = false;
+		//"transmit" the messages up to (and including) the next tick message
+		final ByteBuffer tpData;
+		try {
+			tpData = recording.mapTimepoint(nextTimepoint);
 		}
+		catch (IOException e) {
+			System.out.println("FlightRecorder: Cannot read time point "+nextTimepoint+": "+e.getMessage());
+			return false;
+		}
+
+		ByteBuffer msg;
+		while ((msg = FlightRecording.nextMessage(tpData)) != null)
+			netMsgProcessor.processMsg(msg);
 
+		++nextTimepoint;
 		return true;
 	}
 
@@ -121,20 +224,11 @@ public class CommandFromFlightRecorder
 	boolean sendPrevTimepointMessages()
 	throws InterruptedException
 	{
-		if (nextMsgs == null) return false; //stop if the no file is opened
-
-		//skip (very likely) over the "tick" message of the currently-replayed time point
-		if (nextMsgs.hasPrevious()) nextMsgs.previous();
-
-		//list back until "tick" message is found -- that was over the currently-replayed point
-		while (nextMsgs.hasPrevious() && !nextMsgs.previous().startsWith("v1 tick"));
+		if (recording == null) return false; //stop if the no file is opened
+		stopPlaying();
 
-		//list back until "tick" message is found -- over the wanted time point,
-		//and move forward over it (to satisfy the nextMsgs's "invariant")
-		while (nextMsgs.hasPrevious() && !nextMsgs.previous().startsWith("v1 tick"));
-		if (nextMsgs.hasNext()) nextMsgs.next();
-
-		return sendNextTimepointMessages();
+		//skip over the currently-replayed time point to the one before it
+		return seekToTimepoint( Math.max(nextTimepoint-2, 0) );
 	}
 
 	/** similar to the sendNextTimepointMessages() except that it acts on the very
@@ -144,11 +238,10 @@ public class CommandFromFlightRecorder
 	boolean rewindAndSendFirstTimepoint()
 	throws InterruptedException
 	{
-		if (nextMsgs == null) return false; //stop if the no file is opened
+		if (recording == null) return false; //stop if the no file is opened
+		stopPlaying();
 
-		//reach the very beginning and then replay the "next" time point
-		while (nextMsgs.hasPrevious()) nextMsgs.previous();
-		return sendNextTimepointMessages();
+		return seekToTimepoint(0);
 	}
 
 	/** similar to the sendNextTimepointMessages() except that it acts on the very
@@ -158,18 +251,242 @@ public class CommandFromFlightRecorder
 	boolean rewindAndSendLastTimepoint()
 	throws InterruptedException
 	{
-		if (nextMsgs == null) return false; //stop if the no file is opened
+		if (recording == null) return false; //stop if the no file is opened
+		stopPlaying();
+
+		return seekToTimepoint( recording.getTimepointsCount()-1 );
+	}
+
+	/** makes the scene show exactly the given time point (as if the recording was
+	    replayed from its very beginning), the time point is clamped to the available
+	    ones; it costs at most one keyframe restore plus replaying of keyframesInterval
+	    time points; returns true if the operation was successful */
+	public synchronized
+	boolean seekToTimepoint(int tp)
+	throws InterruptedException
+	{
+		if (recording == null) return false; //stop if the no file is opened
+		stopPlaying();
+		if (recording.getTimepointsCount() == 0) return true;
+
+		tp = Math.max( Math.min(tp, recording.getTimepointsCount()-1), 0 );
+
+		//start from the closest full state before (or at) the wanted time point...
+		final FlightRecordingKeyframes.Keyframe kf = keyframes.getKeyframeAtOrBefore(tp);
+		netMsgProcessor.restoreKeyframe(kf);
+		nextTimepoint = kf != null ? kf.timepoint+1 : 0;
+
+		//...and replay the rest
+		while (nextTimepoint <= tp)
+			if (!sendNextTimepointMessages()) return false;
+
+		return true;
+	}
+
+	//--------------------------------------------
+
+	/** starts playing the recording from the next time point at the given
+	    rate (time points per second), reading ahead 'prefetchDepth' time points;
+	    returns false if no file is opened */
+	public synchronized
+	boolean startPlaying(final float timepointsPerSecond)
+	throws InterruptedException
+	{
+		if (recording == null) return false; //stop if the no file is opened
+		stopPlaying();
 
-		//reach the very end and then traverse back over the tp to be sent (the last tp)
-		while (nextMsgs.hasNext()) nextMsgs.next();
+		prefetcher = new TimepointsPrefetcher(recording, netMsgProcessor, nextTimepoint, prefetchDepth);
+		prefetcherThread = new Thread(prefetcher, "FlightRecording prefetcher");
+		prefetcherThread.setDaemon(true);
 
-		//skip (very likely) over the last "tick" message (if present...)
-		if (nextMsgs.hasPrevious()) nextMsgs.previous();
+		player = new Player(timepointsPerSecond, nextTimepoint);
+		playerThread = new Thread(player, "FlightRecording player");
+		playerThread.setDaemon(true);
 
-		//list back until "tick" message is found, and move forward over it
-		while (nextMsgs.hasPrevious() && !nextMsgs.previous().startsWith("v1 tick"));
-		if (nextMsgs.hasNext()) nextMsgs.next();
+		prefetcherThread.start();
+		playerThread.start();
+		System.out.println("FlightRecorder: Playing from time point "+nextTimepoint+" at "+timepointsPerSecond+" tps");
+		return true;
+	}
 
-		return sendNextTimepointMessages();
+	/** stops playing (if it is playing) and leaves the scene showing
+	    the time point that was applied last */
+	public synchronized
+	void stopPlaying()
+	throws InterruptedException
+	{
+		if (playerThread == null) return;
+
+		//NB: neither of the threads ever locks this object, so we can wait for them here
+		playerThread.interrupt();
+		prefetcherThread.interrupt();
+		playerThread.join();
+		prefetcherThread.join();
+
+		nextTimepoint = player.nextTimepoint;
+		System.out.println("FlightRecorder: Stopped playing at time point "+(nextTimepoint-1)
+			+", dropped "+player.droppedTimepoints+" time points in total");
+
+		playerThread = null;
+		player = null;
+		prefetcherThread = null;
+		prefetcher = null;
+	}
+
+	/** returns true if the recording is being played */
+	public synchronized
+	boolean isPlaying()
+	{
+		return playerThread != null && playerThread.isAlive();
+	}
+
+	/** how many time points to read ahead when playing,
+	    the change takes effect with the next startPlaying() */
+	public
+	int prefetchDepth = 10;
+
+	private TimepointsPrefetcher prefetcher = null;
+	private Thread prefetcherThread = null;
+	private Player player = null;
+	private Thread playerThread = null;
+
+	/** applies the prefetched time points at the given rate, it never locks
+	    the CommandFromFlightRecorder object, the stopPlaying() collects its results */
+	private class Player implements Runnable
+	{
+		Player(final float timepointsPerSecond, final int firstTp)
+		{
+			period = (long)(1e9 / timepointsPerSecond);
+			nextTimepoint = firstTp;
+		}
+
+		/** the time between two time points, in ns */
+		final long period;
+
+		/** the time point that would be applied next */
+		volatile int nextTimepoint;
+
+		/** how many time points were not presented because the player was late */
+		volatile long droppedTimepoints = 0;
+
+		/** if the time point is so late that a keyframe that is due already can be
+		    restored instead, restores it and makes the prefetcher continue after it;
+		    returns how many time points were thus skipped over, or 0 if none */
+		int skipAheadIfVeryLate(final TimepointsPrefetcher.Timepoint tp, final long lateness)
+		throws InterruptedException
+		{
+			final FlightRecordingKeyframes kfs = keyframes;
+			if (kfs == null || lateness <= kfs.interval * period) return 0;
+
+			final int dueTp = (int)Math.min(tp.timepoint + lateness/period, recording.getTimepointsCount()-1);
+			final FlightRecordingKeyframes.Keyframe kf = kfs.getKeyframeAtOrBefore(dueTp);
+			if (kf == null || kf.timepoint < tp.timepoint) return 0;
+			if (!prefetcher.skipTo(kf.timepoint+1)) return 0;
+
+			try {
+				netMsgProcessor.restoreKeyframe(kf);
+			}
+			finally {
+				//NB: even if interrupted, it is the keyframe that is in the scene
+				nextTimepoint = kf.timepoint+1;
+			}
+			return kf.timepoint+1 - tp.timepoint;
+		}
+
+		@Override
+		public void run()
+		{
+			long deadline = System.nanoTime();
+			long lastReportTime = deadline;
+			long droppedSinceReport = 0, stallsSinceReport = 0;
+			boolean started = false;
+
+			try {
+				while (true)
+				{
+					final TimepointsPrefetcher.Timepoint tp = prefetcher.poll();
+					if (tp == null)
+					{
+						if (prefetcher.isFinished()) break;
+
+						//the reading ahead is behind, we have to wait for it
+						//NB: waiting for the very first time point is not a problem,
+						//and neither is waiting for a time point that is not yet due
+						Thread.sleep(1);
+						final long now = System.nanoTime();
+						if (now > deadline)
+						{
+							if (started) ++stallsSinceReport;
+							deadline = now;
+						}
+						continue;
+					}
+
+					//skipping: a time point that comes later than a keyframe interval after
+					//its deadline is not applied at all, the due keyframe is restored instead
+					final long now = System.nanoTime();
+					final int skipped = started ? skipAheadIfVeryLate(tp, now - deadline) : 0;
+					if (skipped > 0)
+					{
+						prefetcher.release(tp);
+						droppedTimepoints  += skipped;
+						droppedSinceReport += skipped;
+						deadline = System.nanoTime();
+						continue;
+					}
+
+					//defined dropping: a time point that comes later than one period
+					//after its deadline is applied, but not presented, and the schedule
+					//then restarts from the time this (dropped) time point was applied
+					final boolean present = now - deadline <= period;
+					if (present)
+					{
+						final long wait = deadline - now;
+						if (wait > 0) Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+					}
+					else
+					{
+						++droppedTimepoints;
+						++droppedSinceReport;
+					}
+
+					try {
+						for (ElementsBatch batch : tp.batches)
+							netMsgProcessor.applyBatch(batch, present);
+					}
+					finally {
+						//NB: even if interrupted, the elements of this time point are in the scene
+						nextTimepoint = tp.timepoint+1;
+					}
+					started = true;
+					prefetcher.release(tp);
+					deadline = present ? deadline + period : System.nanoTime();
+
+					//report problems at most once per second
+					if (now - lastReportTime > 1000000000L)
+					{
+						if (droppedSinceReport > 0)
+							System.out.println("FlightRecorder: Cannot keep up, dropped "+droppedSinceReport+" time points");
+						if (stallsSinceReport > 0)
+							System.out.println("FlightRecorder: Reading ahead cannot keep up, waited "+stallsSinceReport+" ms");
+						droppedSinceReport = stallsSinceReport = 0;
+						lastReportTime = now;
+					}
+				}
+				System.out.println("FlightRecorder: Reached the end of the recording");
+			}
+			catch (InterruptedException e) {
+				//stopped by the stopPlaying(), that's fine
+			}
+		}
+	}
+
+	//--------------------------------------------
+
+	/** returns the number of time points in the opened recording, or 0 */
+	public synchronized
+	int getTimepointsCount()
+	{
+		return recording != null ? recording.getTimepointsCount() : 0;
 	}
 }
@@ -29,11 +29,18 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package de.mpicbg.ulman.simviewer;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import org.zeromq.SocketType;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQException;
 
 import de.mpicbg.ulman.simviewer.util.NetMessagesProcessor;
+import de.mpicbg.ulman.simviewer.util.MessagesPipeline;
+import de.mpicbg.ulman.simviewer.util.MessageTokenizer;
+import de.mpicbg.ulman.simviewer.util.ProducersTickMerger;
+import de.mpicbg.ulman.simviewer.util.StreamRecorder;
 
 /**
  * Operates on a network socket and listens for incoming messages.
@@ -44,6 +51,24 @@ import de.mpicbg.ulman.simviewer.util.NetMessagesProcessor;
  * the relevant messages (including the "tick" messages to denote between
  * individual simulated time points).
  *
+ * If constructed with the MessagesPipeline, the received messages are only
+ * parsed in this thread and handed over to the pipeline's thread to be applied
+ * into the displayed scene, otherwise they are processed here entirely.
+ *
+ * By default, a PAIR socket is used which accepts exactly one simulator (one
+ * producer). If constructed with the expected number of producers, a ROUTER
+ * socket is used instead (possibly bound to several ports), which accepts any
+ * number of concurrent producers (these must use DEALER sockets). The producers
+ * are told apart by their identities, and their "tick" messages are merged with
+ * the ProducersTickMerger: only when all of them have sent their "tick", one
+ * "tick" message is passed on to advance the displayed time point. A producer
+ * that is leaving shall send the "v1 bye" message, after which its "ticks"
+ * are no longer waited for.
+ *
+ * If the recorder is set (before this is started), every message that is passed
+ * on to be displayed is also handed over to the StreamRecorder to be saved into
+ * a FlightRecording file, the recorder never makes the receiving wait.
+ *
  * This file was created and is being developed by Vladimir Ulman, 2018.
  */
 public class CommandFromNetwork implements Runnable
@@ -53,8 +78,7 @@ public class CommandFromNetwork implements Runnable
 	    'commander' to the displayed window */
 	public CommandFromNetwork(final NetMessagesProcessor nmp)
 	{
-		netMsgProcessor = nmp;
-		listenOnPort = 8765;
+		this(nmp,null, new int[] {8765}, null);
 	}
 
 	/** constructor to create connection (listening at the given port),
@@ -62,48 +86,145 @@ public class CommandFromNetwork implements Runnable
 	    'commander' to the displayed window */
 	public CommandFromNetwork(final NetMessagesProcessor nmp, final int _port)
 	{
+		this(nmp,null, new int[] {_port}, null);
+	}
+
+	/** constructor to create connection (listening at the given port),
+	    and link it to a shared MessagesPipeline (that applies the parsed
+	    messages into the displayed window in its own thread) */
+	public CommandFromNetwork(final MessagesPipeline _pipeline, final int _port)
+	{
+		this(null,_pipeline, new int[] {_port}, null);
+	}
+
+	/** constructor to create multi-producer connection (listening at all
+	    the given ports), and link it to a shared NetMessagesProcessor;
+	    see the ProducersTickMerger for the meaning of the expectedProducers */
+	public CommandFromNetwork(final NetMessagesProcessor nmp,
+	                          final int[] _ports, final int expectedProducers)
+	{
+		this(nmp,null, _ports, new ProducersTickMerger(expectedProducers));
+	}
+
+	/** constructor to create multi-producer connection (listening at all
+	    the given ports), and link it to a shared MessagesPipeline;
+	    see the ProducersTickMerger for the meaning of the expectedProducers */
+	public CommandFromNetwork(final MessagesPipeline _pipeline,
+	                          final int[] _ports, final int expectedProducers)
+	{
+		this(null,_pipeline, _ports, new ProducersTickMerger(expectedProducers));
+	}
+
+	private CommandFromNetwork(final NetMessagesProcessor nmp, final MessagesPipeline _pipeline,
+	                           final int[] _ports, final ProducersTickMerger _tickMerger)
+	{
+		if (_ports.length == 0)
+			throw new IllegalArgumentException("Network listener: No port to listen at.");
+		if (_tickMerger == null && _ports.length > 1)
+			throw new IllegalArgumentException("Network listener: Single-producer mode can listen at one port only.");
+
 		netMsgProcessor = nmp;
-		listenOnPort = _port;
+		pipeline = _pipeline;
+		listenOnPorts = _ports.clone();
+		tickMerger = _tickMerger;
 	}
 
-	/** reference on the messages processor */
+	/** reference on the messages processor, or null if the pipeline is used */
 	private
 	final NetMessagesProcessor netMsgProcessor;
 
-	/** the port to listen at */
+	/** reference on the messages pipeline, or null if the processor is used */
 	private
-	final int listenOnPort;
+	final MessagesPipeline pipeline;
+
+	/** the port(s) to listen at */
+	private
+	final int[] listenOnPorts;
+
+	/** the merger of "tick" messages from multiple producers,
+	    or null in the (default) single-producer mode */
+	private
+	final ProducersTickMerger tickMerger;
+
+	/** reference on the recorder of the received messages, or null if not recording */
+	public
+	StreamRecorder recorder = null;
 
 	//--------------------------------------------
 
+	/** the "tick" message passed on for the rounds completed by a producer's goodbye */
+	static final byte[] MERGED_TICK_MSG = "v1 tick after a producer has left".getBytes(StandardCharsets.ISO_8859_1);
+
+	/** how long (in ms) to wait for a message before checking for being interrupted;
+	    this is not a delay: an arriving message ends the waiting immediately */
+	static final int POLL_TIMEOUT_MS = 250;
+
 	/** listens on the network and dispatches the commands */
 	public void run()
 	{
 		//start receiver in an infinite loop
-		System.out.println("Network listener: Started on port "+listenOnPort+".");
+		System.out.println("Network listener: Started on port(s) "+portsAsString()
+			+(tickMerger != null ? " for multiple producers." : "."));
 
 		//init the communication side
 		final ZMQ.Context zmqContext = ZMQ.context(1);
 		ZMQ.Socket socket = null;
+		ZMQ.Poller poller = null;
 		try {
-			socket = zmqContext.socket(SocketType.PAIR);
+			socket = zmqContext.socket(tickMerger != null ? SocketType.ROUTER : SocketType.PAIR);
 			if (socket == null)
 				throw new Exception("Network listener: Cannot obtain local socket.");
 
-			//port to listen for incoming data
+			//port(s) to listen for incoming data
 			//socket.subscribe(new byte[] {});
-			socket.bind("tcp://*:"+listenOnPort);
+			for (int port : listenOnPorts) socket.bind("tcp://*:"+port);
+
+			//we get woken up as soon as there is something to read
+			poller = zmqContext.poller(1);
+			poller.register(socket, ZMQ.Poller.POLLIN);
 
 			//the incoming data buffer
-			String msg;
+			//NB: we keep the raw bytes, the NetMessagesProcessor parses directly from them
+			byte[] msg;
 
 			while (true)
 			{
-				msg = socket.recvStr(ZMQ.NOBLOCK);
-				if (msg != null)
-					netMsgProcessor.processMsg(msg);
-				else
-					Thread.sleep(1000);
+				if (poller.poll(POLL_TIMEOUT_MS) > 0 && poller.pollin(0))
+				{
+					//drain everything that has arrived meanwhile
+					while ((msg = socket.recv(ZMQ.NOBLOCK)) != null)
+					{
+						if (tickMerger == null) dispatch(msg);
+						else
+						{
+							//ROUTER: the first frame is the identity of the producer,
+							//the message itself follows (multipart msgs arrive atomically)
+							final byte[] producer = msg;
+							if (!socket.hasReceiveMore()) continue;
+							msg = socket.recv();
+
+							if (MessageTokenizer.startsWith(ByteBuffer.wrap(msg),"v1 tick"))
+							{
+								if (tickMerger.tickFrom(producer)) dispatch(msg);
+							}
+							else
+							if (MessageTokenizer.startsWith(ByteBuffer.wrap(msg),"v1 bye"))
+							{
+								for (int t = tickMerger.unregisterProducer(producer); t > 0; --t)
+									dispatch(MERGED_TICK_MSG.clone());
+							}
+							else
+							{
+								tickMerger.registerProducer(producer);
+								dispatch(msg);
+							}
+						}
+					}
+				}
+
+				//NB: the poll() does not throw on interrupt, so we check it explicitly
+				if (Thread.interrupted())
+					throw new InterruptedException("while waiting for messages");
 			}
 		}
 		catch (ZMQException e) {
@@ -117,9 +238,10 @@ public class CommandFromNetwork implements Runnable
 			e.printStackTrace();
 		}
 		finally {
+			if (poller != null) poller.close();
 			if (socket != null)
 			{
-				socket.unbind("tcp://*:8765");
+				for (int port : listenOnPorts) socket.unbind("tcp://*:"+port);
 				socket.close();
 			}
 			//zmqContext.close();
@@ -128,4 +250,21 @@ public class CommandFromNetwork implements Runnable
 			System.out.println("Network listener: Stopped.");
 		}
 	}
+
+	private
+	void dispatch(final byte[] msg)
+	throws InterruptedException
+	{
+		if (recorder != null) recorder.offer(msg);
+		if (pipeline != null) pipeline.submit(msg);
+		else netMsgProcessor.processMsg(msg);
+	}
+
+	private
+	String portsAsString()
+	{
+		final StringBuilder sb = new StringBuilder().append(listenOnPorts[0]);
+		for (int i = 1; i < listenOnPorts.length; ++i) sb.append(',').append(listenOnPorts[i]);
+		return sb.toString();
+	}
 }
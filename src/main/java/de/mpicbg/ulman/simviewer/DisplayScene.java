@@ -34,15 +34,22 @@ import graphics.scenery.*;
 import org.scijava.ui.behaviour.ClickBehaviour;
 import sc.iview.SciView;
 import java.io.PrintStream;
-import java.util.Map;
-import java.util.HashMap;
+import java.util.function.IntConsumer;
 import de.mpicbg.ulman.simviewer.elements.Point;
 import de.mpicbg.ulman.simviewer.elements.Line;
 import de.mpicbg.ulman.simviewer.elements.Vector;
 import de.mpicbg.ulman.simviewer.elements.VectorSH;
+import de.mpicbg.ulman.simviewer.elements.Arrow;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
+import de.mpicbg.ulman.simviewer.util.ElementsStore;
+import de.mpicbg.ulman.simviewer.util.IntObjectMap;
 import de.mpicbg.ulman.simviewer.util.Palette;
+import de.mpicbg.ulman.simviewer.util.ParallelRanges;
 import de.mpicbg.ulman.simviewer.util.SceneAxesData;
 import de.mpicbg.ulman.simviewer.util.SceneBorderData;
+import de.mpicbg.ulman.simviewer.util.SpatialGrid;
+import de.mpicbg.ulman.simviewer.util.MessagesPipeline;
+import de.mpicbg.ulman.simviewer.util.StreamRecorder;
 
 /**
  * Adapted from TexturedCubeJavaExample.java from the scenery project,
@@ -65,6 +72,11 @@ public class DisplayScene
 		sceneSize    = sSize.clone();
 		this.sciView = sciView;
 
+		//init the spatial indices of the elements over the scene
+		pointsStore.setGrid(  new SpatialGrid(pointsStore,  sceneOffset,sceneSize, GRID_RESOLUTION) );
+		linesStore.setGrid(   new SpatialGrid(linesStore,   sceneOffset,sceneSize, GRID_RESOLUTION) );
+		vectorsStore.setGrid( new SpatialGrid(vectorsStore, sceneOffset,sceneSize, GRID_RESOLUTION) );
+
 		//the overall down scaling of the displayed objects such that moving around
 		//the scene with SciView is vivid (move step size is fixed in SciView), at
 		//the same time we want the objects and distances to be defined with our
@@ -145,6 +157,13 @@ public class DisplayScene
 		return new Cone(vec_headToShaftWidthRatio * 0.3f, vec_headLengthRatio, 4, new Vector3f(0,1,0));
 	}
 
+	/** the vector as one Mesh (shaft and head merged), see the Arrow */
+	protected
+	Arrow factoryForArrows()
+	{
+		return new Arrow(0.3f, vec_headToShaftWidthRatio * 0.3f, vec_headLengthRatio, 4);
+	}
+
 	final float vec_headLengthRatio = 0.2f;        //relative scale (0,1)
 	final float vec_headToShaftWidthRatio = 3.0f;  //absolute value/width
 	//----------------------------------------------------------------------------
@@ -218,41 +237,138 @@ public class DisplayScene
 		if (relativeMargin.length != sceneSize.length)
 			throw new RuntimeException("Scene marging is of incompatible dimension.");
 
+		final float[] min = new float[3];
+		final float[] max = new float[3];
+		if (!getContentBoundingBox(min,max))
+		{
+			System.out.println("No elements to resize the scene around.");
+			return;
+		}
+
+		ResizeSceneToSpan(min, max, relativeMargin);
+	}
+
+	/** fills the min and max corners with the AABB of all registered elements
+	    (Points, Lines, Vectors...), returns false if there are none; the stores
+	    of the elements maintain their AABBs as the elements are changed, so this
+	    is typically cheap (unless an extreme element has moved inwards or left) */
+	public
+	boolean getContentBoundingBox(final float[] min, final float[] max)
+	{
 		//none of the get...BoundingBox() was working for me, so we do it ourselves
 		//final OrientedBoundingBox box = scene.getMaximumBoundingBox();
-		//
-		//scan over all registered elements (Points, Lines, Vectors...) and determine the AABB
-		final Vector3f min = new Vector3f(+99999999999.f);
-		final Vector3f max = new Vector3f(-99999999999.f);
-		final Vector3f tmp = new Vector3f();
-		for (Point p : pointNodes.values())
+		for (int d = 0; d < 3; ++d)
 		{
-			//NB: radius should be non-negative
-			updateMin(min, tmp.set(p.centre).sub(p.radius));
-			updateMax(max, tmp.set(p.centre).add(p.radius));
+			min[d] = Float.POSITIVE_INFINITY;
+			max[d] = Float.NEGATIVE_INFINITY;
 		}
-		for (Line l : lineNodes.values())
+
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		//NB: no short-circuiting, all stores must contribute
+		return pointsStore.extendBoundingBox(min,max)
+		     | linesStore.extendBoundingBox(min,max)
+		     | vectorsStore.extendBoundingBox(min,max);
+	 }
+	}
+
+	/** flag for the tick handling to resize the scene whenever its content
+	    no longer fits into the scene, or occupies much less than the scene */
+	public boolean autoFitScene = false;
+
+	/** the auto-fitting refits the scene when its content spans less than this
+	    fraction of the scene along some axis, after the refit the content spans
+	    more than 2/3 of it -- the gap is the hysteresis band of the auto-fitting */
+	static final float AUTOFIT_SHRINK_RATIO = 0.4f;
+
+	/** the content is given this relative margin when the scene is auto-fitted around it */
+	static final float AUTOFIT_MARGIN = 0.1f;
+
+	/** the content is considered to span at least this absolute size, and at least
+	    this fraction of its largest span, along every axis when auto-fitting */
+	static final float AUTOFIT_MIN_SIZE = 1.f;
+	static final float AUTOFIT_MIN_SIZE_RATIO = 0.1f;
+
+	/** resizes the scene around its content (plus AUTOFIT_MARGIN) if the content is
+	    (partially) outside the scene or if it spans less than AUTOFIT_SHRINK_RATIO of
+	    the scene along some axis; the new bounds are rounded outwards (to 1/8 of the
+	    size, rounded down to a power of two) and the scene is rebuilt only if they
+	    differ from the current ones; this is to be called after every tick, but not
+	    while holding the lockOnChangingSceneContent (not to hold it during the rebuild) */
+	public
+	void autoFitSceneIfNeeded()
+	{
+		final float[] min = new float[3];
+		final float[] max = new float[3];
+		if (!getContentBoundingBox(min,max)) return;
+
+		float largestSpan = 0;
+		for (int d = 0; d < 3; ++d) largestSpan = Math.max(largestSpan, max[d]-min[d]);
+		final float minSpan = Math.max(AUTOFIT_MIN_SIZE, AUTOFIT_MIN_SIZE_RATIO*largestSpan);
+
+		boolean fits = true;
+		for (int d = 0; d < 3; ++d)
 		{
-			updateMin(min, tmp.set(l.base));
-			updateMin(min, tmp.set(l.base).add(l.vector));
-			updateMax(max, tmp.set(l.base));
-			updateMax(max, tmp.set(l.base).add(l.vector));
+			//flat (or single-element) content is widened around its centre
+			if (max[d]-min[d] < minSpan)
+			{
+				final float centre = 0.5f*(min[d]+max[d]);
+				min[d] = centre - 0.5f*minSpan;
+				max[d] = centre + 0.5f*minSpan;
+			}
+
+			if (min[d] < sceneOffset[d] || max[d] > sceneOffset[d]+sceneSize[d]) fits = false;
+			if (max[d]-min[d] < AUTOFIT_SHRINK_RATIO*sceneSize[d]) fits = false;
 		}
-		for (VectorSH v : vectorNodes.values())
+		if (fits) return;
+
+		final float[] offset = new float[3];
+		final float[] size   = new float[3];
+		boolean changed = false;
+		for (int d = 0; d < 3; ++d)
 		{
-			updateMin(min, tmp.set(v.base));
-			updateMin(min, tmp.set(v.base).add(v.vector));
-			updateMax(max, tmp.set(v.base));
-			updateMax(max, tmp.set(v.base).add(v.vector));
+			final float margin = AUTOFIT_MARGIN * (max[d]-min[d]);
+			final float lo = min[d] - margin;
+			final float hi = max[d] + margin;
+
+			final float step = Math.scalb(1.f, Math.getExponent((hi-lo)/8.f));
+			offset[d] = step * (float)Math.floor(lo/step);
+			size[d]   = step * (float)Math.ceil(hi/step) - offset[d];
+			if (offset[d] != sceneOffset[d] || size[d] != sceneSize[d]) changed = true;
 		}
 
-		sceneOffset[0] = min.x;
-		sceneOffset[1] = min.y;
-		sceneOffset[2] = min.z;
+		if (changed) ResizeScene(offset, size);
+	}
+
+	/** resets the scene offset and size to the content of the time point that was
+	    replayed last from the FlightRecording plus 10 % relative margin, the content's
+	    span is taken from the recording's index (and not from the scene's elements);
+	    returns false (and does nothing) if the span is not available */
+	public
+	boolean ResizeSceneToFlightRecording()
+	{
+		final float[] min = new float[3];
+		final float[] max = new float[3];
+		if (flightRecorder == null || !flightRecorder.getReplayedTimepointBoundingBox(min,max)) return false;
+
+		ResizeSceneToSpan(min,max, 0.1f, 0.1f, 0.1f);
+		return true;
+	}
+
+	/** resets the scene offset and size to the given span (min and max corners)
+	    plus given relative margin, and rebuilds and repositions the display axes
+	    (orientation compass), scene border and lights */
+	public
+	void ResizeSceneToSpan(final float[] min, final float[] max, final float... relativeMargin)
+	{
+		if (relativeMargin.length != sceneSize.length)
+			throw new RuntimeException("Scene marging is of incompatible dimension.");
 
-		sceneSize[0] = max.x;
-		sceneSize[1] = max.y;
-		sceneSize[2] = max.z;
+		for (int d = 0; d < 3; ++d)
+		{
+			sceneOffset[d] = min[d];
+			sceneSize[d]   = max[d];
+		}
 
 		System.out.println("detected span: "
 		       +sceneOffset[0]+"-"+sceneSize[0]+"  x  "
@@ -269,19 +385,6 @@ public class DisplayScene
 		this.ResizeScene(sceneOffset, sceneSize);
 	}
 
-	private void updateMin(final Vector3f min, final Vector3f pos)
-	{
-		min.x = Math.min( min.x,pos.x );
-		min.y = Math.min( min.y,pos.y );
-		min.z = Math.min( min.z,pos.z );
-	}
-	private void updateMax(final Vector3f max, final Vector3f pos)
-	{
-		max.x = Math.max( max.x,pos.x );
-		max.y = Math.max( max.y,pos.y );
-		max.z = Math.max( max.z,pos.z );
-	}
-
 	/** resets the scene offset and size to the one given, and rebuilds and repositions
 	    the display axes (orientation compass), scene border and lights */
 	public
@@ -299,6 +402,13 @@ public class DisplayScene
 			sceneSize[d]   = sSize[d];
 		}
 
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		pointsStore.getGrid().reshape(sceneOffset,sceneSize);
+		linesStore.getGrid().reshape(sceneOffset,sceneSize);
+		vectorsStore.getGrid().reshape(sceneOffset,sceneSize);
+	 }
+
 		adaptSceneBBoxAndCentreNode();
 		scene.setNeedsUpdate(true);
 
@@ -695,9 +805,27 @@ public class DisplayScene
 	{
 	 synchronized (lockOnChangingSceneContent)
 	 {
+		publishChanges();
 		++tickCounter;
 	 }
 	}
+
+	public
+	int getTickCounter()
+	{
+		return tickCounter;
+	}
+
+	/** sets the tick counter, which is used to mark the elements as they are
+	    updated, e.g. to restore elements with their original "age" */
+	public
+	void setTickCounter(final int tick)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		tickCounter = tick;
+	 }
+	}
 	//----------------------------------------------------------------------------
 
 
@@ -710,11 +838,79 @@ public class DisplayScene
 	public final Object lockOnChangingSceneContent = new Object();
 
 	/** these points are registered with the display, but not necessarily always visible */
-	final Map<Integer,Point> pointNodes = new HashMap<>();
+	final IntObjectMap<Point> pointNodes = new IntObjectMap<>(1024);
 	/** these lines are registered with the display, but not necessarily always visible */
-	final Map<Integer,Line> lineNodes = new HashMap<>();
+	final IntObjectMap<Line> lineNodes = new IntObjectMap<>(1024);
 	/** these vectors are registered with the display, but not necessarily always visible */
-	final Map<Integer,VectorSH> vectorNodes = new HashMap<>();
+	final IntObjectMap<VectorSH> vectorNodes = new IntObjectMap<>(1024);
+
+	/** the data of the registered elements, the objects in the maps above are only views on them */
+	final ElementsStore pointsStore  = new ElementsStore(ElementsBatch.Type.POINTS,  1024);
+	final ElementsStore linesStore   = new ElementsStore(ElementsBatch.Type.LINES,   1024);
+	final ElementsStore vectorsStore = new ElementsStore(ElementsBatch.Type.VECTORS, 1024);
+
+	/** the number of the spatial grid cells along the longest side of the scene */
+	static final int GRID_RESOLUTION = 32;
+
+	/** aux (to prevent re-allocations) vectors to read elements' color and direction,
+	    use only within synchronized (lockOnChangingSceneContent) */
+	final Vector3f auxColor = new Vector3f();
+	final Vector3f auxDir   = new Vector3f();
+
+
+	/** reports IDs of all elements (points, lines, vectors) whose position (the centre
+	    or the base) is within the box given with its min and max corners, and returns
+	    their number; this visits only the elements near the box */
+	public
+	int FindElementsInBox(final float[] min, final float[] max, final IntConsumer IDsConsumer)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		return pointsStore.getGrid().findInBox(min,max, s -> IDsConsumer.accept(pointsStore.IDs[s]))
+		     + linesStore.getGrid().findInBox(min,max, s -> IDsConsumer.accept(linesStore.IDs[s]))
+		     + vectorsStore.getGrid().findInBox(min,max, s -> IDsConsumer.accept(vectorsStore.IDs[s]));
+	 }
+	}
+
+	/** reports IDs of all elements (points, lines, vectors) whose position (the centre
+	    or the base) is not further than 'radius' from the centre, and returns their
+	    number; this visits only the elements near the sphere */
+	public
+	int FindElementsInRadius(final float[] centre, final float radius, final IntConsumer IDsConsumer)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		final float x = centre[0], y = centre[1], z = centre[2];
+		return pointsStore.getGrid().findInRadius(x,y,z, radius, s -> IDsConsumer.accept(pointsStore.IDs[s]))
+		     + linesStore.getGrid().findInRadius(x,y,z, radius, s -> IDsConsumer.accept(linesStore.IDs[s]))
+		     + vectorsStore.getGrid().findInRadius(x,y,z, radius, s -> IDsConsumer.accept(vectorsStore.IDs[s]));
+	 }
+	}
+
+	/** returns the ID of the element (point, line, vector) whose position (the centre
+	    or the base) is the closest to the given ray but not further than 'maxDistance',
+	    or -1 if there is no such element; this is intended for picking, the 'maxDistance'
+	    must be finite (IllegalArgumentException is thrown otherwise) */
+	public
+	int FindElementNearestToRay(final float[] origin, final float[] direction, final float maxDistance)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		int bestID = -1;
+		float bestDistance = maxDistance;
+		for (ElementsStore store : new ElementsStore[] { pointsStore, linesStore, vectorsStore })
+		{
+			final SpatialGrid grid = store.getGrid();
+			final int s = grid.findNearestToRay(origin,direction, bestDistance);
+			if (s > -1)
+			{
+				bestID = store.IDs[s];
+				bestDistance = grid.getLastRayDistance();
+			}
+		}
+		return bestID;
+	 }
+	}
 
 
 	/** this is designed (yet only) for SINGLE-THREAD application! */
@@ -739,6 +935,39 @@ public class DisplayScene
 	}
 
 
+	/** batch variant of the addUpdateOrRemovePoint() that takes the lock only once for
+	    all 'count' points, the i-th point is given with IDs[i], centre at centres[3*i+0..2],
+	    radii[i] and colorsRGB[3*i+0..2]; this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemovePoints(final int[] IDs, final float[] centres, final float[] radii,
+	                             final float[] colorsRGB, final int count)
+	{
+		//intentionally empty
+	}
+
+	/** batch variant of the addUpdateOrRemoveLine() that takes the lock only once for
+	    all 'count' lines, the i-th line is given with IDs[i], base at bases[3*i+0..2],
+	    vector at vectors[3*i+0..2] and colorsRGB[3*i+0..2];
+	    this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemoveLines(final int[] IDs, final float[] bases, final float[] vectors,
+	                            final float[] colorsRGB, final int count)
+	{
+		//intentionally empty
+	}
+
+	/** batch variant of the addUpdateOrRemoveVector() that takes the lock only once for
+	    all 'count' vectors, the i-th vector is given with IDs[i], base at bases[3*i+0..2],
+	    vector at vectors[3*i+0..2] and colorsRGB[3*i+0..2];
+	    this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemoveVectors(final int[] IDs, final float[] bases, final float[] vectors,
+	                              final float[] colorsRGB, final int count)
+	{
+		//intentionally empty
+	}
+
+
 	public
 	void removeAllObjects()
 	{
@@ -777,6 +1006,15 @@ public class DisplayScene
 	{
 		//intentionally empty
 	}
+
+	/** makes the changes of the displayed elements, that the scene might have been
+	    holding back, visible (all at once); this is called at the end of every tick,
+	    changes made outside of the ticks (e.g. from the GUI) must call it explicitly */
+	public
+	void publishChanges()
+	{
+		//intentionally empty
+	}
 	//----------------------------------------------------------------------------
 
 
@@ -794,11 +1032,17 @@ public class DisplayScene
 		//update the stretch factor...
 		vectorsStretch = vs;
 
-		//...and rescale all vectors presently existing in the system
-		vectorNodes.values().forEach( n -> {
-			n.applyScale(vectorsStretch,vec_headLengthRatio);
-			n.node.updateWorld(false,true);
-			n.nodeHead.updateWorld(false,true);
+		//...and rescale all vectors presently existing in the system,
+		//in parallel chunks of the slots (every chunk touches only its vectors)
+		ParallelRanges.forEachChunk(0, vectorsStore.getSlotsCount(), (from,to) -> {
+			for (int s = from; s < to; ++s)
+			{
+				if (!vectorsStore.isUsed(s)) continue;
+				final VectorSH n = vectorNodes.get(vectorsStore.IDs[s]);
+				n.applyScale(vectorsStretch,vec_headLengthRatio);
+				n.node.updateWorld(false,true);
+				if (n.nodeHead != null) n.nodeHead.updateWorld(false,true);
+			}
 		} );
 	 }
 	}
@@ -806,7 +1050,7 @@ public class DisplayScene
 
 
 	/** groups visibility conditions across modes for one displayed object, e.g. sphere */
-	private static class elementVisibility
+	static class elementVisibility
 	{
 		public boolean g_Mode = true;   //the cell debug mode, operated with 'g' key
 		public boolean G_Mode = true;   //the global purpose debug mode, operated with 'G'
@@ -838,6 +1082,30 @@ public class DisplayScene
 	public boolean IsGeneralLinesShown()   { return linesShown.G_Mode; }
 	public boolean IsGeneralVectorsShown() { return vectorsShown.G_Mode; }
 
+	/** returns whether the elements of the given category (see getCategory1())
+	    shall be displayed, given the display preference in 'displayFlag' of
+	    their shape primitive */
+	boolean isCategoryShown(final elementVisibility displayFlag, final int cat1)
+	{
+		switch (cat1)
+		{
+		case CATEGORY1_CELL:
+			return displayFlag.g_Mode;
+		case CATEGORY1_CELLDBG:
+			return displayFlag.g_Mode && cellDebugShown;
+		default:
+			return displayFlag.G_Mode && generalDebugShown;
+		}
+	}
+
+	/** applies the current display preferences at once on the whole categories of
+	    all shape primitives, that is, on their grouping nodes or master instances,
+	    so that the cost does not depend on the number of displayed elements */
+	void showOrHideCategories()
+	{
+		//intentionally empty
+	}
+
 
 	public
 	boolean ToggleDisplayCellSpheres()
@@ -847,10 +1115,8 @@ public class DisplayScene
 		//toggle the flag
 		spheresShown.g_Mode ^= true;
 
-		//sync expected_* constants with current state of visibility flags
 		//apply the new setting on the points
-		for (Integer ID : pointNodes.keySet())
-			showOrHideMe(ID,pointNodes.get(ID).node,spheresShown);
+		showOrHideCategories();
 
 		return spheresShown.g_Mode;
 	 }
@@ -863,8 +1129,7 @@ public class DisplayScene
 	 {
 		linesShown.g_Mode ^= true;
 
-		for (Integer ID : lineNodes.keySet())
-			showOrHideMe(ID,lineNodes.get(ID).node,linesShown);
+		showOrHideCategories();
 
 		return linesShown.g_Mode;
 	 }
@@ -877,9 +1142,7 @@ public class DisplayScene
 	 {
 		vectorsShown.g_Mode ^= true;
 
-		for (Integer ID : vectorNodes.keySet())
-			//showOrHideMe(ID,vectorNodes.get(ID).node,vectorsShown);
-			showOrHideMeForVectorSH(ID);
+		showOrHideCategories();
 
 		return vectorsShown.g_Mode;
 	 }
@@ -893,13 +1156,7 @@ public class DisplayScene
 		cellDebugShown ^= true;
 
 		//"debug" objects might be present in any shape primitive
-		for (Integer ID : pointNodes.keySet())
-			showOrHideMe(ID,pointNodes.get(ID).node,spheresShown);
-		for (Integer ID : lineNodes.keySet())
-			showOrHideMe(ID,lineNodes.get(ID).node,linesShown);
-		for (Integer ID : vectorNodes.keySet())
-			//showOrHideMe(ID,vectorNodes.get(ID).node,vectorsShown);
-			showOrHideMeForVectorSH(ID);
+		showOrHideCategories();
 
 		return cellDebugShown;
 	 }
@@ -914,10 +1171,8 @@ public class DisplayScene
 		//toggle the flag
 		spheresShown.G_Mode ^= true;
 
-		//sync expected_* constants with current state of visibility flags
 		//apply the new setting on the points
-		for (Integer ID : pointNodes.keySet())
-			showOrHideMe(ID,pointNodes.get(ID).node,spheresShown);
+		showOrHideCategories();
 
 		return spheresShown.G_Mode;
 	 }
@@ -930,8 +1185,7 @@ public class DisplayScene
 	 {
 		linesShown.G_Mode ^= true;
 
-		for (Integer ID : lineNodes.keySet())
-			showOrHideMe(ID,lineNodes.get(ID).node,linesShown);
+		showOrHideCategories();
 
 		return linesShown.G_Mode;
 	 }
@@ -944,9 +1198,7 @@ public class DisplayScene
 	 {
 		vectorsShown.G_Mode ^= true;
 
-		for (Integer ID : vectorNodes.keySet())
-			//showOrHideMe(ID,vectorNodes.get(ID).node,vectorsShown);
-			showOrHideMeForVectorSH(ID);
+		showOrHideCategories();
 
 		return vectorsShown.G_Mode;
 	 }
@@ -960,19 +1212,177 @@ public class DisplayScene
 		generalDebugShown ^= true;
 
 		//"debug" objects might be present in any shape primitive
-		for (Integer ID : pointNodes.keySet())
-			showOrHideMe(ID,pointNodes.get(ID).node,spheresShown);
-		for (Integer ID : lineNodes.keySet())
-			showOrHideMe(ID,lineNodes.get(ID).node,linesShown);
-		for (Integer ID : vectorNodes.keySet())
-			//showOrHideMe(ID,vectorNodes.get(ID).node,vectorsShown);
-			showOrHideMeForVectorSH(ID);
+		showOrHideCategories();
 
 		return generalDebugShown;
 	 }
 	}
 
 
+	/** cells (given with the cell-ID bits of the elements' IDs) whose elements shall not be displayed */
+	private final boolean[] hiddenCells = new boolean[ElementsStore.CELLS_COUNT];
+	private int hiddenCellsCount = 0;
+
+	/** throws IllegalArgumentException if the cellID is not within [0,ElementsStore.CELLS_COUNT) */
+	static
+	void checkCellID(final int cellID)
+	{
+		if (cellID < 0 || cellID >= ElementsStore.CELLS_COUNT)
+			throw new IllegalArgumentException("Cell ID "+cellID+" is not within [0,"+ElementsStore.CELLS_COUNT+").");
+	}
+
+	public boolean IsCellShown(final int cellID) { checkCellID(cellID); return !hiddenCells[cellID]; }
+
+	/** returns true if the element (given with its ID) belongs to a hidden cell,
+	    this is the per-element test and it is skipped while no cell is hidden */
+	boolean isInHiddenCell(final int ID)
+	{
+		return hiddenCellsCount > 0 && hiddenCells[ElementsStore.getCellID(ID)];
+	}
+
+	/** hides or shows all elements of the given cell, the cell then stays so (incl. its
+	    elements added later) until changed again; the elements of a shown cell follow
+	    the usual visibility toggles; this costs O(elements of that cell);
+	    the cellID must be within [0,ElementsStore.CELLS_COUNT) (IllegalArgumentException
+	    is thrown otherwise), which holds for all the cell-related methods here */
+	public
+	void ShowCell(final int cellID, final boolean show)
+	{
+		checkCellID(cellID);
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		if (hiddenCells[cellID] == show) hiddenCellsCount += show ? -1 : +1;
+		hiddenCells[cellID] = !show;
+		showOrHideCell(cellID);
+	 }
+	}
+
+	/** re-applies showOrHideMe() on all elements of the given cell */
+	private
+	void showOrHideCell(final int cellID)
+	{
+		for (int s = pointsStore.getFirstSlotOfCell(cellID); s > -1; s = pointsStore.getNextSlotOfCell(s))
+		{
+			final int ID = pointsStore.IDs[s];
+			showOrHideMe(ID, pointNodes.get(ID).node, spheresShown);
+		}
+		for (int s = linesStore.getFirstSlotOfCell(cellID); s > -1; s = linesStore.getNextSlotOfCell(s))
+		{
+			final int ID = linesStore.IDs[s];
+			showOrHideMe(ID, lineNodes.get(ID).node, linesShown);
+		}
+		for (int s = vectorsStore.getFirstSlotOfCell(cellID); s > -1; s = vectorsStore.getNextSlotOfCell(s))
+		{
+			final int ID = vectorsStore.IDs[s];
+			showOrHideMeForVectorSH(ID, vectorNodes.get(ID));
+		}
+	}
+
+	public
+	boolean ToggleDisplayCell(final int cellID)
+	{
+		checkCellID(cellID);
+		ShowCell(cellID, hiddenCells[cellID]);
+		return !hiddenCells[cellID];
+	}
+
+	/** removes all elements of the given cell, returns how many were removed;
+	    this costs O(elements of that cell) */
+	public
+	int RemoveCell(final int cellID)
+	{
+		checkCellID(cellID);
+		final ElementsBatch batch = new ElementsBatch();
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		//NB: the removal is requested via the batch updates (with the agreed negative
+		//    colors) as the elements would be removed from the per-cell lists during the walk
+		int removed = 0;
+
+		prepareRemovalOfCell(pointsStore, cellID, batch);
+		addUpdateOrRemovePoints(batch.IDs, batch.positions, batch.radii, batch.colorsRGB, batch.count);
+		removed += batch.count;
+
+		prepareRemovalOfCell(linesStore, cellID, batch);
+		addUpdateOrRemoveLines(batch.IDs, batch.positions, batch.vectors, batch.colorsRGB, batch.count);
+		removed += batch.count;
+
+		prepareRemovalOfCell(vectorsStore, cellID, batch);
+		addUpdateOrRemoveVectors(batch.IDs, batch.positions, batch.vectors, batch.colorsRGB, batch.count);
+		removed += batch.count;
+
+		//NB: not waiting for the end of the tick
+		publishChanges();
+		return removed;
+	 }
+	}
+
+	/** fills the batch with the IDs of all elements of the given cell, and with negative colors */
+	private static
+	void prepareRemovalOfCell(final ElementsStore store, final int cellID, final ElementsBatch batch)
+	{
+		int N = 0;
+		for (int s = store.getFirstSlotOfCell(cellID); s > -1; s = store.getNextSlotOfCell(s)) ++N;
+
+		batch.reset(store.type, N);
+		for (int s = store.getFirstSlotOfCell(cellID); s > -1; s = store.getNextSlotOfCell(s))
+		{
+			batch.IDs[batch.count] = store.IDs[s];
+			batch.colorsRGB[3*batch.count] = -1.f;
+			++batch.count;
+		}
+	}
+
+	/** displays all elements of the given cell in the highlight color (white),
+	    the previously highlighted cell is displayed normally again, use -1
+	    to highlight no cell; this costs O(elements of those two cells) */
+	public
+	void HighlightCell(final int cellID)
+	{
+		if (cellID != -1) checkCellID(cellID);
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		final int previousCellID = pointsStore.highlightedCell;
+		pointsStore.highlightedCell  = cellID;
+		linesStore.highlightedCell   = cellID;
+		vectorsStore.highlightedCell = cellID;
+
+		if (previousCellID > -1) refreshCellColors(previousCellID);
+		if (cellID > -1) refreshCellColors(cellID);
+	 }
+	}
+
+	public int GetHighlightedCell() { return pointsStore.highlightedCell; }
+
+	/** makes the displayed colors of the elements of the given cell
+	    follow the elements' getColorRGB(), which considers the highlighting */
+	void refreshCellColors(final int cellID)
+	{
+		//intentionally empty
+	}
+
+	/** fills the min and max corners with the AABB of all elements of the given cell,
+	    returns false if there are none; this costs O(elements of that cell) */
+	public
+	boolean GetCellBoundingBox(final int cellID, final float[] min, final float[] max)
+	{
+		checkCellID(cellID);
+		for (int d = 0; d < 3; ++d)
+		{
+			min[d] = Float.POSITIVE_INFINITY;
+			max[d] = Float.NEGATIVE_INFINITY;
+		}
+
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		//NB: no short-circuiting, all stores must contribute
+		return pointsStore.extendBoundingBoxOfCell(cellID,min,max)
+		     | linesStore.extendBoundingBoxOfCell(cellID,min,max)
+		     | vectorsStore.extendBoundingBoxOfCell(cellID,min,max);
+	 }
+	}
+
+
 	public
 	void EnableFrontFaceCulling()
 	{
@@ -1005,34 +1415,36 @@ public class DisplayScene
 	static final int MASK_DEBUG  =   1 << 16;
 	static final int MASK_CELLID = ((1 << 14)-1) << 17;
 
+	//the categories of the elements, to have their visibility controlled together
+	static final int CATEGORY1_CELL      = 0;
+	static final int CATEGORY1_CELLDBG   = 1;
+	static final int CATEGORY1_GLOBALDBG = 2;
+
+	static
+	int getCategory1(final int ID)
+	{
+		if ((ID & MASK_CELLID) == 0) return CATEGORY1_GLOBALDBG;
+		if ((ID & MASK_DEBUG) > 0) return CATEGORY1_CELLDBG;
+		return CATEGORY1_CELL;
+	}
+
 	/** given the current display preference in 'displayFlag',
 	    the visibility of the object 'n' with ID is adjusted,
 	    the decided state is indicated in the return value */
 	boolean showOrHideMe(final int ID, final Node n, final elementVisibility displayFlag)
 	{
-		boolean vis = false;
-		if ((ID & MASK_CELLID) == 0)
-		{
-			//the ID does not belong to any cell, still the (filtering) flags apply
-			vis = displayFlag.G_Mode == true ? generalDebugShown : displayFlag.G_Mode;
-		}
-		else
-		{
-			vis = displayFlag.g_Mode == true && (ID & MASK_DEBUG) > 0 ?
-				cellDebugShown : displayFlag.g_Mode;
-
-			//NB: follows this table
-			// flag  MASK_DEBUG   cellDebugShown    result
-			// true    1          true              true
-			// true    1          false             false
-			// true    0          true              true
-			// true    0          false             true
-
-			// false   1          true              false
-			// false   1          false             false
-			// false   0          true              false
-			// false   0          false             false
-		}
+		//NB: follows this table (for the elements of cells)
+		// g_Mode  MASK_DEBUG   cellDebugShown    result
+		// true    1            true              true
+		// true    1            false             false
+		// true    0            true              true
+		// true    0            false             true
+		// false   any          any               false
+		//and the G_Mode and generalDebugShown must be both true for the elements of no cell
+		boolean vis = isCategoryShown(displayFlag, getCategory1(ID));
+
+		//hidden cells override all of the above
+		if (isInHiddenCell(ID)) vis = false;
 
 		if (n != null) n.setVisible(vis);
 		return vis;
@@ -1044,7 +1456,13 @@ public class DisplayScene
 		if (v == null)
 			throw new RuntimeException("Invalid vector ID given (ID="+ID+")");
 
-		v.nodeHead.setVisible( showOrHideMe(ID,v.node,vectorsShown) );
+		showOrHideMeForVectorSH(ID,v);
+	}
+
+	void showOrHideMeForVectorSH(final int ID, final VectorSH v)
+	{
+		final boolean vis = showOrHideMe(ID,v.node,vectorsShown);
+		if (v.nodeHead != null) v.nodeHead.setVisible(vis);
 		//NB: sets the same visibility to both nodes, see few lines above
 	}
 
@@ -1069,6 +1487,7 @@ public class DisplayScene
 		m.println("------------- SimViewer's current status: -------------");
 		m.println("push mode       : " + sciView.getPushMode() + "  \tscreenshots            : " + savingScreenshots);
 		m.println("garbage collect.: " + garbageCollecting     + "  \ttickCounter            : " + tickCounter);
+		m.println("auto-fit scene  : " + autoFitScene);
 		m.println("scene lights    : " + fixedLightsChoosen    + "  \tscreenshots path       : " + savingScreenshotsFilename);
 		m.println("scene border    : " + borderShown           + "  \torientation compass    : " + axesShown);
 		m.println("scene offset    : " + sceneOffset[0]+","+sceneOffset[1]+","+sceneOffset[2]+" microns");
@@ -1079,6 +1498,10 @@ public class DisplayScene
 		m.println("         vectors:  "+(vectorsShown.g_Mode? "Y":"N")+"   "+(vectorsShown.G_Mode? "Y":"N") + " \tfront faces culling    : " + IsFrontFacesCullingEnabled());
 
 		m.println("number of points: " + this.pointNodes.size() + "\t  lines: "+this.lineNodes.size() + "\t  vectors: "+this.vectorNodes.size());
+		if (netPipeline != null)
+		m.println("network queue   : " + netPipeline.reportStats());
+		if (netRecorder != null)
+		m.println("network recorder: " + netRecorder.reportStats());
 		m.println("color legend    :        white: velocity, 1stInnerMost2Yolk");
 		m.println(" red: overlap            green: cell&skeleton          blue: friction, skelDev");
 		m.println("cyan: body             magenta: tracks, rep&drive    yellow: slide, 2ndInnerMost2Yolk, tracksFF");
@@ -1101,6 +1524,14 @@ public class DisplayScene
 	    the reference must be null */
 	CommandFromFlightRecorder flightRecorder = null;
 
+	/** reference on the pipeline that applies the messages from the network, if it
+	    is used (otherwise the reference must be null), it is used only for reporting */
+	MessagesPipeline netPipeline = null;
+
+	/** reference on the recorder of the messages from the network, if it is used
+	    (otherwise the reference must be null), it is used only for reporting */
+	StreamRecorder netRecorder = null;
+
 	private class BehaviourForFlightRecorder implements ClickBehaviour
 	{
 		BehaviourForFlightRecorder(final char key) { actionKey = key; }
@@ -33,17 +33,20 @@ import org.joml.Vector3f;
 import org.joml.Vector4f;
 import graphics.scenery.*;
 import graphics.scenery.backends.ShaderType;
+import graphics.scenery.backends.Shaders;
 import graphics.scenery.Material.CullingMode;
 import sc.iview.SciView;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.function.Consumer;
+import java.util.Arrays;
 
 import de.mpicbg.ulman.simviewer.elements.Point;
 import de.mpicbg.ulman.simviewer.elements.Line;
 import de.mpicbg.ulman.simviewer.elements.Vector;
 import de.mpicbg.ulman.simviewer.elements.VectorSH;
+import de.mpicbg.ulman.simviewer.elements.Arrow;
+import de.mpicbg.ulman.simviewer.util.InstancesDoubleBuffer;
+import de.mpicbg.ulman.simviewer.util.ParallelRanges;
 
 /**
  * Adapted from TexturedCubeJavaExample.java from the scenery project,
@@ -60,6 +63,7 @@ public class DisplaySceneAllInstancing extends DisplayScene
 	{
 		super(sciView, sOffset, sSize);
 		this.fullInstancing = fullInstancing;
+		this.arrowGlyphs = fullInstancing;
 
 		//also init materials of the master instances
 		refMaterials = new Material[3];
@@ -71,7 +75,9 @@ public class DisplaySceneAllInstancing extends DisplayScene
 
 			refMaterials[0] = ShaderMaterial.fromClass(DisplayScene.class, sList);
 			refMaterials[1] = ShaderMaterial.fromClass(DisplayScene.class, sList);
-			refMaterials[2] = ShaderMaterial.fromClass(DisplayScene.class, sList);
+			//the arrow glyph needs only its own vertex shader, and shares the fragment one
+			refMaterials[2] = new ShaderMaterial(new Shaders.ShadersFromFiles(
+				new String[] { "elements/Arrow.vert", "DisplayScene.frag" }, DisplayScene.class ));
 		}
 		else
 		{
@@ -98,64 +104,53 @@ public class DisplaySceneAllInstancing extends DisplayScene
 		scene.addChild(mastersGroupNodes[CATEGORY1_CELLDBG]);
 		scene.addChild(mastersGroupNodes[CATEGORY1_GLOBALDBG]);
 
-		final String NArefNodesPrefix = "should not be visible, temporary ";
-
 		//define a master instances for point (Sphere)
 		refMaterials[CATEGORY0_POINTS].setDiffuse(new Vector3f(1.0f,0.6f,0.6f));
 		for (int i=0; i < 3; ++i)
 		{
-			final Sphere sMain = defineSphereMaster();
-			final Sphere sAux  = defineSphereMaster();
-			sAux.setName(NArefNodesPrefix+sAux.getName());  //adjust aux node name
-
-			refPoints[i][CATEGORY2_MAIN] = sMain;
-			refPoints[i][CATEGORY2_AUX]  = sAux;
-
-			mastersGroupNodes[i].addChild(sMain);
-			sMain.addChild(sAux);
+			refPoints[i] = defineSphereMaster();
+			mastersGroupNodes[i].addChild(refPoints[i]);
 		}
 
 		//define a master instances for line
 		refMaterials[CATEGORY0_LINES].setDiffuse(new Vector3f(0.6f,1.0f,0.6f));
 		for (int i=0; i < 3; ++i)
 		{
-			final Cylinder lMain = defineLineMaster();
-			final Cylinder lAux  = defineLineMaster();
-			lAux.setName(NArefNodesPrefix+lAux.getName());  //adjust aux node name
-
-			refLines[i][CATEGORY2_MAIN] = lMain;
-			refLines[i][CATEGORY2_AUX]  = lAux;
-
-			mastersGroupNodes[i].addChild(lMain);
-			lMain.addChild(lAux);
+			refLines[i] = defineLineMaster();
+			mastersGroupNodes[i].addChild(refLines[i]);
 		}
 
 		//define a master instances for vector as two instances (of the same material):
-		//the vector shaft (slim Cylinder) and head (Cone)
+		//the vector shaft (slim Cylinder) and head (Cone), or as one instance of the Arrow
 		refMaterials[CATEGORY0_VECTORS].setDiffuse(new Vector3f(0.6f,0.6f,1.0f));
 		for (int i=0; i < 3; ++i)
 		{
-			final Cylinder sMain = defineVectorShaftMaster();
-			final Cylinder sAux  = defineVectorShaftMaster();
-			sAux.setName(NArefNodesPrefix+sAux.getName());    //adjust aux node name
-
-			refVectorShafts[i][CATEGORY2_MAIN] = sMain;
-			refVectorShafts[i][CATEGORY2_AUX]  = sAux;
-
-			mastersGroupNodes[i].addChild(sMain);
-			sMain.addChild(sAux);
+			if (arrowGlyphs)
+			{
+				refVectorShafts[i] = defineVectorArrowMaster();
+				mastersGroupNodes[i].addChild(refVectorShafts[i]);
+				continue;
+			}
 
+			refVectorShafts[i] = defineVectorShaftMaster();
+			mastersGroupNodes[i].addChild(refVectorShafts[i]);
 
-			final Cone cMain = defineVectorHeadMaster();
-			final Cone cAux  = defineVectorHeadMaster();
-			cAux.setName(NArefNodesPrefix+cAux.getName());    //adjust aux node name
+			refVectorHeads[i] = defineVectorHeadMaster();
+			mastersGroupNodes[i].addChild(refVectorHeads[i]);
+		}
+		//NB: with the arrows, there are no heads (and no masters or instances for them)
+		final int cat0Count = arrowGlyphs ? 3 : 4;
 
-			refVectorHeads[i][CATEGORY2_MAIN] = cMain;
-			refVectorHeads[i][CATEGORY2_AUX]  = cAux;
+		//the instances lists of all masters, with the slots of their elements,
+		//the masters display the (initially empty) front lists
+		for (int cat0 = 0; cat0 < cat0Count; ++cat0)
+			for (int cat1 = 0; cat1 < 3; ++cat1)
+			{
+				allInstances[cat0][cat1] = new InstancesDoubleBuffer<>();
+				allMasters[cat0][cat1].setInstances( allInstances[cat0][cat1].getFront() );
+			}
 
-			mastersGroupNodes[i].addChild(cMain);
-			cMain.addChild(cAux);
-		}
+		showOrHideCategories();
 	}
 	//----------------------------------------------------------------------------
 
@@ -163,10 +158,40 @@ public class DisplaySceneAllInstancing extends DisplayScene
 	void requestWorldUpdate(boolean force)
 	{
 		scene.setNeedsUpdate(true); //to pick up the new scale!
-		pointNodes.values().forEach( (p) -> p.node.setNeedsUpdate(true) ); //mark all of them to get "rebuilt"
-		lineNodes.values().forEach( (l) -> l.node.setNeedsUpdate(true) );
-		vectorNodes.values().forEach( (v) -> { v.node.setNeedsUpdate(true); v.nodeHead.setNeedsUpdate(true); } );
 		scene.updateWorld(true,force); //finally: rebuild it now
+
+		//the instances are not the scene's children, they are "rebuilt" here (in parallel)
+		updateWorldOfAllElements();
+	}
+
+	/** recomputes the model and world matrices of the Nodes of all elements
+	    (which must not change meanwhile), the slots of the stores are processed
+	    in parallel chunks because every chunk touches only the Nodes of its slots */
+	private
+	void updateWorldOfAllElements()
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		ParallelRanges.forEachChunk(0, pointsStore.getSlotsCount(), (from,to) -> {
+			for (int s = from; s < to; ++s)
+				if (pointsStore.isUsed(s)) pointNodes.get(pointsStore.IDs[s]).node.updateWorld(false,true);
+		} );
+
+		ParallelRanges.forEachChunk(0, linesStore.getSlotsCount(), (from,to) -> {
+			for (int s = from; s < to; ++s)
+				if (linesStore.isUsed(s)) lineNodes.get(linesStore.IDs[s]).node.updateWorld(false,true);
+		} );
+
+		ParallelRanges.forEachChunk(0, vectorsStore.getSlotsCount(), (from,to) -> {
+			for (int s = from; s < to; ++s)
+			{
+				if (!vectorsStore.isUsed(s)) continue;
+				final VectorSH v = vectorNodes.get(vectorsStore.IDs[s]);
+				v.node.updateWorld(false,true);
+				if (v.nodeHead != null) v.nodeHead.updateWorld(false,true);
+			}
+		} );
+	 }
 	}
 	//----------------------------------------------------------------------------
 
@@ -213,150 +238,162 @@ public class DisplaySceneAllInstancing extends DisplayScene
 		refVectorNode_Head.setName("vector head master instance");
 		return refVectorNode_Head;
 	}
+
+	private Arrow defineVectorArrowMaster()
+	{
+		final Arrow refVectorNode_Arrow = factoryForArrows();
+		refVectorNode_Arrow.setMaterial(refMaterials[CATEGORY0_VECTORS]);
+		refVectorNode_Arrow.getInstancedProperties().put("ModelMatrix", refVectorNode_Arrow::getModel);
+		refVectorNode_Arrow.getInstancedProperties().put("Color", () -> new Vector4f(0.5f, 0.5f, 0.5f, 1.f));
+		refVectorNode_Arrow.setName("vector arrow master instance");
+		return refVectorNode_Arrow;
+	}
 	//----------------------------------------------------------------------------
 
 	//all master instances for:
 	//  the 4 displayed primitives (sphere, "line", vector as head and shaft),
-	//  the 3 categories (cell, cell debug, global debug),
-	//  each category having 2 sub: the main and the aux instances
-	private final Sphere[][]   refPoints       = new Sphere[3][2];
-	private final Cylinder[][] refLines        = new Cylinder[3][2];
-	private final Cylinder[][] refVectorShafts = new Cylinder[3][2];
-	private final Cone[][]     refVectorHeads  = new Cone[3][2];
+	//  the 3 categories (cell, cell debug, global debug)
+	private final Sphere[]   refPoints       = new Sphere[3];
+	private final Cylinder[] refLines        = new Cylinder[3];
+	private final Mesh[]     refVectorShafts = new Mesh[3]; //Cylinders, or Arrows
+	private final Cone[]     refVectorHeads  = new Cone[3];
 
 	static final int CATEGORY0_POINTS  = 0;
 	static final int CATEGORY0_LINES   = 1;
 	static final int CATEGORY0_VECTORS = 2;
 	//
-	static final int CATEGORY1_CELL      = 0;
-	static final int CATEGORY1_CELLDBG   = 1;
-	static final int CATEGORY1_GLOBALDBG = 2;
-	//
-	static final int CATEGORY2_MAIN  = 0;
-	static final int CATEGORY2_AUX   = 1;
-
-	private
-	int getCategory1(final int ID)
-	{
-		if ((ID & MASK_CELLID) == 0) return CATEGORY1_GLOBALDBG;
-		if ((ID & MASK_DEBUG) > 0) return CATEGORY1_CELLDBG;
-		return CATEGORY1_CELL;
-	}
+	//NB: the CATEGORY1_* (cell, cell debug, global debug) come from the DisplayScene
 
 	//convenience all-in-one container
-	private final Node[][][] allMasters = { refPoints, refLines, refVectorShafts, refVectorHeads };
-
-	//convenience handlers of the instancing masters
-	private void applyOnAllAuxMasters(final Consumer<Node> method)
-	{
-		for (Node[][] shapeMasters : allMasters)
-			for (Node[] dbgLevelMaster : shapeMasters)
-				method.accept( dbgLevelMaster[CATEGORY2_AUX] );
-	}
+	private final Node[][] allMasters = { refPoints, refLines, refVectorShafts, refVectorHeads };
+	//NB: indexed with the CATEGORY0_* for the first three, and with this one for the heads
+	static final int CATEGORY0_VECTORHEADS = 3;
+
+	/** the instances of all masters (indexed the same as the allMasters), together
+	    with the slots of their elements, to be able to remove them in O(1); all
+	    changes are made in their back lists, and become displayed (all at once)
+	    only with publishChanges(), that is at the end of the tick (and not after
+	    every single-element change, which would copy the whole lists every time) */
+	@SuppressWarnings("unchecked")
+	private final InstancesDoubleBuffer<Node>[][] allInstances = (InstancesDoubleBuffer<Node>[][])new InstancesDoubleBuffer<?>[4][3];
+
+	/** the index of the instance of every element (given with its slot) in its master's
+	    (back) instances list; the shafts and heads of vectors are always added and removed
+	    together, they thus have the same indices in their (parallel) lists
+	    (and the arrows, if used, are kept in the lists of the shafts) */
+	private int[] pointsInstanceAt  = new int[1024];
+	private int[] linesInstanceAt   = new int[1024];
+	private int[] vectorsInstanceAt = new int[1024];
+	//----------------------------------------------------------------------------
 
-	private void applyOnAllMainMasters(final Consumer<Node> method)
-	{
-		for (Node[][] shapeMasters : allMasters)
-			applyOnSpecificMainMasters(shapeMasters,method);
-	}
 
-	private void applyOnSpecificMainMasters(final int cat0, final Consumer<Node> method)
+	/** the visibility of the categories is controlled with their master instances */
+	@Override
+	void showOrHideCategories()
 	{
-		applyOnSpecificMainMasters(allMasters[cat0],method);
+		for (int cat1 = 0; cat1 < 3; ++cat1)
+		{
+			refPoints[cat1].setVisible( isCategoryShown(spheresShown,cat1) );
+			refLines[cat1].setVisible( isCategoryShown(linesShown,cat1) );
+			refVectorShafts[cat1].setVisible( isCategoryShown(vectorsShown,cat1) );
+			if (!arrowGlyphs)
+				refVectorHeads[cat1].setVisible( isCategoryShown(vectorsShown,cat1) );
+		}
 	}
 
-	private void applyOnSpecificMainMasters(final Node[][] masters, final Consumer<Node> method)
+	/** since the categories are shown or hidden with their master instances,
+	    the instance itself is hidden only if its cell is hidden */
+	@Override
+	boolean showOrHideMe(final int ID, final Node n, final elementVisibility displayFlag)
 	{
-		for (Node[] n : masters) method.accept( n[CATEGORY2_MAIN] );
+		final boolean vis = !isInHiddenCell(ID);
+		if (n != null) n.setVisible(vis);
+		return vis;
 	}
 
 
 	final boolean fullInstancing;
 
+	/** if true, the vectors are displayed as single instances of the Arrow (whose head
+	    is shaped in its vertex shader) instead of pairs of shaft and head instances;
+	    this is used with the full instancing because the Arrow.vert is needed */
+	final boolean arrowGlyphs;
+
 	/** materials used by the master instances: 0-point,1-line,2-vector */
 	final Material[] refMaterials;
 	//----------------------------------------------------------------------------
 
 
-	private boolean updateNodesImmediately = true;
-
-	/** only signals/enables the 'batch process' mode,
-	    this is designed (yet only) for SINGLE-THREAD application! */
-	public
-	void suspendNodesUpdating()
-	{
-	 synchronized (lockOnChangingSceneContent)
-	 {
-		applyOnAllAuxMasters(master -> master.setVisible(false));
-		updateNodesImmediately = false;
-	 }
-	}
-
-	/** calls processNodesYetToBeSmth() and switches back to the 'online process' mode,
-	    this is designed (yet only) for SINGLE-THREAD application! */
+	/** makes the masters display their so-far updated instances lists, at once;
+	    the lists that have not changed since the last publication are kept */
+	@Override
 	public
-	void resumeNodesUpdating()
+	void publishChanges()
 	{
 	 synchronized (lockOnChangingSceneContent)
 	 {
-		updateNodesImmediately = true;
-
-		//for now, move everything from their aux sub-cats to their main sub-categories
-		for (Node[][] shapeMasters : allMasters)
-			for (Node[] dbgLevelMaster : shapeMasters)
-			{
-				//per one category:
-				final List<Node> auxInstances = dbgLevelMaster[CATEGORY2_AUX].getInstances();
-				dbgLevelMaster[CATEGORY2_MAIN].getInstances().addAll(auxInstances);
-				auxInstances.clear();
-			}
+		for (int cat0 = 0; cat0 < allInstances.length; ++cat0)
+			for (int cat1 = 0; cat1 < 3; ++cat1)
+				if (allInstances[cat0][cat1] != null && allInstances[cat0][cat1].publish())
+					allMasters[cat0][cat1].setInstances( allInstances[cat0][cat1].getFront() );
 	 }
 	}
 
-	private
-	Node getAppropriateMaster(final Node[][] shapeMasters, final int ID)
+	/** returns the 'instanceAt' array that is large enough for the given slot */
+	private static
+	int[] ensureInstanceAt(final int[] instanceAt, final int slot)
 	{
-		final int cat1 = getCategory1(ID);
-		final int cat2 = updateNodesImmediately ? CATEGORY2_MAIN : CATEGORY2_AUX;
-		return shapeMasters[cat1][cat2];
+		return slot < instanceAt.length ? instanceAt : Arrays.copyOf(instanceAt, Math.max(2*instanceAt.length, slot+1));
 	}
 
 	private
 	void addToAppropriateMaster(final int ID, final Point p)
 	{
-		getAppropriateMaster(refPoints,ID).getInstances().add(p.node);
+		pointsInstanceAt = ensureInstanceAt(pointsInstanceAt, p.slot);
+		pointsInstanceAt[p.slot] = allInstances[CATEGORY0_POINTS][getCategory1(ID)].add(p.node, p.slot);
 	}
 
 	private
 	void addToAppropriateMaster(final int ID, final Line l)
 	{
-		getAppropriateMaster(refLines,ID).getInstances().add(l.node);
+		linesInstanceAt = ensureInstanceAt(linesInstanceAt, l.slot);
+		linesInstanceAt[l.slot] = allInstances[CATEGORY0_LINES][getCategory1(ID)].add(l.node, l.slot);
 	}
 
 	private
 	void addToAppropriateMaster(final int ID, final VectorSH v)
 	{
-		getAppropriateMaster(refVectorShafts,ID).getInstances().add(v.node);
-		getAppropriateMaster(refVectorHeads, ID).getInstances().add(v.nodeHead);
+		vectorsInstanceAt = ensureInstanceAt(vectorsInstanceAt, v.slot);
+		vectorsInstanceAt[v.slot] = allInstances[CATEGORY0_VECTORS][getCategory1(ID)].add(v.node, v.slot);
+		if (!arrowGlyphs) allInstances[CATEGORY0_VECTORHEADS][getCategory1(ID)].add(v.nodeHead, v.slot);
 	}
 
+	//NB: the instance that is moved into the place of the removed one
+	//    gets the (list and) index of the removed instance
+
 	private
 	void removeFromAppropriateMaster(final int ID, final Point p)
 	{
-		refPoints[getCategory1(ID)][CATEGORY2_MAIN].getInstances().remove(p.node);
+		final int at = pointsInstanceAt[p.slot];
+		final int moved = allInstances[CATEGORY0_POINTS][getCategory1(ID)].removeAt(at);
+		if (moved > -1) pointsInstanceAt[moved] = at;
 	}
 
 	private
 	void removeFromAppropriateMaster(final int ID, final Line l)
 	{
-		refLines[getCategory1(ID)][CATEGORY2_MAIN].getInstances().remove(l.node);
+		final int at = linesInstanceAt[l.slot];
+		final int moved = allInstances[CATEGORY0_LINES][getCategory1(ID)].removeAt(at);
+		if (moved > -1) linesInstanceAt[moved] = at;
 	}
 
 	private
 	void removeFromAppropriateMaster(final int ID, final VectorSH v)
 	{
-		refVectorShafts[getCategory1(ID)][CATEGORY2_MAIN].getInstances().remove(v.node);
-		refVectorHeads[ getCategory1(ID)][CATEGORY2_MAIN].getInstances().remove(v.nodeHead);
+		final int at = vectorsInstanceAt[v.slot];
+		final int moved = allInstances[CATEGORY0_VECTORS][getCategory1(ID)].removeAt(at);
+		if (!arrowGlyphs) allInstances[CATEGORY0_VECTORHEADS][getCategory1(ID)].removeAt(at);
+		if (moved > -1) vectorsInstanceAt[moved] = at;
 	}
 	//----------------------------------------------------------------------------
 
@@ -372,46 +409,87 @@ public class DisplaySceneAllInstancing extends DisplayScene
 
 		//negative color is an agreed signal to remove the point
 		//also, get rid of a point whose radius is "impossible"
-		if (p.colorRGB.x < 0 || p.radius.x < 0.0f)
+		if (p.getColorR() < 0 || p.getRadius() < 0.0f)
 		{
-			if (n != null)
-			{
-				removeFromAppropriateMaster(ID,n);
-				pointNodes.remove(ID);
-			}
+			if (n != null) removePoint(ID,n);
 			return;
 		}
 
 		//shall we create a new point?
-		if (n == null)
+		if (n == null) n = createPoint(ID);
+
+		//now update the point with the current data
+		n.update(p);
+		n.syncNode();
+		n.setLastSeenTick(tickCounter);
+		n.node.setNeedsUpdate(true);
+	 }
+	}
+
+	/** this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemovePoints(final int[] IDs, final float[] centres, final float[] radii,
+	                             final float[] colorsRGB, final int count)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		if (count > 10) suspendNodesUpdating();
+
+		for (int i=0, i3=0; i < count; ++i, i3 += 3)
 		{
-			//new point: adding
-			n = new Point( new Node() );
-			final Node nn = n.node;
+			final int ID = IDs[i];
+			Point n = pointNodes.get(ID);
 
-			//define the point
-			nn.setMaterial(refMaterials[CATEGORY0_POINTS]);
-			nn.setScale(n.radius);
-			nn.setPosition(n.centre);
+			if (colorsRGB[i3] < 0 || radii[i] < 0.0f)
+			{
+				if (n != null) removePoint(ID,n);
+				continue;
+			}
 
-			//spawn another instance
-			nn.getInstancedProperties().put("ModelMatrix", nn::getWorld);
-			if (fullInstancing)
-				nn.getInstancedProperties().put("Color", n::getColorRGBA);
-			nn.setParent(scene);
+			if (n == null) n = createPoint(ID);
 
-			addToAppropriateMaster(ID,n);
-			pointNodes.put(ID,n);
-			showOrHideMe(ID,n.node,spheresShown);
+			n.setCentre(centres[i3],centres[i3+1],centres[i3+2]);
+			n.setRadius(radii[i]);
+			n.setColorRGB(colorsRGB[i3],colorsRGB[i3+1],colorsRGB[i3+2]);
+			n.syncNode();
+			n.setLastSeenTick(tickCounter);
+			n.node.setNeedsUpdate(true);
 		}
 
-		//now update the point with the current data
-		n.update(p);
-		n.lastSeenTick = tickCounter;
-		n.node.setNeedsUpdate(true);
+		if (count > 10) resumeNodesUpdating();
 	 }
 	}
 
+	private
+	Point createPoint(final int ID)
+	{
+		//new point: adding
+		final Point n = new Point( new Node(), pointsStore, pointsStore.allocate(ID) );
+		final Node nn = n.node;
+
+		//define the point
+		nn.setMaterial(refMaterials[CATEGORY0_POINTS]);
+
+		//spawn another instance
+		nn.getInstancedProperties().put("ModelMatrix", nn::getWorld);
+		if (fullInstancing)
+			nn.getInstancedProperties().put("Color", n::getColorRGBA);
+		nn.setParent(scene);
+
+		addToAppropriateMaster(ID,n);
+		pointNodes.put(ID,n);
+		showOrHideMe(ID,n.node,spheresShown);
+		return n;
+	}
+
+	private
+	void removePoint(final int ID, final Point n)
+	{
+		removeFromAppropriateMaster(ID,n);
+		pointNodes.remove(ID);
+		pointsStore.release(n.slot);
+	}
+
 
 	/** this is designed (yet only) for SINGLE-THREAD application! */
 	public
@@ -423,49 +501,117 @@ public class DisplaySceneAllInstancing extends DisplayScene
 		Line n = lineNodes.get(ID);
 
 		//negative color is an agreed signal to remove the line
-		if (l.colorRGB.x < 0)
+		if (l.getColorR() < 0)
 		{
-			if (n != null)
-			{
-				removeFromAppropriateMaster(ID,n);
-				lineNodes.remove(ID);
-			}
+			if (n != null) removeLine(ID,n);
 			return;
 		}
 
 		//shall we create a new line?
-		if (n == null)
-		{
-			//new line: adding
-			n = new Line( new Node() );
-			final Node nn = n.node;
-
-			//define the line
-			nn.setMaterial(refMaterials[CATEGORY0_LINES]);
-			nn.setScale(n.auxScale);
-			nn.setPosition(n.base);
-
-			//spawn another instance
-			nn.getInstancedProperties().put("ModelMatrix", nn::getWorld);
-			if (fullInstancing)
-				nn.getInstancedProperties().put("Color", n::getColorRGBA);
-			nn.setParent(scene);
-
-			addToAppropriateMaster(ID,n);
-			lineNodes.put(ID,n);
-			showOrHideMe(ID,n.node,linesShown);
-		}
+		if (n == null) n = createLine(ID);
 
 		//update the line with the current data
 		n.update(l);
-		n.lastSeenTick = tickCounter;
+		n.syncNode();
+		n.setLastSeenTick(tickCounter);
 
 		//finally, set the new absolute orientation
-		DisplayScene.rotateNodeToDir(n.node, l.vector);
+		DisplayScene.rotateNodeToDir(n.node, l.getVector(auxDir));
 		n.node.setNeedsUpdate(true);
 	 }
 	}
 
+	/** this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemoveLines(final int[] IDs, final float[] bases, final float[] vectors,
+	                            final float[] colorsRGB, final int count)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		if (count > 10) suspendNodesUpdating();
+
+		for (int i=0, i3=0; i < count; ++i, i3 += 3)
+		{
+			final int ID = IDs[i];
+			Line n = lineNodes.get(ID);
+
+			if (colorsRGB[i3] < 0)
+			{
+				if (n != null)
+				{
+					//NB: not to be touched in the parallel phase below
+					if (isInBatch(batchLines,n.slot,n)) batchLines[batchAtSlot[n.slot]] = null;
+					removeLine(ID,n);
+				}
+				continue;
+			}
+
+			if (n == null) n = createLine(ID);
+
+			n.setBase(bases[i3],bases[i3+1],bases[i3+2]);
+			n.setVector(vectors[i3],vectors[i3+1],vectors[i3+2]);
+			n.setColorRGB(colorsRGB[i3],colorsRGB[i3+1],colorsRGB[i3+2]);
+			n.syncNode();
+			n.setLastSeenTick(tickCounter);
+
+			//NB: an element repeated in the batch is listed only once, the parallel
+			//    phase reads its data from the store, that is from its last occurrence
+			if (isInBatch(batchLines,n.slot,n)) continue;
+			if (batchCount == batchLines.length) batchLines = Arrays.copyOf(batchLines, 2*batchCount);
+			batchAtSlot = ensureInstanceAt(batchAtSlot, n.slot);
+			batchAtSlot[n.slot] = batchCount;
+			batchLines[batchCount++] = n;
+		}
+
+		//the transforms of the updated lines, computed in parallel chunks
+		ParallelRanges.forEachChunk(0, batchCount, (from,to) -> {
+			final Vector3f dir = new Vector3f();
+			for (int i = from; i < to; ++i)
+			{
+				final Line n = batchLines[i];
+				if (n == null) continue;
+				n.applyScale(1f);
+				DisplayScene.rotateNodeToDir(n.node, n.getVector(dir));
+				n.node.setNeedsUpdate(true);
+			}
+		} );
+		Arrays.fill(batchLines, 0,batchCount, null);
+		batchCount = 0;
+
+		if (count > 10) resumeNodesUpdating();
+	 }
+	}
+
+	private
+	Line createLine(final int ID)
+	{
+		//new line: adding
+		final Line n = new Line( new Node(), linesStore, linesStore.allocate(ID) );
+		final Node nn = n.node;
+
+		//define the line
+		nn.setMaterial(refMaterials[CATEGORY0_LINES]);
+
+		//spawn another instance
+		nn.getInstancedProperties().put("ModelMatrix", nn::getWorld);
+		if (fullInstancing)
+			nn.getInstancedProperties().put("Color", n::getColorRGBA);
+		nn.setParent(scene);
+
+		addToAppropriateMaster(ID,n);
+		lineNodes.put(ID,n);
+		showOrHideMe(ID,n.node,linesShown);
+		return n;
+	}
+
+	private
+	void removeLine(final int ID, final Line n)
+	{
+		removeFromAppropriateMaster(ID,n);
+		lineNodes.remove(ID);
+		linesStore.release(n.slot);
+	}
+
 
 	/** this is designed (yet only) for SINGLE-THREAD application! */
 	public
@@ -477,59 +623,183 @@ public class DisplaySceneAllInstancing extends DisplayScene
 		VectorSH n = vectorNodes.get(ID);
 
 		//negative color is an agreed signal to remove the vector
-		if (v.colorRGB.x < 0)
+		if (v.getColorR() < 0)
 		{
-			if (n != null)
-			{
-				removeFromAppropriateMaster(ID,n);
-				vectorNodes.remove(ID);
-			}
+			if (n != null) removeVector(ID,n);
 			return;
 		}
 
 		//shall we create a new vector?
-		if (n == null)
+		if (n == null) n = createVector(ID);
+
+		//update the vector with the current data
+		n.updateAndScale(v,vectorsStretch,vec_headLengthRatio);
+		n.syncNode();
+		n.setLastSeenTick(tickCounter);
+
+		//finally, set the new absolute orientation
+		DisplayScene.rotateNodeToDir(n.node, v.getVector(auxDir));
+		n.node.setNeedsUpdate(true);
+		if (!arrowGlyphs)
 		{
-			//new vector: adding
-			n = new VectorSH( new Node(),new Node() );
-			final Node ns = n.node;
-			final Node nh = n.nodeHead;
+			n.nodeHead.setRotation(n.node.getRotation());
+			n.nodeHead.setNeedsUpdate(true);
+		}
+	 }
+	}
+
+	/** this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemoveVectors(final int[] IDs, final float[] bases, final float[] vectors,
+	                              final float[] colorsRGB, final int count)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		if (count > 10) suspendNodesUpdating();
 
-			//define the vector
-			ns.setMaterial(refMaterials[CATEGORY0_VECTORS]);
-			ns.setScale(n.auxScale);
-			ns.setPosition(n.base);
+		for (int i=0, i3=0; i < count; ++i, i3 += 3)
+		{
+			final int ID = IDs[i];
+			VectorSH n = vectorNodes.get(ID);
 
-			nh.setMaterial(refMaterials[CATEGORY0_VECTORS]);
-			nh.setScale(n.auxScaleHead);
-			nh.setPosition(n.auxHeadBase);
+			if (colorsRGB[i3] < 0)
+			{
+				if (n != null)
+				{
+					//NB: not to be touched in the parallel phase below
+					if (isInBatch(batchVectors,n.slot,n)) batchVectors[batchAtSlot[n.slot]] = null;
+					removeVector(ID,n);
+				}
+				continue;
+			}
 
-			//spawn another instances
-			ns.getInstancedProperties().put("ModelMatrix", ns::getWorld);
-			if (fullInstancing)
-				ns.getInstancedProperties().put("Color", n::getColorRGBA);
-			ns.setParent(scene);
+			if (n == null) n = createVector(ID);
+
+			n.setBase(bases[i3],bases[i3+1],bases[i3+2]);
+			n.setVector(vectors[i3],vectors[i3+1],vectors[i3+2]);
+			n.setColorRGB(colorsRGB[i3],colorsRGB[i3+1],colorsRGB[i3+2]);
+			n.syncNode();
+			n.setLastSeenTick(tickCounter);
+
+			//NB: an element repeated in the batch is listed only once, the parallel
+			//    phase reads its data from the store, that is from its last occurrence
+			if (isInBatch(batchVectors,n.slot,n)) continue;
+			if (batchCount == batchVectors.length) batchVectors = Arrays.copyOf(batchVectors, 2*batchCount);
+			batchAtSlot = ensureInstanceAt(batchAtSlot, n.slot);
+			batchAtSlot[n.slot] = batchCount;
+			batchVectors[batchCount++] = n;
+		}
+
+		//the transforms of the updated vectors, computed in parallel chunks
+		ParallelRanges.forEachChunk(0, batchCount, (from,to) -> {
+			final Vector3f dir = new Vector3f();
+			for (int i = from; i < to; ++i)
+			{
+				final VectorSH n = batchVectors[i];
+				if (n == null) continue;
+				n.applyScale(vectorsStretch,vec_headLengthRatio);
+				DisplayScene.rotateNodeToDir(n.node, n.getVector(dir));
+				n.node.setNeedsUpdate(true);
+				if (arrowGlyphs) continue;
+				n.nodeHead.setRotation(n.node.getRotation());
+				n.nodeHead.setNeedsUpdate(true);
+			}
+		} );
+		Arrays.fill(batchVectors, 0,batchCount, null);
+		batchCount = 0;
+
+		if (count > 10) resumeNodesUpdating();
+	 }
+	}
 
+	private
+	VectorSH createVector(final int ID)
+	{
+		//new vector: adding
+		//(the arrow needs no head, the shaft's Node represents the whole arrow)
+		final VectorSH n = new VectorSH( new Node(), arrowGlyphs ? null : new Node(),
+		                                 vectorsStore, vectorsStore.allocate(ID) );
+		final Node ns = n.node;
+		final Node nh = n.nodeHead;
+
+		//define the vector
+		ns.setMaterial(refMaterials[CATEGORY0_VECTORS]);
+
+		//spawn another instances
+		ns.getInstancedProperties().put("ModelMatrix", ns::getWorld);
+		if (fullInstancing)
+			ns.getInstancedProperties().put("Color", n::getColorRGBA);
+		ns.setParent(scene);
+
+		if (nh != null)
+		{
+			nh.setMaterial(refMaterials[CATEGORY0_VECTORS]);
 			nh.getInstancedProperties().put("ModelMatrix", nh::getWorld);
 			if (fullInstancing)
 				nh.getInstancedProperties().put("Color", n::getColorRGBA);
 			nh.setParent(scene);
-
-			addToAppropriateMaster(ID,n);
-			vectorNodes.put(ID,n);
-			showOrHideMeForVectorSH(ID);
 		}
 
-		//update the vector with the current data
-		n.updateAndScale(v,vectorsStretch,vec_headLengthRatio);
-		n.lastSeenTick = tickCounter;
+		addToAppropriateMaster(ID,n);
+		vectorNodes.put(ID,n);
+		showOrHideMeForVectorSH(ID);
+		return n;
+	}
 
-		//finally, set the new absolute orientation
-		DisplayScene.rotateNodeToDir(n.node, v.vector);
-		n.nodeHead.setRotation(n.node.getRotation());
-		n.node.setNeedsUpdate(true);
-		n.nodeHead.setNeedsUpdate(true);
-	 }
+	private
+	void removeVector(final int ID, final VectorSH n)
+	{
+		removeFromAppropriateMaster(ID,n);
+		vectorNodes.remove(ID);
+		vectorsStore.release(n.slot);
+	}
+
+
+	/** the (re-usable) lists of the lines or vectors updated in the current batch,
+	    whose transforms are then computed in parallel, see addUpdateOrRemoveLines() */
+	private Line[]     batchLines   = new Line[1024];
+	private VectorSH[] batchVectors = new VectorSH[1024];
+	private int batchCount = 0;
+
+	/** the index in the batch list of the element (given with its slot), valid only
+	    if the list holds this element at this index, see isInBatch(); this allows
+	    to list every element only once, and to unlist the elements removed meanwhile */
+	private int[] batchAtSlot = new int[1024];
+
+	/** returns true if the element n (in the given slot) is already listed in the batch */
+	private
+	boolean isInBatch(final Object[] batch, final int slot, final Object n)
+	{
+		return slot < batchAtSlot.length && batchAtSlot[slot] < batchCount && batch[batchAtSlot[slot]] == n;
+	}
+
+
+	/** the colors are displayed only with the full instancing, where the instances
+	    read them via getColorRGBA() -- which considers the highlighting -- every time
+	    they are updated, so here the instances are only flagged for the update */
+	void refreshCellColors(final int cellID)
+	{
+		if (!fullInstancing) return;
+
+		for (int s = pointsStore.getFirstSlotOfCell(cellID); s > -1; s = pointsStore.getNextSlotOfCell(s))
+		{
+			final int ID = pointsStore.IDs[s];
+			final Point n = pointNodes.get(ID);
+			n.node.setNeedsUpdate(true);
+		}
+		for (int s = linesStore.getFirstSlotOfCell(cellID); s > -1; s = linesStore.getNextSlotOfCell(s))
+		{
+			final int ID = linesStore.IDs[s];
+			final Line n = lineNodes.get(ID);
+			n.node.setNeedsUpdate(true);
+		}
+		for (int s = vectorsStore.getFirstSlotOfCell(cellID); s > -1; s = vectorsStore.getNextSlotOfCell(s))
+		{
+			final int ID = vectorsStore.IDs[s];
+			final VectorSH n = vectorNodes.get(ID);
+			n.node.setNeedsUpdate(true);
+			if (n.nodeHead != null) n.nodeHead.setNeedsUpdate(true);
+		}
 	}
 
 
@@ -539,46 +809,28 @@ public class DisplaySceneAllInstancing extends DisplayScene
 	{
 	 synchronized (lockOnChangingSceneContent)
 	 {
-		//NB: HashMap may be modified while being swept through only via iterator
-		//    (and iterator must remove the elements actually)
-		Iterator<Integer> i = pointNodes.keySet().iterator();
-		while (i.hasNext())
+		//NB: the stores keep their elements ordered by their lastSeenTick, the expired
+		//    ones are thus always the oldest ones, and only these are visited here;
+		//    removing an element releases its slot, and the next oldest one comes up
+		int s;
+		while ((s = pointsStore.getOldestSlot()) > -1 && pointsStore.lastSeenTick[s]+tolerance < tickCounter)
 		{
-			final int ID = i.next();
-			final Point p = pointNodes.get(ID);
-
-			if (p.lastSeenTick+tolerance < tickCounter)
-			{
-				removeFromAppropriateMaster(ID,p);
-				i.remove();
-			}
+			final int ID = pointsStore.IDs[s];
+			removePoint(ID, pointNodes.get(ID));
 		}
 
-		i = lineNodes.keySet().iterator();
-		while (i.hasNext())
+		while ((s = linesStore.getOldestSlot()) > -1 && linesStore.lastSeenTick[s]+tolerance < tickCounter)
 		{
-			final int ID = i.next();
-			final Line l = lineNodes.get(ID);
-
-			if (l.lastSeenTick+tolerance < tickCounter)
-			{
-				removeFromAppropriateMaster(ID,l);
-				i.remove();
-			}
+			final int ID = linesStore.IDs[s];
+			removeLine(ID, lineNodes.get(ID));
 		}
 
-		i = vectorNodes.keySet().iterator();
-		while (i.hasNext())
+		while ((s = vectorsStore.getOldestSlot()) > -1 && vectorsStore.lastSeenTick[s]+tolerance < tickCounter)
 		{
-			final int ID = i.next();
-			final VectorSH v = vectorNodes.get(ID);
-
-			if (v.lastSeenTick+tolerance < tickCounter)
-			{
-				removeFromAppropriateMaster(ID,v);
-				i.remove();
-			}
+			final int ID = vectorsStore.IDs[s];
+			removeVector(ID, vectorNodes.get(ID));
 		}
+
 	 }
 	}
 	//----------------------------------------------------------------------------
@@ -32,7 +32,6 @@ package de.mpicbg.ulman.simviewer;
 import org.joml.Vector3f;
 import graphics.scenery.*;
 import sc.iview.SciView;
-import java.util.Iterator;
 import de.mpicbg.ulman.simviewer.elements.Point;
 import de.mpicbg.ulman.simviewer.elements.Line;
 import de.mpicbg.ulman.simviewer.elements.Vector;
@@ -67,6 +66,17 @@ public class DisplaySceneNoInstancing extends DisplayScene
 		scene.addChild( sceneLines );
 		scene.addChild( sceneVectorsS );
 		scene.addChild( sceneVectorsH );
+
+		//the per-category gathering nodes under each of the above,
+		//only the shown ones get attached (see showOrHideCategories())
+		for (int shape = 0; shape < 4; ++shape)
+		{
+			sceneCategories[shape][CATEGORY1_CELL]      = new Node("cell");
+			sceneCategories[shape][CATEGORY1_CELLDBG]   = new Node("cell debug");
+			sceneCategories[shape][CATEGORY1_GLOBALDBG] = new Node("global debug");
+		}
+
+		showOrHideCategories();
 	}
 	//----------------------------------------------------------------------------
 
@@ -76,6 +86,42 @@ public class DisplaySceneNoInstancing extends DisplayScene
 	private final Node sceneLines    = new Node("Lines");
 	private final Node sceneVectorsS = new Node("Vectors - shafts");
 	private final Node sceneVectorsH = new Node("Vectors - arrow heads");
+	private final Node[] sceneShapes = { scenePoints, sceneLines, sceneVectorsS, sceneVectorsH };
+
+	/** the gathering nodes of the categories (see getCategory1()) of the above, that
+	    is, [shape][category], where shape is 0-points,1-lines,2-shafts,3-arrow heads */
+	private final Node[][] sceneCategories = new Node[4][3];
+
+	/** is the gathering node of the category attached to its shape node? */
+	private final boolean[][] categoryAttached = new boolean[4][3];
+
+	/** the visibility of the categories is controlled by attaching their gathering
+	    nodes to (or detaching them from) their shape nodes; unlike setVisible() on
+	    the gathering node (which the scenery passes down to all its children), this
+	    costs O(1) per category and leaves the elements' own visibility intact */
+	void showOrHideCategories()
+	{
+		final elementVisibility[] shapeFlags = { spheresShown, linesShown, vectorsShown, vectorsShown };
+		for (int shape = 0; shape < 4; ++shape)
+			for (int cat1 = 0; cat1 < 3; ++cat1)
+			{
+				final boolean vis = isCategoryShown(shapeFlags[shape], cat1);
+				if (categoryAttached[shape][cat1] == vis) continue;
+
+				if (vis) sceneShapes[shape].addChild(sceneCategories[shape][cat1]);
+				else     sceneShapes[shape].removeChild(sceneCategories[shape][cat1]);
+				categoryAttached[shape][cat1] = vis;
+			}
+	}
+
+	/** since the categories are shown or hidden with their gathering nodes,
+	    the element itself is hidden only if its cell is hidden */
+	boolean showOrHideMe(final int ID, final Node n, final elementVisibility displayFlag)
+	{
+		final boolean vis = !isInHiddenCell(ID);
+		if (n != null) n.setVisible(vis);
+		return vis;
+	}
 
 	/** this is designed (yet only) for SINGLE-THREAD application! */
 	public
@@ -88,39 +134,82 @@ public class DisplaySceneNoInstancing extends DisplayScene
 
 		//negative color is an agreed signal to remove the point
 		//also, get rid of a point whose radius is "impossible"
-		if (p.colorRGB.x < 0 || p.radius.x < 0.0f)
+		if (p.getColorR() < 0 || p.getRadius() < 0.0f)
 		{
-			if (n != null)
-			{
-				scenePoints.removeChild(n.node);
-				pointNodes.remove(ID);
-			}
+			if (n != null) removePoint(ID,n);
 			return;
 		}
 
 		//shall we create a new point?
-		if (n == null)
-		{
-			//new point: adding
-			n = new Point( factoryForPoints() );
-			n.node.setName( createNodeName(ID) );
-			n.node.setPosition(n.centre);
-			n.node.setScale(n.radius);
-
-			pointNodes.put(ID,n);
-			this.addChild(n.node,'p');
-			showOrHideMe(ID,n.node,spheresShown);
-		}
+		if (n == null) n = createPoint(ID);
 
 		//now update the point with the current data
 		n.update(p);
-		n.node.setMaterial(materials.getMaterial(n.colorRGB));
-		n.lastSeenTick = tickCounter;
+		n.syncNode();
+		n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+		n.setLastSeenTick(tickCounter);
 
 		this.nodeSetNeedsUpdate(n.node);
 	 }
 	}
 
+	/** this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemovePoints(final int[] IDs, final float[] centres, final float[] radii,
+	                             final float[] colorsRGB, final int count)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		if (count > 10) suspendNodesUpdating();
+
+		for (int i=0, i3=0; i < count; ++i, i3 += 3)
+		{
+			final int ID = IDs[i];
+			Point n = pointNodes.get(ID);
+
+			if (colorsRGB[i3] < 0 || radii[i] < 0.0f)
+			{
+				if (n != null) removePoint(ID,n);
+				continue;
+			}
+
+			if (n == null) n = createPoint(ID);
+
+			n.setCentre(centres[i3],centres[i3+1],centres[i3+2]);
+			n.setRadius(radii[i]);
+			n.setColorRGB(colorsRGB[i3],colorsRGB[i3+1],colorsRGB[i3+2]);
+			n.syncNode();
+			n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+			n.setLastSeenTick(tickCounter);
+
+			this.nodeSetNeedsUpdate(n.node);
+		}
+
+		if (count > 10) resumeNodesUpdating();
+	 }
+	}
+
+	private
+	Point createPoint(final int ID)
+	{
+		//new point: adding
+		final Point n = new Point( factoryForPoints(), pointsStore, pointsStore.allocate(ID) );
+		n.node.setName( createNodeName(ID) );
+
+		pointNodes.put(ID,n);
+		this.addChild(n.node,'p',getCategory1(ID));
+		showOrHideMe(ID,n.node,spheresShown);
+		return n;
+	}
+
+	private
+	void removePoint(final int ID, final Point n)
+	{
+		sceneCategories[0][getCategory1(ID)].removeChild(n.node);
+		pointNodes.remove(ID);
+		pointsStore.release(n.slot);
+	}
+
 
 	/** this is designed (yet only) for SINGLE-THREAD application! */
 	public
@@ -132,41 +221,86 @@ public class DisplaySceneNoInstancing extends DisplayScene
 		Line n = lineNodes.get(ID);
 
 		//negative color is an agreed signal to remove the line
-		if (l.colorRGB.x < 0)
+		if (l.getColorR() < 0)
 		{
-			if (n != null)
-			{
-				sceneLines.removeChild(n.node);
-				lineNodes.remove(ID);
-			}
+			if (n != null) removeLine(ID,n);
 			return;
 		}
 
 		//shall we create a new line?
-		if (n == null)
-		{
-			//new line: adding
-			n = new Line( factoryForLines() );
-			n.node.setName( createNodeName(ID) );
-			n.node.setPosition(n.base);
-			n.node.setScale(n.auxScale);
-
-			lineNodes.put(ID,n);
-			this.addChild(n.node,'l');
-			showOrHideMe(ID,n.node,linesShown);
-		}
+		if (n == null) n = createLine(ID);
 
 		//update the line with the current data
 		n.update(l);
-		n.node.setMaterial(materials.getMaterial(n.colorRGB));
-		n.lastSeenTick = tickCounter;
+		n.syncNode();
+		n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+		n.setLastSeenTick(tickCounter);
 
 		//finally, set the new absolute orientation
-		DisplayScene.rotateNodeToDir(n.node, l.vector);
+		DisplayScene.rotateNodeToDir(n.node, l.getVector(auxDir));
 		this.nodeSetNeedsUpdate(n.node);
 	 }
 	}
 
+	/** this is designed (yet only) for SINGLE-THREAD application! */
+	public
+	void addUpdateOrRemoveLines(final int[] IDs, final float[] bases, final float[] vectors,
+	                            final float[] colorsRGB, final int count)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		if (count > 10) suspendNodesUpdating();
+
+		for (int i=0, i3=0; i < count; ++i, i3 += 3)
+		{
+			final int ID = IDs[i];
+			Line n = lineNodes.get(ID);
+
+			if (colorsRGB[i3] < 0)
+			{
+				if (n != null) removeLine(ID,n);
+				continue;
+			}
+
+			if (n == null) n = createLine(ID);
+
+			n.setBase(bases[i3],bases[i3+1],bases[i3+2]);
+			n.setVector(vectors[i3],vectors[i3+1],vectors[i3+2]);
+			n.setColorRGB(colorsRGB[i3],colorsRGB[i3+1],colorsRGB[i3+2]);
+			n.syncNode();
+			n.applyScale(1f);
+			n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+			n.setLastSeenTick(tickCounter);
+
+			DisplayScene.rotateNodeToDir(n.node, n.getVector(auxDir));
+			this.nodeSetNeedsUpdate(n.node);
+		}
+
+		if (count > 10) resumeNodesUpdating();
+	 }
+	}
+
+	private
+	Line createLine(final int ID)
+	{
+		//new line: adding
+		final Line n = new Line( factoryForLines(), linesStore, linesStore.allocate(ID) );
+		n.node.setName( createNodeName(ID) );
+
+		lineNodes.put(ID,n);
+		this.addChild(n.node,'l',getCategory1(ID));
+		showOrHideMe(ID,n.node,linesShown);
+		return n;
+	}
+
+	private
+	void removeLine(final int ID, final Line n)
+	{
+		sceneCategories[1][getCategory1(ID)].removeChild(n.node);
+		lineNodes.remove(ID);
+		linesStore.release(n.slot);
+	}
+
 
 	/** this is designed (yet only) for SINGLE-THREAD application! */
 	public
@@ -178,47 +312,24 @@ public class DisplaySceneNoInstancing extends DisplayScene
 		VectorSH n = vectorNodes.get(ID);
 
 		//negative color is an agreed signal to remove the vector
-		if (v.colorRGB.x < 0)
+		if (v.getColorR() < 0)
 		{
-			if (n != null)
-			{
-				sceneVectorsS.removeChild(n.node);
-				sceneVectorsH.removeChild(n.nodeHead);
-				vectorNodes.remove(ID);
-			}
+			if (n != null) removeVector(ID,n);
 			return;
 		}
 
 		//shall we create a new vector?
-		if (n == null)
-		{
-			//new vector: adding
-			n = new VectorSH( factoryForVectorShafts(), factoryForVectorHeads() );
-
-			//define the vector
-			final String name = createNodeName(ID);
-			n.node.setName( name );
-			n.node.setPosition(n.base);
-			n.node.setScale(n.auxScale);
-
-			n.nodeHead.setName( name );
-			n.nodeHead.setPosition(n.auxHeadBase);
-			n.nodeHead.setScale(n.auxScaleHead);
-
-			vectorNodes.put(ID,n);
-			this.addChild(n.node,'s');
-			this.addChild(n.nodeHead,'h');
-			showOrHideMeForVectorSH(ID);
-		}
+		if (n == null) n = createVector(ID);
 
 		//update the vector with the current data
 		n.updateAndScale(v,vectorsStretch,vec_headLengthRatio);
-		n.node.setMaterial(materials.getMaterial(n.colorRGB));
-		n.nodeHead.setMaterial(materials.getMaterial(n.colorRGB));
-		n.lastSeenTick = tickCounter;
+		n.syncNode();
+		n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+		n.nodeHead.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+		n.setLastSeenTick(tickCounter);
 
 		//finally, set the new absolute orientation
-		DisplayScene.rotateNodeToDir(n.node, v.vector);
+		DisplayScene.rotateNodeToDir(n.node, v.getVector(auxDir));
 		n.nodeHead.setRotation(n.node.getRotation());
 		//NB: this triggers n.nodeHead.updateWorld() automatically
 		//NB: but does not trigger the update of the vector shaft
@@ -226,50 +337,122 @@ public class DisplaySceneNoInstancing extends DisplayScene
 	 }
 	}
 
-
-	/** remove all objects that were last touched before tickCounter-tolerance */
+	/** this is designed (yet only) for SINGLE-THREAD application! */
 	public
-	void garbageCollect(int tolerance)
+	void addUpdateOrRemoveVectors(final int[] IDs, final float[] bases, final float[] vectors,
+	                              final float[] colorsRGB, final int count)
 	{
 	 synchronized (lockOnChangingSceneContent)
 	 {
-		//NB: HashMap may be modified while being swept through only via iterator
-		//    (and iterator must remove the elements actually)
-		Iterator<Integer> i = pointNodes.keySet().iterator();
-		while (i.hasNext())
+		if (count > 10) suspendNodesUpdating();
+
+		for (int i=0, i3=0; i < count; ++i, i3 += 3)
 		{
-			final Point p = pointNodes.get(i.next());
+			final int ID = IDs[i];
+			VectorSH n = vectorNodes.get(ID);
 
-			if (p.lastSeenTick+tolerance < tickCounter)
+			if (colorsRGB[i3] < 0)
 			{
-				scenePoints.removeChild(p.node);
-				i.remove();
+				if (n != null) removeVector(ID,n);
+				continue;
 			}
+
+			if (n == null) n = createVector(ID);
+
+			n.setBase(bases[i3],bases[i3+1],bases[i3+2]);
+			n.setVector(vectors[i3],vectors[i3+1],vectors[i3+2]);
+			n.setColorRGB(colorsRGB[i3],colorsRGB[i3+1],colorsRGB[i3+2]);
+			n.syncNode();
+			n.applyScale(vectorsStretch,vec_headLengthRatio);
+			n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+			n.nodeHead.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+			n.setLastSeenTick(tickCounter);
+
+			DisplayScene.rotateNodeToDir(n.node, n.getVector(auxDir));
+			n.nodeHead.setRotation(n.node.getRotation());
+			this.nodeSetNeedsUpdate(n.node);
 		}
 
-		i = lineNodes.keySet().iterator();
-		while (i.hasNext())
+		if (count > 10) resumeNodesUpdating();
+	 }
+	}
+
+	private
+	VectorSH createVector(final int ID)
+	{
+		//new vector: adding
+		final VectorSH n = new VectorSH( factoryForVectorShafts(), factoryForVectorHeads(),
+		                                 vectorsStore, vectorsStore.allocate(ID) );
+
+		//define the vector
+		final String name = createNodeName(ID);
+		n.node.setName( name );
+		n.nodeHead.setName( name );
+
+		vectorNodes.put(ID,n);
+		this.addChild(n.node,'s',getCategory1(ID));
+		this.addChild(n.nodeHead,'h',getCategory1(ID));
+		showOrHideMeForVectorSH(ID);
+		return n;
+	}
+
+	private
+	void removeVector(final int ID, final VectorSH n)
+	{
+		sceneCategories[2][getCategory1(ID)].removeChild(n.node);
+		sceneCategories[3][getCategory1(ID)].removeChild(n.nodeHead);
+		vectorNodes.remove(ID);
+		vectorsStore.release(n.slot);
+	}
+
+
+	void refreshCellColors(final int cellID)
+	{
+		for (int s = pointsStore.getFirstSlotOfCell(cellID); s > -1; s = pointsStore.getNextSlotOfCell(s))
+		{
+			final Point n = pointNodes.get(pointsStore.IDs[s]);
+			n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+		}
+		for (int s = linesStore.getFirstSlotOfCell(cellID); s > -1; s = linesStore.getNextSlotOfCell(s))
 		{
-			final Line l = lineNodes.get(i.next());
+			final Line n = lineNodes.get(linesStore.IDs[s]);
+			n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+		}
+		for (int s = vectorsStore.getFirstSlotOfCell(cellID); s > -1; s = vectorsStore.getNextSlotOfCell(s))
+		{
+			final VectorSH n = vectorNodes.get(vectorsStore.IDs[s]);
+			n.node.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+			n.nodeHead.setMaterial(materials.getMaterial(n.getColorRGB(auxColor)));
+		}
+	}
 
-			if (l.lastSeenTick+tolerance < tickCounter)
-			{
-				sceneLines.removeChild(l.node);
-				i.remove();
-			}
+
+	/** remove all objects that were last touched before tickCounter-tolerance */
+	public
+	void garbageCollect(int tolerance)
+	{
+	 synchronized (lockOnChangingSceneContent)
+	 {
+		//NB: the stores keep their elements ordered by their lastSeenTick, the expired
+		//    ones are thus always the oldest ones, and only these are visited here;
+		//    removing an element releases its slot, and the next oldest one comes up
+		int s;
+		while ((s = pointsStore.getOldestSlot()) > -1 && pointsStore.lastSeenTick[s]+tolerance < tickCounter)
+		{
+			final int ID = pointsStore.IDs[s];
+			removePoint(ID, pointNodes.get(ID));
 		}
 
-		i = vectorNodes.keySet().iterator();
-		while (i.hasNext())
+		while ((s = linesStore.getOldestSlot()) > -1 && linesStore.lastSeenTick[s]+tolerance < tickCounter)
 		{
-			final VectorSH v = vectorNodes.get(i.next());
+			final int ID = linesStore.IDs[s];
+			removeLine(ID, lineNodes.get(ID));
+		}
 
-			if (v.lastSeenTick+tolerance < tickCounter)
-			{
-				sceneVectorsS.removeChild(v.node);
-				sceneVectorsH.removeChild(v.nodeHead);
-				i.remove();
-			}
+		while ((s = vectorsStore.getOldestSlot()) > -1 && vectorsStore.lastSeenTick[s]+tolerance < tickCounter)
+		{
+			final int ID = vectorsStore.IDs[s];
+			removeVector(ID, vectorNodes.get(ID));
 		}
 	 }
 	}
@@ -283,6 +466,7 @@ public class DisplaySceneNoInstancing extends DisplayScene
 
 	/** buffer of nodes to be added to the scene (ideally) at the same time */
 	private final char[] nodesYetToBeAddedWhere = new char[10240]; //10 kB of RAM
+	private final byte[] nodesYetToBeAddedCat   = new byte[10240]; //10 kB of RAM
 	private final Node[] nodesYetToBeAdded      = new Node[10240]; //40 kB of RAM
 	private int          nodesYetToBeAddedCnt   = 0;
 
@@ -319,7 +503,7 @@ public class DisplaySceneNoInstancing extends DisplayScene
 	void processNodesYetToBeSmth()
 	{
 		for (int i=0; i < nodesYetToBeAddedCnt; ++i)
-			addSceneChild( nodesYetToBeAdded[i], nodesYetToBeAddedWhere[i] );
+			addSceneChild( nodesYetToBeAdded[i], nodesYetToBeAddedWhere[i], nodesYetToBeAddedCat[i] );
 		nodesYetToBeAddedCnt = 0;
 
 		for (int i=0; i < nodesYetToBeUpdatedCnt; ++i)
@@ -331,12 +515,13 @@ public class DisplaySceneNoInstancing extends DisplayScene
 	    process mode), or registers into the 'nodesYetToBeAdded' buffer (when in the batch
 	    process mode) */
 	private
-	void addChild(final Node node, final char underWhichGatheringNode)
+	void addChild(final Node node, final char underWhichGatheringNode, final int category)
 	{
-		if (updateNodesImmediately) addSceneChild(node, underWhichGatheringNode);
+		if (updateNodesImmediately) addSceneChild(node, underWhichGatheringNode, category);
 		else
 		{
 			nodesYetToBeAddedWhere[nodesYetToBeAddedCnt] = underWhichGatheringNode;
+			nodesYetToBeAddedCat[nodesYetToBeAddedCnt] = (byte)category;
 			nodesYetToBeAdded[nodesYetToBeAddedCnt++] = node;
 
 			//overrun protection
@@ -362,18 +547,20 @@ public class DisplaySceneNoInstancing extends DisplayScene
 		}
 	}
 
+	/** adds the node under the gathering node of its category (see getCategory1())
+	    within the gathering node given by the 'underWhichGatheringNode' */
 	private
-	void addSceneChild(final Node node, final char underWhichGatheringNode)
+	void addSceneChild(final Node node, final char underWhichGatheringNode, final int category)
 	{
 		switch (underWhichGatheringNode)
 		{
 		case 'p':
 		case 'P':
-			scenePoints.addChild(node);
+			sceneCategories[0][category].addChild(node);
 			break;
 		case 'l':
 		case 'L':
-			sceneLines.addChild(node);
+			sceneCategories[1][category].addChild(node);
 			break;
 		case 'f': //"force"
 		case 'F':
@@ -381,13 +568,13 @@ public class DisplaySceneNoInstancing extends DisplayScene
 		case 'V':
 		case 's': //"shaft"
 		case 'S':
-			sceneVectorsS.addChild(node);
+			sceneCategories[2][category].addChild(node);
 			break;
 		case 'a': //"arrow head"
 		case 'A':
 		case 'h': //"arrow head"
 		case 'H':
-			sceneVectorsH.addChild(node);
+			sceneCategories[3][category].addChild(node);
 			break;
 		default:
 			scene.addChild(node);
@@ -36,6 +36,8 @@ import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
 import de.mpicbg.ulman.simviewer.util.NetMessagesProcessor;
+import de.mpicbg.ulman.simviewer.util.MessagesPipeline;
+import de.mpicbg.ulman.simviewer.util.StreamRecorder;
 
 import sc.iview.SciView;
 import graphics.scenery.Light;
@@ -44,7 +46,9 @@ import graphics.scenery.Node;
 import org.scijava.event.EventService;
 import sc.iview.event.NodeChangedEvent;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -77,6 +81,41 @@ public class SimViewer implements Command
 	@Parameter(min="1024")
 	private int receivingPort = 8765;
 
+	//1 - one simulator (PAIR socket), 0 - any number of simulators (ROUTER socket),
+	//N - wait for ticks of N simulators (ROUTER socket)
+	@Parameter(min="0")
+	private int receivingProducers = 1;
+
+	//comma-separated list of more ports to listen at, implies the ROUTER socket
+	@Parameter(required = false)
+	private String receivingMorePorts = "";
+
+	@Parameter(min="1")
+	private int receivingQueueDepth = 16;
+
+	@Parameter(choices = { "Block: Network waits until the display catches up",
+	                       "Drop: Oldest not-yet-displayed elements are skipped" })
+	private String receivingQueuePolicy = "Block";
+
+	//skip older time points if a newer one is already waiting in the queue,
+	//the queue then holds (at most) two time points regardless of its depth
+	@Parameter
+	private boolean receivingLatestTickOnly = false;
+
+	//if not empty, the received messages are also saved into this FlightRecording file
+	@Parameter(required = false)
+	private String recordingFile = "";
+
+	@Parameter(min="1")
+	private int recordingQueueMB = 64;
+
+	//start a new recording file after this many MB or time points, 0 - never
+	@Parameter(min="0")
+	private int recordingRotateMB = 0;
+
+	@Parameter(min="0")
+	private int recordingRotateTicks = 0;
+
 	@Parameter(required = false)
 	private String initSequence = "gG";
 
@@ -152,8 +191,19 @@ public class SimViewer implements Command
 		//the shared, messages processor and its "wrapping classes"
 		final NetMessagesProcessor netMsgProcessor = new NetMessagesProcessor(scene);
 		//
-		final CommandFromNetwork        cmdNet = new CommandFromNetwork(netMsgProcessor, receivingPort);
+		final MessagesPipeline      netPipeline = new MessagesPipeline(netMsgProcessor, receivingQueueDepth,
+			receivingQueuePolicy.startsWith("Drop") ? MessagesPipeline.Policy.DROP_OLDEST : MessagesPipeline.Policy.BLOCK,
+			receivingLatestTickOnly);
+		//
+		final int[] ports = listOfReceivingPorts();
+		final CommandFromNetwork        cmdNet = receivingProducers == 1 && ports.length == 1 ?
+			new CommandFromNetwork(netPipeline, receivingPort) :
+			new CommandFromNetwork(netPipeline, ports, receivingProducers);
 		final CommandFromFlightRecorder cmdFR  = new CommandFromFlightRecorder(netMsgProcessor);
+		//
+		final StreamRecorder      netRecorder = recordingFile.trim().isEmpty() ? null :
+			new StreamRecorder(Paths.get(recordingFile.trim()), (long)recordingQueueMB << 20,
+			                   (long)recordingRotateMB << 20, recordingRotateTicks);
 
 		//the user-commands processor
 		final CommandFromCLI            cmdCLI = new CommandFromCLI(scene, initSequence.replaceAll("[^\\d\\w]",""));
@@ -165,18 +215,26 @@ public class SimViewer implements Command
 		//cmdFR recieves its messages from a file and it is the user (via 'scene' or cmdCLI) that triggers its activity,
 		//cmdNet recieves its messages from a network and it is this event that triggers its activity
 		//
-		//cmdNet and cmdCLI are therefore "living" in separate threads (coded later)
+		//cmdNet and cmdCLI are therefore "living" in separate threads (coded later),
+		//and so is the netPipeline that applies what the cmdNet has received and parsed
 		//
 		//the cmdCLI as well as the 'scene' itself can also influence/command the cmdFR (they trigger its activity),
 		//and so we "inject" the reference on it
 		 scene.flightRecorder = cmdFR;
 		cmdCLI.flightRecorder = cmdFR;
+		 scene.netPipeline = netPipeline;
+		 scene.netRecorder = netRecorder;
+		cmdNet.recorder = netRecorder;
 
 		//only now start the additional controls (console and network)
 		CLIcontrol = new Thread( cmdCLI );
 		NETcontrol = new Thread( cmdNet );
+		NETapplier = new Thread( netPipeline );
+		NETrecorder = netRecorder != null ? new Thread( netRecorder ) : null;
 
 		CLIcontrol.start();
+		NETapplier.start();
+		if (NETrecorder != null) NETrecorder.start();
 		NETcontrol.start();
 
 		GUIcontrol = new CommandFromGUI(scene,
@@ -199,10 +257,36 @@ public class SimViewer implements Command
 		this.stop();
 	}
 
+	/** returns the receivingPort followed by the valid ports of the receivingMorePorts,
+	    the invalid ones are reported and skipped */
+	private int[] listOfReceivingPorts()
+	{
+		final String[] more = receivingMorePorts.trim().split("[,; ]+");
+		final int[] ports = new int[1+more.length];
+		ports[0] = receivingPort;
+
+		int cnt = 1;
+		for (String port : more)
+		{
+			if (port.isEmpty()) continue;
+			try {
+				ports[cnt] = Integer.parseInt(port);
+				if (ports[cnt] < 1 || ports[cnt] > 65535) throw new NumberFormatException("out of range");
+				++cnt;
+			}
+			catch (NumberFormatException e) {
+				log.warn("SimViewer: Ignoring invalid receiving port '"+port+"': "+e.getMessage());
+			}
+		}
+		return Arrays.copyOf(ports,cnt);
+	}
+
 	private DisplayScene scene = null;
 	private CommandFromGUI GUIcontrol = null;
 	private Thread CLIcontrol = null;
 	private Thread NETcontrol = null;
+	private Thread NETapplier = null;
+	private Thread NETrecorder = null;
 
 	public void stop()
 	{
@@ -214,6 +298,13 @@ public class SimViewer implements Command
 		if (NETcontrol != null && NETcontrol.isAlive()) NETcontrol.interrupt();
 		NETcontrol = null;
 
+		if (NETapplier != null && NETapplier.isAlive()) NETapplier.interrupt();
+		NETapplier = null;
+
+		//NB: the recorder writes out what has been queued, and stops then
+		if (NETrecorder != null && NETrecorder.isAlive()) NETrecorder.interrupt();
+		NETrecorder = null;
+
 		if (CLIcontrol != null && CLIcontrol.isAlive()) CLIcontrol.interrupt();
 		CLIcontrol = null;
 
@@ -0,0 +1,172 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.elements;
+
+import graphics.scenery.GeometryType;
+import graphics.scenery.Mesh;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/** The merged glyph of a vector: the shaft (a cylinder) and the head (a cone)
+    in one Mesh, so that one instance displays the whole vector. The arrow
+    points along the y axis and is 1 unit long: the shaft spans from 0 to
+    1-headLength and the head the rest. Just like with the separate shaft
+    and head (see the VectorSH), the instance is to be scaled only along
+    the y axis to the vector's (stretched) length -- and the head would be
+    elongated together with the shaft while keeping its absolute width.
+    The head should, however, become also narrower when the vector is
+    shorter than 1 unit; since this depends on the length of every instance,
+    it is done in the vertex shader (Arrow.vert, to be paired with the
+    DisplayScene.frag), which recognizes the
+    vertices of the head by their texture coordinate v = 1 (while it is
+    v = 0 for the shaft). */
+public class Arrow extends Mesh
+{
+	public Arrow(final float shaftRadius, final float headRadius,
+	             final float headLength, final int segments)
+	{
+		super("arrow");
+
+		final float[][] geometry = createGeometry(shaftRadius,headRadius,headLength,segments);
+		setVertices( toBuffer(geometry[0]) );
+		setNormals( toBuffer(geometry[1]) );
+		setTexcoords( toBuffer(geometry[2]) );
+		setGeometryType(GeometryType.TRIANGLES);
+	}
+
+	/** returns the triangles of the arrow (not indexed) as three arrays:
+	    the vertices (x,y,z triplets), their normals (x,y,z triplets)
+	    and their texture coordinates (u,v pairs); the triangles
+	    are oriented counter-clockwise when seen from the outside */
+	public static
+	float[][] createGeometry(final float shaftRadius, final float headRadius,
+	                         final float headLength, final int segments)
+	{
+		//per segment: the shaft's side (2 triangles) and bottom cap,
+		//and the head's side and base
+		final int vertices = 5*3*segments;
+		final float[][] g = { new float[3*vertices], new float[3*vertices], new float[2*vertices] };
+		final int[] cnt = { 0 };
+
+		final float shaftTop = 1.f - headLength;
+		final float coneSlope = headRadius / headLength;
+		for (int k = 0; k < segments; ++k)
+		{
+			final double a0 = 2.0*Math.PI * k / segments;
+			final double a1 = 2.0*Math.PI * (k+1) / segments;
+			final float c0 = (float)Math.cos(a0), s0 = (float)Math.sin(a0);
+			final float c1 = (float)Math.cos(a1), s1 = (float)Math.sin(a1);
+			final float u0 = (float)k / segments, u1 = (float)(k+1) / segments;
+
+			//shaft's side
+			final float r = shaftRadius;
+			addTriangle(g,cnt, 0,
+				r*c0,0,r*s0, c0,0,s0, u0,
+				r*c1,0,r*s1, c1,0,s1, u1,
+				r*c1,shaftTop,r*s1, c1,0,s1, u1);
+			addTriangle(g,cnt, 0,
+				r*c0,0,r*s0, c0,0,s0, u0,
+				r*c1,shaftTop,r*s1, c1,0,s1, u1,
+				r*c0,shaftTop,r*s0, c0,0,s0, u0);
+
+			//shaft's bottom cap
+			addTriangle(g,cnt, 0,
+				0,0,0, 0,-1,0, u0,
+				r*c0,0,r*s0, 0,-1,0, u0,
+				r*c1,0,r*s1, 0,-1,0, u1);
+
+			//head's side
+			final float R = headRadius;
+			final float cm = (float)Math.cos(0.5*(a0+a1)), sm = (float)Math.sin(0.5*(a0+a1));
+			addTriangle(g,cnt, 1,
+				R*c0,shaftTop,R*s0, c0,coneSlope,s0, u0,
+				R*c1,shaftTop,R*s1, c1,coneSlope,s1, u1,
+				0,1,0, cm,coneSlope,sm, 0.5f*(u0+u1));
+
+			//head's base
+			addTriangle(g,cnt, 1,
+				0,shaftTop,0, 0,-1,0, u0,
+				R*c0,shaftTop,R*s0, 0,-1,0, u0,
+				R*c1,shaftTop,R*s1, 0,-1,0, u1);
+		}
+		return g;
+	}
+
+	/** adds the triangle of the vertices A,B,C (positions, normals and the u texture
+	    coordinates), and flips its orientation if it is not facing the normals */
+	private static
+	void addTriangle(final float[][] g, final int[] cnt, final float v,
+	                 final float ax, final float ay, final float az, final float anx, final float any, final float anz, final float au,
+	                 final float bx, final float by, final float bz, final float bnx, final float bny, final float bnz, final float bu,
+	                 final float cx, final float cy, final float cz, final float cnx, final float cny, final float cnz, final float cu)
+	{
+		//the geometrical normal (B-A)x(C-A) vs. the given normals
+		final float ex = bx-ax, ey = by-ay, ez = bz-az;
+		final float fx = cx-ax, fy = cy-ay, fz = cz-az;
+		final float nx = ey*fz - ez*fy, ny = ez*fx - ex*fz, nz = ex*fy - ey*fx;
+		final boolean flip = nx*(anx+bnx+cnx) + ny*(any+bny+cny) + nz*(anz+bnz+cnz) < 0;
+
+		addVertex(g,cnt, ax,ay,az, anx,any,anz, au,v);
+		if (flip)
+		{
+			addVertex(g,cnt, cx,cy,cz, cnx,cny,cnz, cu,v);
+			addVertex(g,cnt, bx,by,bz, bnx,bny,bnz, bu,v);
+		}
+		else
+		{
+			addVertex(g,cnt, bx,by,bz, bnx,bny,bnz, bu,v);
+			addVertex(g,cnt, cx,cy,cz, cnx,cny,cnz, cu,v);
+		}
+	}
+
+	private static
+	void addVertex(final float[][] g, final int[] cnt,
+	               final float x, final float y, final float z,
+	               final float nx, final float ny, final float nz,
+	               final float u, final float v)
+	{
+		final int i = cnt[0]++;
+		g[0][3*i] = x;  g[0][3*i+1] = y;  g[0][3*i+2] = z;
+
+		final float l = (float)Math.sqrt(nx*nx + ny*ny + nz*nz);
+		g[1][3*i] = nx/l;  g[1][3*i+1] = ny/l;  g[1][3*i+2] = nz/l;
+
+		g[2][2*i] = u;  g[2][2*i+1] = v;
+	}
+
+	private static
+	FloatBuffer toBuffer(final float[] a)
+	{
+		final FloatBuffer b = ByteBuffer.allocateDirect(4*a.length).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		b.put(a).flip();
+		return b;
+	}
+}
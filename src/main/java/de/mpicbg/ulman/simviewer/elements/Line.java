@@ -31,27 +31,36 @@ package de.mpicbg.ulman.simviewer.elements;
 
 import graphics.scenery.Node;
 import org.joml.Vector3f;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
+import de.mpicbg.ulman.simviewer.util.ElementsStore;
 
 /** Corresponds to one element that simulator's DrawLine() can send;
     graphically, line is essentially a vector without an arrow head.
-    The class governs all necessary pieces of information to display
-    the line, and the SciView's Nodes are pointed inside this class
-    to (re)fetch the actual display data/instructions. */
+    The class is a thin view on the line's data that are kept in a slot
+    of the ElementsStore, and it holds the SciView's Node that displays
+    the line. */
 public class Line extends Vector
 {
-	public Line()             { super(); }    //without connection to SciView
-	public Line(final Node l) { super(l); }   //  with  connection to SciView
+	/** without connection to SciView */
+	public Line()
+	{
+		super(null, ElementsStore.createSingle(ElementsBatch.Type.LINES), 0);
+		setColorRGB(0.2f,1.0f,0.2f);
+	}
+
+	/** with connection to SciView */
+	public Line(final Node l, final ElementsStore store, final int slot) { super(l,store,slot); }
 
 	/** converts a line, given via its end positions, into a vector-like representation */
 	public void reset(final Vector3f posA, final Vector3f posB, final Vector3f rgbColor)
 	{
 		//essentially supplies the functionality of the Vector::update(),
 		//difference is in the semantics of the input
-		base.set( posA );
-		vector.set( posB ).sub( posA );
-		colorRGB.set( rgbColor );
+		setBase( posA.x, posA.y, posA.z );
+		setVector( posB.x-posA.x, posB.y-posA.y, posB.z-posA.z );
+		setColorRGB( rgbColor.x, rgbColor.y, rgbColor.z );
 
-		//also update the vector's auxScale:
+		//also update the vector's scale:
 		applyScale(1f);
 	}
 
@@ -32,40 +32,100 @@ package de.mpicbg.ulman.simviewer.elements;
 import graphics.scenery.Node;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
+import de.mpicbg.ulman.simviewer.util.ElementsStore;
 
 /** Corresponds to one element that simulator's DrawPoint() can send.
-    The class governs all necessary pieces of information to display
-    a point/sphere, and the SciView's Nodes are pointed inside this class
-    to (re)fetch the actual display data/instructions. */
+    The class is a thin view on the point's data that are kept in a slot
+    of the ElementsStore, and it holds the SciView's Node that displays
+    the point/sphere; the Node's position and scale are (re)set from the
+    point's data with syncNode(). */
 public class Point
 {
-	public Point()             { node = null; }   //without connection to SciView
-	public Point(final Node p) { node = p; }      //  with  connection to SciView
+	/** without connection to SciView, the data are kept in a private one-slot store */
+	public Point()
+	{
+		this(null, ElementsStore.createSingle(ElementsBatch.Type.POINTS), 0);
+		setColorRGB(1.0f,0.2f,0.2f);
+	}
+
+	/** with connection to SciView, the data are kept in the given slot of the given store */
+	public Point(final Node p, final ElementsStore store, final int slot)
+	{
+		node = p;
+		this.store = store;
+		this.slot = slot;
+	}
 
 	// ------- main defining attributes -------
 	public final Node node;
-	public final Vector3f centre = new Vector3f(0); //NB: zeros all three elems
-	public final Vector3f radius = new Vector3f(0);
+	public final ElementsStore store;
+	public final int slot;
+
+	// ------- getters and setters -------
+	public void setCentre(final float x, final float y, final float z)
+	{
+		final float[] c = store.positions;
+		c[3*slot] = x; c[3*slot+1] = y; c[3*slot+2] = z;
+	}
+
+	public Vector3f getCentre(final Vector3f centre)
+	{
+		final float[] c = store.positions;
+		return centre.set(c[3*slot], c[3*slot+1], c[3*slot+2]);
+	}
+
+	public void  setRadius(final float r) { store.radii[slot] = r; }
+	public float getRadius()              { return store.radii[slot]; }
 
 	/** object's color in the RGB format */
-	public final Vector3f colorRGB = new Vector3f(1.0f,0.2f,0.2f);
+	public void setColorRGB(final float r, final float g, final float b)
+	{
+		final float[] c = store.colorsRGB;
+		c[3*slot] = r; c[3*slot+1] = g; c[3*slot+2] = b;
+	}
+
+	/** returns the object's color, or the highlight color if it is highlighted */
+	public Vector3f getColorRGB(final Vector3f rgb)
+	{
+		final float[] c = store.isHighlighted(slot) ? store.highlightRGB : store.colorsRGB;
+		final int o = store.isHighlighted(slot) ? 0 : 3*slot;
+		return rgb.set(c[o], c[o+1], c[o+2]);
+	}
+
+	/** the red component, negative value is an agreed signal to remove the point */
+	public float getColorR() { return store.colorsRGB[3*slot]; }
 
 	/** object's "slave/dependent" color in the RGBA format for the full instancing */
-	private final Vector4f colorRGBA = new Vector4f(1.0f);
+	private Vector4f colorRGBA = null;
 	public Vector4f getColorRGBA()
 	{
-		colorRGBA.x = colorRGB.x;
-		colorRGBA.y = colorRGB.y;
-		colorRGBA.z = colorRGB.z;
+		if (colorRGBA == null) colorRGBA = new Vector4f(1.0f);
+		final float[] c = store.isHighlighted(slot) ? store.highlightRGB : store.colorsRGB;
+		final int o = store.isHighlighted(slot) ? 0 : 3*slot;
+		colorRGBA.x = c[o];
+		colorRGBA.y = c[o+1];
+		colorRGBA.z = c[o+2];
 		return colorRGBA;
 	}
 
-	public int lastSeenTick = 0;
+	public void setLastSeenTick(final int tick) { store.touch(slot,tick); }
+	public int  getLastSeenTick()               { return store.lastSeenTick[slot]; }
 
 	public void update(final Point p)
 	{
-		centre.set( p.centre );
-		radius.set( p.radius );
-		colorRGB.set( p.colorRGB );
+		System.arraycopy(p.store.positions,3*p.slot, store.positions,3*slot, 3);
+		System.arraycopy(p.store.colorsRGB,3*p.slot, store.colorsRGB,3*slot, 3);
+		store.radii[slot] = p.store.radii[p.slot];
+	}
+
+	/** sets the Node's position and scale to the point's centre and radius,
+	    and lets the store update its bounding box and spatial index */
+	public void syncNode()
+	{
+		final float[] c = store.positions;
+		node.getPosition().set(c[3*slot], c[3*slot+1], c[3*slot+2]);
+		node.getScale().set(store.radii[slot]);
+		store.elementChanged(slot);
 	}
 }
@@ -32,51 +32,123 @@ package de.mpicbg.ulman.simviewer.elements;
 import graphics.scenery.Node;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
+import de.mpicbg.ulman.simviewer.util.ElementsStore;
 
 /** Corresponds to one element that simulator's DrawVector() can send.
-    The class governs all necessary pieces of information to display
-    (user-defined scaled version of) the vector, and the SciView's Nodes are
-    pointed inside this class to (re)fetch the actual display data/instructions. */
+    The class is a thin view on the vector's data that are kept in a slot
+    of the ElementsStore, and it holds the SciView's Node that displays
+    (user-defined scaled version of) the vector; the Node's position and
+    scale are (re)set from the vector's data with syncNode() and applyScale(). */
 public class Vector
 {
-	public Vector()             { node = null; }   //without connection to SciView
-	public Vector(final Node v) { node = v; }      //  with  connection to SciView
+	/** without connection to SciView, the data are kept in a private one-slot store */
+	public Vector()
+	{
+		this(null, ElementsStore.createSingle(ElementsBatch.Type.VECTORS), 0);
+		setColorRGB(0.2f,1.0f,0.2f);
+	}
+
+	/** with connection to SciView, the data are kept in the given slot of the given store */
+	public Vector(final Node v, final ElementsStore store, final int slot)
+	{
+		node = v;
+		this.store = store;
+		this.slot = slot;
+	}
 
 	// ------- main defining attributes -------
 	public final Node node;
-	public final Vector3f base   = new Vector3f(0); //NB: zeros all three elems
-	public final Vector3f vector = new Vector3f(0);
+	public final ElementsStore store;
+	public final int slot;
+
+	// ------- getters and setters -------
+	public void setBase(final float x, final float y, final float z)
+	{
+		final float[] b = store.positions;
+		b[3*slot] = x; b[3*slot+1] = y; b[3*slot+2] = z;
+	}
+
+	public Vector3f getBase(final Vector3f base)
+	{
+		final float[] b = store.positions;
+		return base.set(b[3*slot], b[3*slot+1], b[3*slot+2]);
+	}
+
+	public void setVector(final float x, final float y, final float z)
+	{
+		final float[] v = store.vectors;
+		v[3*slot] = x; v[3*slot+1] = y; v[3*slot+2] = z;
+	}
+
+	public Vector3f getVector(final Vector3f vector)
+	{
+		final float[] v = store.vectors;
+		return vector.set(v[3*slot], v[3*slot+1], v[3*slot+2]);
+	}
+
+	/** returns the (not stretched) length of the vector */
+	public float getLength()
+	{
+		final float[] v = store.vectors;
+		final float x = v[3*slot], y = v[3*slot+1], z = v[3*slot+2];
+		return (float)Math.sqrt(x*x + y*y + z*z);
+	}
 
 	/** object's color in the RGB format */
-	public final Vector3f colorRGB = new Vector3f(0.2f,1.0f,0.2f);
+	public void setColorRGB(final float r, final float g, final float b)
+	{
+		final float[] c = store.colorsRGB;
+		c[3*slot] = r; c[3*slot+1] = g; c[3*slot+2] = b;
+	}
+
+	/** returns the object's color, or the highlight color if it is highlighted */
+	public Vector3f getColorRGB(final Vector3f rgb)
+	{
+		final float[] c = store.isHighlighted(slot) ? store.highlightRGB : store.colorsRGB;
+		final int o = store.isHighlighted(slot) ? 0 : 3*slot;
+		return rgb.set(c[o], c[o+1], c[o+2]);
+	}
+
+	/** the red component, negative value is an agreed signal to remove the vector */
+	public float getColorR() { return store.colorsRGB[3*slot]; }
 
 	/** object's "slave/dependent" color in the RGBA format for the full instancing */
-	private final Vector4f colorRGBA = new Vector4f(1.0f);
+	private Vector4f colorRGBA = null;
 	public Vector4f getColorRGBA()
 	{
-		colorRGBA.x = colorRGB.x;
-		colorRGBA.y = colorRGB.y;
-		colorRGBA.z = colorRGB.z;
+		if (colorRGBA == null) colorRGBA = new Vector4f(1.0f);
+		final float[] c = store.isHighlighted(slot) ? store.highlightRGB : store.colorsRGB;
+		final int o = store.isHighlighted(slot) ? 0 : 3*slot;
+		colorRGBA.x = c[o];
+		colorRGBA.y = c[o+1];
+		colorRGBA.z = c[o+2];
 		return colorRGBA;
 	}
 
-	public int lastSeenTick = 0;
+	public void setLastSeenTick(final int tick) { store.touch(slot,tick); }
+	public int  getLastSeenTick()               { return store.lastSeenTick[slot]; }
 
-	// ------- derived (aux) attributes -------
-	/** this attribute is a function of vector:
-	    auxScale.y is the vector length (because master instance vector
-	    is oriented along y axis, so we elongate it to the desired length
-	    only along this axis (and then rotate, then place to 'base')),
-	    auxScale.x and .z should remain 1 (= no scaling) */
-	public final Vector3f auxScale = new Vector3f(1);
+	// ------- setters of the display -------
+	/** sets the Node's position to the vector's base,
+	    and lets the store update its bounding box and spatial index */
+	public void syncNode()
+	{
+		final float[] b = store.positions;
+		node.getPosition().set(b[3*slot], b[3*slot+1], b[3*slot+2]);
+		store.elementChanged(slot);
+	}
 
-	// ------- setters -------
-	/** adjusts aux attribs to draw the vector scale-times
-	    larger than what it is originally; if such scaling
-	    is required, it must be called right after this.update() */
+	/** adjusts the Node's scale to draw the vector scale-times
+	    larger than what it is originally: the scale.y is the vector
+	    length (because master instance vector is oriented along y axis,
+	    so we elongate it to the desired length only along this axis (and
+	    then rotate, then place to 'base')), scale.x and .z remain 1 (= no
+	    scaling); if such scaling is required, it must be called right
+	    after this.update(), it does nothing if there is no Node */
 	public void applyScale(final float scale)
 	{
-		auxScale.y = scale * vector.length();
+		if (node != null) node.getScale().set(1f, scale * getLength(), 1f);
 	}
 
 	/** clones the given 'v' into this vector, and updates all necessary aux attribs */
@@ -90,9 +162,9 @@ public class Vector
 	    to replace constructs: v.update(V); v.applyScale(scale); */
 	public void updateAndScale(final Vector v, final float scale)
 	{
-		base.set( v.base );
-		vector.set( v.vector );
-		colorRGB.set( v.colorRGB );
+		System.arraycopy(v.store.positions,3*v.slot, store.positions,3*slot, 3);
+		System.arraycopy(v.store.vectors,  3*v.slot, store.vectors,  3*slot, 3);
+		System.arraycopy(v.store.colorsRGB,3*v.slot, store.colorsRGB,3*slot, 3);
 
 		applyScale(scale);
 	}
@@ -30,27 +30,30 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package de.mpicbg.ulman.simviewer.elements;
 
 import graphics.scenery.Node;
-import org.joml.Vector3f;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
+import de.mpicbg.ulman.simviewer.util.ElementsStore;
 
 /** Corresponds to one element that simulator's DrawVector() can send.
     Compared to the superclass Vector, this one recognizes vector as
     two graphical elements, a Shaft and a Head, and has therefore more
-    housekeeping attributes.
-    The class governs all necessary pieces of information to display
-    (user-defined scaled version of) the vector, and the SciView's Nodes are
-    pointed inside this class to (re)fetch the actual display data/instructions. */
+    housekeeping to do.
+    The class is a thin view on the vector's data that are kept in a slot
+    of the ElementsStore, and it holds the SciView's Nodes that display
+    (user-defined scaled version of) the vector. */
 public class VectorSH extends Vector
 {
 	public VectorSH() //without connection to SciView
 	{
-		super();
+		super(null, ElementsStore.createSingle(ElementsBatch.Type.VECTORS), 0);
+		setColorRGB(0.2f,1.0f,0.2f);
 		nodeHead = null;
 	}
 
 	public VectorSH(final Node shaftNode, //with connection to SciView
-	                final Node headNode)
+	                final Node headNode,
+	                final ElementsStore store, final int slot)
 	{
-		super(shaftNode);
+		super(shaftNode,store,slot);
 		nodeHead = headNode;
 	}
 
@@ -59,15 +62,6 @@ public class VectorSH extends Vector
 	    reference on the Node that draws vector's shaft is in super.node */
 	public final Node nodeHead;
 
-	// ------- derived (aux) attributes -------
-	/** similar to the idea behind super.auxScale, we host this extra
-	    memory to adjust separately the scaling of the vector's head */
-	public final Vector3f auxScaleHead = new Vector3f(1);
-
-	/** this attribute is a function of vector:
-	    it defines the position/placement of the head of the vector */
-	public final Vector3f auxHeadBase = new Vector3f(0);
-
 	// ------- setters -------
 	/** shadow/override the superclass'es applyScale() with a new one
 	    that can provide default values for the 'headPosRatio' */
@@ -86,24 +80,31 @@ public class VectorSH extends Vector
 	}
 
 
-	/** adjusts aux attribs to draw the vector scale-times
+	/** adjusts the Nodes to draw the vector scale-times
 	    larger than what it is originally; if such scaling
 	    is required, it must not be called before this.update() */
 	public void applyScale(final float scale, final float headPosRatio)
 	{
 		super.applyScale(scale);
+		if (nodeHead == null) return;
 
 		//how to scale the head?
 		// - longitudially/axially the same as the vector's shaft
-		auxScaleHead.y = auxScale.y;
+		final float y = node.getScale().y;
 		//
 		// - laterally don't scale (that is keep fixed absolute diameter)
 		//   unless the head's length will be much shorter than the head's width
 		//   in which case we start down-scaling proportionally
-		auxScaleHead.x = Math.min(auxScaleHead.y, 1f);
-		auxScaleHead.z = auxScaleHead.x;
-
-		auxHeadBase.set( vector ).mulAdd(scale * (1f-headPosRatio), base);
+		final float xz = Math.min(y, 1f);
+		nodeHead.getScale().set(xz, y, xz);
+
+		//the position/placement of the head of the vector
+		final float[] b = store.positions;
+		final float[] v = store.vectors;
+		final float s = scale * (1f-headPosRatio);
+		nodeHead.getPosition().set(b[3*slot]   + s*v[3*slot],
+		                           b[3*slot+1] + s*v[3*slot+1],
+		                           b[3*slot+2] + s*v[3*slot+2]);
 	}
 
 	/** clones the given 'v' into this vector, and updates all necessary aux attribs */
@@ -0,0 +1,158 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Definition of the binary "v3" messages of the "network-protocol". These are
+ * compact counterparts of the textual "v2 points", "v2 lines" and "v2 vectors"
+ * messages, and they can be freely interleaved with the textual messages (they
+ * share the same socket in the CommandFromNetwork and the same file in the
+ * CommandFromFlightRecorder). The "tick" message stays textual.
+ *
+ * Every binary message consists of a fixed 8-bytes long header and N records:
+ *
+ * header: 3 bytes of ASCII "v3 ", 1 byte of ASCII type ('p', 'l' or 'v'),
+ *         and int32 with N, the number of records in the message
+ *
+ * point  record (32 bytes): int32 ID, float32 x,y,z of the centre, float32 radius, float32 r,g,b
+ * line   record (40 bytes): int32 ID, float32 x,y,z of the base, float32 x,y,z of the vector, float32 r,g,b
+ * vector record (40 bytes): int32 ID, float32 x,y,z of the base, float32 x,y,z of the vector, float32 r,g,b
+ *
+ * All numbers are stored in the little-endian byte order. Negative red color
+ * component is, just like in the textual messages, a signal to remove the element.
+ * Since the length of every message is given with its header, the binary messages
+ * need no delimiter; when saved into a FlightRecording file, a newline is however
+ * appended after each of them to keep the file "line oriented" for the textual messages.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class BinaryProtocol
+{
+	/** the common prefix of all binary messages */
+	public static final String PREFIX = "v3 ";
+
+	public static final byte TYPE_POINTS  = 'p';
+	public static final byte TYPE_LINES   = 'l';
+	public static final byte TYPE_VECTORS = 'v';
+
+	public static final int HEADER_SIZE        = 8;
+	public static final int POINT_RECORD_SIZE  = 32;
+	public static final int LINE_RECORD_SIZE   = 40;
+	public static final int VECTOR_RECORD_SIZE = 40;
+
+	/** returns true if the message (from its position()) is a binary one */
+	public static
+	boolean isBinaryMessage(final ByteBuffer msg)
+	{
+		return MessageTokenizer.startsWith(msg,PREFIX);
+	}
+
+	/** returns the type of the binary message (from its position()) */
+	public static
+	byte getType(final ByteBuffer msg)
+	{
+		return msg.get(msg.position()+3);
+	}
+
+	/** returns the number of records of the binary message (from its position()) */
+	public static
+	int getCount(final ByteBuffer msg)
+	{
+		final int p = msg.position()+4;
+		//NB: explicitly little endian regardless of the msg's order()
+		return (msg.get(p) & 0xFF) | (msg.get(p+1) & 0xFF) << 8
+		     | (msg.get(p+2) & 0xFF) << 16 | (msg.get(p+3) & 0xFF) << 24;
+	}
+
+	/** returns the size of one record of the given type, or -1 for unknown type */
+	public static
+	int getRecordSize(final byte type)
+	{
+		switch (type)
+		{
+		case TYPE_POINTS:  return POINT_RECORD_SIZE;
+		case TYPE_LINES:   return LINE_RECORD_SIZE;
+		case TYPE_VECTORS: return VECTOR_RECORD_SIZE;
+		default:           return -1;
+		}
+	}
+
+	/** returns the full length (in bytes, incl. the header) of the binary
+	    message that starts at the msg's position(), or -1 if the header
+	    is not available (yet) or is invalid, or if it is not a binary message at all */
+	public static
+	long getMessageLength(final ByteBuffer msg)
+	{
+		if (msg.remaining() < HEADER_SIZE || !isBinaryMessage(msg)) return -1;
+
+		final int recSize = getRecordSize(getType(msg));
+		final int N = getCount(msg);
+		if (recSize < 0 || N < 0) return -1;
+
+		return HEADER_SIZE + (long)N * (long)recSize;
+	}
+	//----------------------------------------------------------------------------
+
+	/** creates a little-endian buffer with the header of the given type
+	    and room for N records, the buffer is positioned after the header */
+	public static
+	ByteBuffer allocateMessage(final byte type, final int N)
+	{
+		final ByteBuffer msg = ByteBuffer.allocate(HEADER_SIZE + N*getRecordSize(type));
+		msg.order(ByteOrder.LITTLE_ENDIAN);
+		msg.put((byte)'v').put((byte)'3').put((byte)' ').put(type).putInt(N);
+		return msg;
+	}
+
+	/** appends one point record into a buffer created with allocateMessage() */
+	public static
+	void putPoint(final ByteBuffer msg, final int ID,
+	              final float x, final float y, final float z, final float radius,
+	              final float r, final float g, final float b)
+	{
+		msg.putInt(ID).putFloat(x).putFloat(y).putFloat(z).putFloat(radius)
+		   .putFloat(r).putFloat(g).putFloat(b);
+	}
+
+	/** appends one line or vector record into a buffer created with allocateMessage() */
+	public static
+	void putLineOrVector(final ByteBuffer msg, final int ID,
+	                     final float x, final float y, final float z,
+	                     final float dx, final float dy, final float dz,
+	                     final float r, final float g, final float b)
+	{
+		msg.putInt(ID).putFloat(x).putFloat(y).putFloat(z)
+		   .putFloat(dx).putFloat(dy).putFloat(dz)
+		   .putFloat(r).putFloat(g).putFloat(b);
+	}
+}
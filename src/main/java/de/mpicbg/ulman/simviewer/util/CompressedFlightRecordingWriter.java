@@ -0,0 +1,218 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the compressed variant of a FlightRecording file. The messages
+ * (exactly as they would appear in the plain file) are gathered into blocks
+ * of (roughly) blockSize bytes, and every block is compressed separately with
+ * the Deflater. A block always holds a whole number of time points, so any
+ * time point can be later read back by inflating only one block.
+ *
+ * The file format, all numbers are big-endian:
+ *
+ * header:  long MAGIC
+ * blocks:  compressed (zlib) data of the 1st block, of the 2nd block, ...
+ * index:   int number of blocks, and for every block:
+ *          long offset in the file, int compressed length, int uncompressed length
+ * trailer: long offset of the index in the file, long MAGIC
+ *
+ * The offsets of the time points themselves are not stored, they refer to
+ * the uncompressed stream of the messages and the FlightRecording finds and
+ * saves them into its sidecar index file just like for the plain recordings.
+ *
+ * The main() converts a plain recording into the compressed one.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class CompressedFlightRecordingWriter implements Closeable
+{
+	/** the first and the last bytes of every compressed recording */
+	public static final long MAGIC = 0x5356465241524331L; //"SVFRARC1"
+
+	/** the size of the trailer, the last bytes of every compressed recording */
+	public static final int TRAILER_SIZE = 16;
+
+	/** the default (uncompressed) size of one block */
+	public static final int DEFAULT_BLOCK_SIZE = 4 << 20;
+
+	/** creates the file and writes its header */
+	public
+	CompressedFlightRecordingWriter(final Path file, final int blockSize)
+	throws IOException
+	{
+		this.blockSize = blockSize;
+		block = new byte[blockSize];
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+		out.writeLong(MAGIC);
+		filePos = 8;
+	}
+
+	public
+	CompressedFlightRecordingWriter(final Path file)
+	throws IOException
+	{
+		this(file, DEFAULT_BLOCK_SIZE);
+	}
+
+	private final DataOutputStream out;
+	private final int blockSize;
+
+	/** the current block (not compressed yet) */
+	private byte[] block;
+	private int blockUsed = 0;
+
+	/** where the next compressed block will start in the file */
+	private long filePos;
+
+	/** the index: blocksIndex[3*b + 0,1,2] are the file offset,
+	    the compressed and uncompressed lengths of the block 'b' */
+	private long[] blocksIndex = new long[3*64];
+	private int blocksCount = 0;
+
+	private final Deflater deflater = new Deflater();
+	private final byte[] deflated = new byte[1 << 16];
+
+	//--------------------------------------------
+
+	/** appends all (remaining) bytes of the 'tpData', which must be all
+	    messages of one time point, including the closing "tick" message */
+	public
+	void writeTimepoint(final ByteBuffer tpData)
+	throws IOException
+	{
+		final int length = tpData.remaining();
+
+		//start a new block if this time point would not fit into the current one
+		if (blockUsed > 0 && blockUsed + length > blockSize) flushBlock();
+
+		//NB: an exceptionally large time point makes its own (larger) block
+		if (blockUsed + length > block.length) block = Arrays.copyOf(block, blockUsed+length);
+
+		tpData.duplicate().get(block, blockUsed, length);
+		blockUsed += length;
+	}
+
+	/** compresses and writes out the current block (if not empty) */
+	private
+	void flushBlock()
+	throws IOException
+	{
+		if (blockUsed == 0) return;
+
+		deflater.reset();
+		deflater.setInput(block, 0, blockUsed);
+		deflater.finish();
+
+		long compressed = 0;
+		while (!deflater.finished())
+		{
+			final int len = deflater.deflate(deflated);
+			out.write(deflated, 0, len);
+			compressed += len;
+		}
+
+		if (3*blocksCount == blocksIndex.length) blocksIndex = Arrays.copyOf(blocksIndex, 2*blocksIndex.length);
+		blocksIndex[3*blocksCount+0] = filePos;
+		blocksIndex[3*blocksCount+1] = compressed;
+		blocksIndex[3*blocksCount+2] = blockUsed;
+		++blocksCount;
+
+		filePos += compressed;
+		blockUsed = 0;
+	}
+
+	/** flushes the last block, writes the index and the trailer */
+	@Override
+	public
+	void close()
+	throws IOException
+	{
+		try {
+			flushBlock();
+
+			out.writeInt(blocksCount);
+			for (int b = 0; b < blocksCount; ++b)
+			{
+				out.writeLong(blocksIndex[3*b+0]);
+				out.writeInt((int)blocksIndex[3*b+1]);
+				out.writeInt((int)blocksIndex[3*b+2]);
+			}
+
+			out.writeLong(filePos);
+			out.writeLong(MAGIC);
+		}
+		finally {
+			out.close();
+			deflater.end();
+		}
+	}
+
+	//--------------------------------------------
+
+	/** converts the plain recording args[0] into the compressed args[1],
+	    optionally with the block size args[2] given in kB */
+	public static
+	void main(String... args)
+	{
+		if (args.length < 2)
+		{
+			System.out.println("Usage: CompressedFlightRecordingWriter plainRecording.txt compressedRecording.svfr [blockSizeInKB]");
+			return;
+		}
+
+		final int blockSize = args.length > 2 ? Integer.parseInt(args[2]) << 10 : DEFAULT_BLOCK_SIZE;
+		final long time = System.currentTimeMillis();
+
+		try (FlightRecording in = new FlightRecording(Paths.get(args[0]));
+		     CompressedFlightRecordingWriter out = new CompressedFlightRecordingWriter(Paths.get(args[1]), blockSize))
+		{
+			for (int tp = 0; tp < in.getTimepointsCount(); ++tp)
+				out.writeTimepoint(in.mapTimepoint(tp));
+
+			System.out.println("Compressed "+in.getTimepointsCount()+" time points into "
+				+out.blocksCount+" blocks in "+(System.currentTimeMillis()-time)+" ms");
+		}
+		catch (IOException e) {
+			System.out.println("Failed: "+e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+/**
+ * Columnar (struct-of-arrays) container of many elements of the same type,
+ * typically the content of one "points", "lines" or "vectors" message. It
+ * is filled by the NetMessagesProcessor and handed over at once into the
+ * DisplayScene's addUpdateOrRemovePoints(), addUpdateOrRemoveLines() or
+ * addUpdateOrRemoveVectors(). The arrays are re-used (and only grown when
+ * needed) from one message to another.
+ *
+ * The i-th element is described with IDs[i], and with the triplets starting
+ * at [3*i] in the positions[], vectors[] and colorsRGB[] arrays, and with
+ * radii[i] (for points only).
+ *
+ * The batch can also represent the "tick" message (in which case it holds
+ * no elements but the tickMessage), which makes it a complete, pre-decoded
+ * representation of any understood message; this allows to queue the batches
+ * in between the parsing and applying stages, see the MessagesPipeline.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class ElementsBatch
+{
+	public enum Type { POINTS, LINES, VECTORS, TICK }
+
+	/** the type of elements currently stored */
+	public Type type = Type.POINTS;
+
+	/** the number of elements currently stored */
+	public int count = 0;
+
+	/** IDs of the elements */
+	public int[] IDs = new int[0];
+	/** centres of points, or bases of lines and vectors (x,y,z triplets) */
+	public float[] positions = new float[0];
+	/** the (not stretched) vectors of lines and vectors (x,y,z triplets) */
+	public float[] vectors = new float[0];
+	/** radii of points */
+	public float[] radii = new float[0];
+	/** colors of the elements (r,g,b triplets) */
+	public float[] colorsRGB = new float[0];
+
+	/** the free-format text of the "tick" message (for the TICK type only) */
+	public String tickMessage = null;
+
+	/** the max number of elements in a batch, such that the (over-allocated)
+	    arrays of triplets can be still indexed with an int */
+	public static final int MAX_COUNT = Integer.MAX_VALUE / 4;
+
+	/** empties this batch, and makes sure it can hold N elements of the given type,
+	    N must be within [0,MAX_COUNT] (IllegalArgumentException is thrown otherwise) */
+	public
+	void reset(final Type type, final int N)
+	{
+		if (N < 0 || N > MAX_COUNT)
+			throw new IllegalArgumentException("ElementsBatch: Cannot hold "+N+" elements.");
+
+		this.type = type;
+		this.count = 0;
+		this.tickMessage = null;
+
+		if (IDs.length < N)
+		{
+			//over-allocate a bit to grow less often
+			final int capacity = N + (N >> 3);
+			IDs       = new int[capacity];
+			positions = new float[3*capacity];
+			vectors   = new float[3*capacity];
+			radii     = new float[capacity];
+			colorsRGB = new float[3*capacity];
+		}
+	}
+}
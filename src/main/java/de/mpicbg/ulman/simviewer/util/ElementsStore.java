@@ -0,0 +1,476 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.util.Arrays;
+
+/**
+ * Columnar (struct-of-arrays) storage of the displayed elements of the same
+ * type. Every element occupies one slot, and its data are then found at the
+ * index of the slot in the IDs[], lastSeenTick[] and radii[] (for points only)
+ * arrays, and at the index 3*slot in the positions[], vectors[] (for lines and
+ * vectors only) and colorsRGB[] arrays -- just like in the ElementsBatch.
+ *
+ * The elements of the DisplayScene (the Point, Line and VectorSH objects, which
+ * also hold the scenery Nodes) are only thin views on their slots. The scans
+ * over all elements (e.g. when the scene is resized or garbage collected) thus
+ * run over few contiguous arrays instead of chasing the individual objects.
+ *
+ * Slots of removed elements are kept in the free-slots list and re-used for
+ * the new elements (the most recently freed slot first), so the store never
+ * shrinks and the scans have to skip over the unused slots (see isUsed()).
+ * The arrays may be replaced when the store grows, the views must therefore
+ * always access them via the store. The store is not synchronized.
+ *
+ * The used slots are furthermore chained, with the genPrev[] and genNext[]
+ * arrays, into one list ordered by their lastSeenTick -- the elements of the
+ * same tick (generation) form a contiguous run (a bucket) in it, the oldest
+ * generation comes first. Touching an element (see touch()) unlinks its slot
+ * and appends it to the end of the list, which is O(1) as long as the ticks
+ * do not go backwards. The elements that fell out of a tolerance window are
+ * thus always found at the beginning of the list (see getOldestSlot()), and
+ * the garbage collection needs to visit only them.
+ *
+ * The store also maintains the bounding box of its elements. Whenever an
+ * element is changed, it should report it with elementChanged(); the box is
+ * then only extended, or, if the element was the one that defined some of
+ * the box's extremes and it has moved inwards (or was released), the box is
+ * marked to be recomputed at its next use. The box is thus typically
+ * available in O(1), see extendBoundingBox().
+ *
+ * Finally, the used slots are also chained, with the cellPrev[] and cellNext[]
+ * arrays, into per-cell lists, where the cell is given with the cell-ID bits
+ * of the element's ID (see getCellID() and the ID space description in the
+ * DisplayScene). All elements of one cell can be thus visited without scanning
+ * the whole store, see getFirstSlotOfCell() and getNextSlotOfCell().
+ *
+ * Optionally, the elements are also kept in a SpatialGrid (see setGrid()),
+ * which is then updated from the elementChanged() and release() too.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class ElementsStore
+{
+	/** creates an empty store for the elements of the given type */
+	public ElementsStore(final ElementsBatch.Type type, final int initialCapacity)
+	{
+		this.type = type;
+		allocateArrays( Math.max(initialCapacity,1) );
+	}
+
+	/** creates a store with exactly one (already allocated) slot 0,
+	    to be used by the elements that are not part of any scene */
+	public static
+	ElementsStore createSingle(final ElementsBatch.Type type)
+	{
+		final ElementsStore s = new ElementsStore(type,1);
+		s.allocate(0);
+		return s;
+	}
+
+	/** the type of the stored elements */
+	public final ElementsBatch.Type type;
+
+	/** IDs of the elements */
+	public int[] IDs;
+	/** the tickCounter of the scene when the elements were updated last time,
+	    use touch() to change it (to keep the generations list in order) */
+	public int[] lastSeenTick;
+	/** centres of points, or bases of lines and vectors (x,y,z triplets) */
+	public float[] positions;
+	/** the (not stretched) vectors of lines and vectors (x,y,z triplets), null for points */
+	public float[] vectors;
+	/** radii of points, null for lines and vectors */
+	public float[] radii;
+	/** colors of the elements (r,g,b triplets) */
+	public float[] colorsRGB;
+
+	/** is the slot occupied? */
+	private boolean[] used;
+
+	/** the stack of the slots that were occupied and are not anymore */
+	private int[] freeSlots;
+	private int freeCount = 0;
+
+	/** slots beyond this one were never occupied */
+	private int slotsCount = 0;
+
+	/** the number of occupied slots */
+	private int size = 0;
+
+	/** the generations list: neighbouring slots (or -1), and its both ends */
+	private int[] genPrev, genNext;
+	private int genOldest = -1, genNewest = -1;
+
+	/** the bounding box of the elements (valid only if !boundsDirty),
+	    and the slots that define its extremes (or -1) */
+	private final float[] boundsMin = new float[3], boundsMax = new float[3];
+	private final int[] boundsMinSlot = new int[3], boundsMaxSlot = new int[3];
+	private boolean boundsDirty = true;
+
+	/** the number of the distinct cell IDs, the cell ID is 14 bits wide */
+	public static final int CELLS_COUNT = 1 << 14;
+
+	/** returns the cell ID from the given element ID, the general purpose
+	    (not-a-cell) elements have it 0 */
+	public static
+	int getCellID(final int ID)
+	{
+		return (ID >> 17) & (CELLS_COUNT-1);
+	}
+
+	/** the per-cell lists: the first slot of every cell (or -1), and the
+	    neighbouring slots (or -1); the cellHead[] grows only up to the
+	    largest cell ID seen so far */
+	private int[] cellHead = new int[0];
+	private int[] cellPrev, cellNext;
+
+	/** elements of this cell (if non-negative) report the highlightRGB
+	    color instead of their own, see isHighlighted() */
+	public int highlightedCell = -1;
+	public final float[] highlightRGB = { 1.0f, 1.0f, 1.0f };
+
+	/** the spatial index of the elements, or null */
+	private SpatialGrid grid = null;
+
+	//--------------------------------------------
+
+	/** returns a slot for a new element with the given ID */
+	public
+	int allocate(final int ID)
+	{
+		final int slot;
+		if (freeCount > 0) slot = freeSlots[--freeCount];
+		else
+		{
+			if (slotsCount == IDs.length) grow(2*slotsCount);
+			slot = slotsCount++;
+		}
+
+		used[slot] = true;
+		IDs[slot] = ID;
+		++size;
+
+		//NB: the new element is as young as the youngest one, until touched
+		lastSeenTick[slot] = genNewest > -1 ? lastSeenTick[genNewest] : 0;
+		genLinkAfter(slot, genNewest);
+		cellLink(slot);
+		return slot;
+	}
+
+	/** makes the slot available for other elements */
+	public
+	void release(final int slot)
+	{
+		if (!used[slot]) return;
+
+		used[slot] = false;
+		freeSlots[freeCount++] = slot;
+		--size;
+		genUnlink(slot);
+		cellUnlink(slot);
+		if (grid != null) grid.remove(slot);
+
+		if (!boundsDirty)
+			for (int d = 0; d < 3; ++d)
+				if (boundsMinSlot[d] == slot || boundsMaxSlot[d] == slot) boundsDirty = true;
+	}
+
+	/** sets the lastSeenTick of the slot, and moves the slot into the
+	    generation of this tick; the slot must be used */
+	public
+	void touch(final int slot, final int tick)
+	{
+		lastSeenTick[slot] = tick;
+
+		//already at the right place? (e.g. when touched twice within the same tick)
+		if (slot == genNewest && (genPrev[slot] == -1 || lastSeenTick[genPrev[slot]] <= tick)) return;
+
+		genUnlink(slot);
+
+		//find the youngest slot not younger than this one,
+		//which is the newest slot unless the ticks went backwards
+		int after = genNewest;
+		while (after > -1 && lastSeenTick[after] > tick) after = genPrev[after];
+		genLinkAfter(slot, after);
+	}
+
+	/** returns the used slot with the smallest lastSeenTick, or -1 if the store is empty;
+	    removing the oldest slot one by one thus visits only the expired elements */
+	public
+	int getOldestSlot()
+	{
+		return genOldest;
+	}
+
+	/** returns true if the slot holds an element */
+	public
+	boolean isUsed(final int slot)
+	{
+		return used[slot];
+	}
+
+	/** returns the number of the slots to be scanned, that is
+	    all used slots are in the range [0,getSlotsCount()) */
+	public
+	int getSlotsCount()
+	{
+		return slotsCount;
+	}
+
+	/** returns the number of stored elements */
+	public
+	int size()
+	{
+		return size;
+	}
+
+	/** returns the first slot of the elements of the given cell, or -1 if there is none */
+	public
+	int getFirstSlotOfCell(final int cellID)
+	{
+		return cellID < cellHead.length ? cellHead[cellID] : -1;
+	}
+
+	/** returns the next slot of the elements of the same cell as the given slot, or -1 */
+	public
+	int getNextSlotOfCell(final int slot)
+	{
+		return cellNext[slot];
+	}
+
+	/** returns true if the element in the given slot belongs to the highlighted cell */
+	public
+	boolean isHighlighted(final int slot)
+	{
+		return highlightedCell > -1 && getCellID(IDs[slot]) == highlightedCell;
+	}
+
+	/** sets the spatial index to be maintained along with the elements, or null */
+	public
+	void setGrid(final SpatialGrid grid)
+	{
+		this.grid = grid;
+	}
+
+	public
+	SpatialGrid getGrid()
+	{
+		return grid;
+	}
+
+	/** updates the bounding box and the spatial index (if any)
+	    after the element in the given slot has changed */
+	public
+	void elementChanged(final int slot)
+	{
+		updateBounds(slot);
+		if (grid != null) grid.update(slot);
+	}
+
+	/** updates the bounding box after the element in the given slot has changed
+	    (incl. the radii of points and the tips of lines and vectors) */
+	private
+	void updateBounds(final int slot)
+	{
+		//to be recomputed anyway?
+		if (boundsDirty) return;
+
+		for (int d = 0; d < 3; ++d)
+		{
+			//NB: the radius should be non-negative, and so 'lo <= hi'
+			final float lo = getLowerExtent(slot,d);
+			final float hi = getUpperExtent(slot,d);
+
+			if (lo <= boundsMin[d]) { boundsMin[d] = lo; boundsMinSlot[d] = slot; }
+			else if (boundsMinSlot[d] == slot) boundsDirty = true;
+
+			if (hi >= boundsMax[d]) { boundsMax[d] = hi; boundsMaxSlot[d] = slot; }
+			else if (boundsMaxSlot[d] == slot) boundsDirty = true;
+		}
+	}
+
+	/** extends the given min and max corners to include all stored elements
+	    (incl. the radii of points and the tips of lines and vectors),
+	    and returns false (and leaves the corners intact) if the store is empty */
+	public
+	boolean extendBoundingBox(final float[] min, final float[] max)
+	{
+		if (boundsDirty) recomputeBounds();
+		if (size == 0) return false;
+
+		for (int d = 0; d < 3; ++d)
+		{
+			if (boundsMin[d] < min[d]) min[d] = boundsMin[d];
+			if (boundsMax[d] > max[d]) max[d] = boundsMax[d];
+		}
+		return true;
+	}
+
+	/** extends the given min and max corners to include all elements of the given
+	    cell, and returns false (and leaves the corners intact) if there are none */
+	public
+	boolean extendBoundingBoxOfCell(final int cellID, final float[] min, final float[] max)
+	{
+		int slot = getFirstSlotOfCell(cellID);
+		if (slot == -1) return false;
+
+		for (; slot > -1; slot = cellNext[slot])
+			for (int d = 0; d < 3; ++d)
+			{
+				final float lo = getLowerExtent(slot,d);
+				final float hi = getUpperExtent(slot,d);
+				if (lo < min[d]) min[d] = lo;
+				if (hi > max[d]) max[d] = hi;
+			}
+		return true;
+	}
+
+	/** returns the minimal coordinate along the axis 'd' of the element in the slot */
+	private
+	float getLowerExtent(final int slot, final int d)
+	{
+		final float p = positions[3*slot+d];
+		return radii != null ? p-radii[slot] : Math.min(p, p+vectors[3*slot+d]);
+	}
+
+	/** returns the maximal coordinate along the axis 'd' of the element in the slot */
+	private
+	float getUpperExtent(final int slot, final int d)
+	{
+		final float p = positions[3*slot+d];
+		return radii != null ? p+radii[slot] : Math.max(p, p+vectors[3*slot+d]);
+	}
+
+	/** scans over all stored elements to (re)establish the bounding box */
+	private
+	void recomputeBounds()
+	{
+		for (int d = 0; d < 3; ++d)
+		{
+			boundsMin[d] = Float.POSITIVE_INFINITY;
+			boundsMax[d] = Float.NEGATIVE_INFINITY;
+			boundsMinSlot[d] = -1;
+			boundsMaxSlot[d] = -1;
+		}
+		boundsDirty = false;
+
+		for (int s = 0; s < slotsCount; ++s)
+			if (used[s]) updateBounds(s);
+	}
+
+	//--------------------------------------------
+
+	private
+	void genUnlink(final int slot)
+	{
+		final int p = genPrev[slot];
+		final int n = genNext[slot];
+		if (p > -1) genNext[p] = n; else genOldest = n;
+		if (n > -1) genPrev[n] = p; else genNewest = p;
+		genPrev[slot] = -1;
+		genNext[slot] = -1;
+	}
+
+	/** links the slot right after the 'after' slot, or
+	    as the oldest one if 'after' is -1 */
+	private
+	void genLinkAfter(final int slot, final int after)
+	{
+		final int n = after > -1 ? genNext[after] : genOldest;
+		genPrev[slot] = after;
+		genNext[slot] = n;
+		if (after > -1) genNext[after] = slot; else genOldest = slot;
+		if (n > -1) genPrev[n] = slot; else genNewest = slot;
+	}
+
+	private
+	void cellLink(final int slot)
+	{
+		final int cell = getCellID(IDs[slot]);
+		if (cell >= cellHead.length)
+		{
+			final int oldLength = cellHead.length;
+			cellHead = Arrays.copyOf(cellHead, Math.min(Math.max(2*oldLength, cell+1), CELLS_COUNT));
+			Arrays.fill(cellHead, oldLength, cellHead.length, -1);
+		}
+
+		final int n = cellHead[cell];
+		cellPrev[slot] = -1;
+		cellNext[slot] = n;
+		if (n > -1) cellPrev[n] = slot;
+		cellHead[cell] = slot;
+	}
+
+	private
+	void cellUnlink(final int slot)
+	{
+		final int p = cellPrev[slot];
+		final int n = cellNext[slot];
+		if (p > -1) cellNext[p] = n; else cellHead[getCellID(IDs[slot])] = n;
+		if (n > -1) cellPrev[n] = p;
+		cellPrev[slot] = -1;
+		cellNext[slot] = -1;
+	}
+
+	private
+	void allocateArrays(final int capacity)
+	{
+		IDs          = new int[capacity];
+		lastSeenTick = new int[capacity];
+		positions    = new float[3*capacity];
+		vectors      = type == ElementsBatch.Type.POINTS ? null : new float[3*capacity];
+		radii        = type == ElementsBatch.Type.POINTS ? new float[capacity] : null;
+		colorsRGB    = new float[3*capacity];
+		used         = new boolean[capacity];
+		freeSlots    = new int[capacity];
+		genPrev      = new int[capacity];
+		genNext      = new int[capacity];
+		cellPrev     = new int[capacity];
+		cellNext     = new int[capacity];
+	}
+
+	private
+	void grow(final int capacity)
+	{
+		IDs          = Arrays.copyOf(IDs, capacity);
+		lastSeenTick = Arrays.copyOf(lastSeenTick, capacity);
+		positions    = Arrays.copyOf(positions, 3*capacity);
+		if (vectors != null) vectors = Arrays.copyOf(vectors, 3*capacity);
+		if (radii   != null) radii   = Arrays.copyOf(radii, capacity);
+		colorsRGB    = Arrays.copyOf(colorsRGB, 3*capacity);
+		used         = Arrays.copyOf(used, capacity);
+		freeSlots    = Arrays.copyOf(freeSlots, capacity);
+		genPrev      = Arrays.copyOf(genPrev, capacity);
+		genNext      = Arrays.copyOf(genNext, capacity);
+		cellPrev     = Arrays.copyOf(cellPrev, capacity);
+		cellNext     = Arrays.copyOf(cellNext, capacity);
+	}
+}
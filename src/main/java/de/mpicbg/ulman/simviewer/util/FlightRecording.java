@@ -0,0 +1,501 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only access to a FlightRecording file (see CommandFromFlightRecorder
+ * for its format) that never loads the whole file into the memory. The file
+ * is memory-mapped, and it is scanned once (window by window) when opened to
+ * build an index of byte offsets of the time points: the time point 'tp' spans
+ * from getTimepointStart(tp) to getTimepointEnd(tp) and, except possibly
+ * for the very last one, ends with (and includes) a "tick" message. Only the
+ * index (one long per time point) is kept on the heap; a particular time point
+ * is mapped on demand with mapTimepoint(), and its messages are then extracted
+ * with nextMessage().
+ *
+ * During the scan, the elements of every time point are also counted and
+ * their bounding box is determined. The index and these statistics are then
+ * saved into a sidecar file (the recording's filename with ".idx" appended),
+ * which is re-used on the later openings (if it matches the recording's size
+ * and modification time) so that no scan is needed anymore.
+ *
+ * The recording may be also stored compressed (see the CompressedFlightRecordingWriter),
+ * which is recognized from the file's first bytes. The offsets of the time points
+ * then refer to the uncompressed stream of messages, and mapTimepoint() inflates
+ * only the one block that holds the requested time point.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class FlightRecording implements Closeable
+{
+	/** opens the file, and loads its sidecar index file or, if there is
+	    no valid one, scans the file to find where the time points are and
+	    saves the sidecar index file for the next time */
+	public FlightRecording(final Path file)
+	throws IOException
+	{
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			blocks = FlightRecordingBlocks.isCompressed(channel) ? new FlightRecordingBlocks(channel) : null;
+
+			final Path indexFile = file.resolveSibling(file.getFileName()+".idx");
+			final long fileSize  = channel.size();
+			final long fileMTime = Files.getLastModifiedTime(file).toMillis();
+
+			indexReused = loadIndex(indexFile,fileSize,fileMTime);
+			if (!indexReused)
+			{
+				scanTimepoints();
+				try {
+					saveIndex(indexFile,fileSize,fileMTime);
+				}
+				catch (IOException e) {
+					//not a big deal, we will scan the recording again next time
+					System.out.println("FlightRecording: Cannot save the index "+indexFile+": "+e.getMessage());
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			if (blocks != null) blocks.close();
+			channel.close();
+			throw e;
+		}
+	}
+
+	/** the opened file */
+	private final FileChannel channel;
+
+	/** the blocks of the compressed recording, or null for the plain one */
+	private FlightRecordingBlocks blocks;
+
+	/** tpEnds[tp] is the offset just after the time point 'tp' */
+	private long[] tpEnds = new long[1024];
+
+	/** the number of valid items in the tpEnds */
+	private int tpCount = 0;
+
+	/** tpCounts[3*tp + 0,1,2] are the numbers of points, lines, vectors
+	    in the time point 'tp' (incl. those to be removed) */
+	private int[] tpCounts = new int[3*1024];
+
+	/** tpBoxes[6*tp + 0,1,2] and tpBoxes[6*tp + 3,4,5] are the min and max
+	    corners of the bounding box of (not removed) elements in the time point 'tp' */
+	private float[] tpBoxes = new float[6*1024];
+
+	/** was the sidecar index file used (instead of scanning the recording)? */
+	public final boolean indexReused;
+
+	/** the size of the file mapped at once during the initial scan */
+	static final int SCAN_WINDOW = 1 << 28;
+
+	//--------------------------------------------
+
+	/** returns the number of time points in the recording */
+	public
+	int getTimepointsCount()
+	{
+		return tpCount;
+	}
+
+	/** returns the offset in the file where the time point 'tp' starts */
+	public
+	long getTimepointStart(final int tp)
+	{
+		return tp == 0 ? 0 : tpEnds[tp-1];
+	}
+
+	/** returns the offset in the file just after the time point 'tp' */
+	public
+	long getTimepointEnd(final int tp)
+	{
+		return tpEnds[tp];
+	}
+
+	/** returns the number of points, lines or vectors (for the elemType 0, 1 or 2)
+	    that are sent in the time point 'tp' (incl. those to be removed) */
+	public
+	int getTimepointElementsCount(final int tp, final int elemType)
+	{
+		return tpCounts[3*tp + elemType];
+	}
+
+	/** fills the min and max corners of the bounding box of all elements that
+	    are sent in the time point 'tp', returns false if there is no element */
+	public
+	boolean getTimepointBoundingBox(final int tp, final float[] min, final float[] max)
+	{
+		for (int d = 0; d < 3; ++d)
+		{
+			min[d] = tpBoxes[6*tp + d];
+			max[d] = tpBoxes[6*tp + 3+d];
+		}
+		return min[0] <= max[0];
+	}
+
+	/** returns (read-only) view on all messages of the time point 'tp',
+	    the messages are to be extracted with the nextMessage() */
+	public
+	ByteBuffer mapTimepoint(final int tp)
+	throws IOException
+	{
+		if (tp < 0 || tp >= tpCount)
+			throw new IndexOutOfBoundsException("FlightRecording: No time point "+tp+", there are only "+tpCount);
+
+		final long start = getTimepointStart(tp);
+		return map(start, getTimepointEnd(tp)-start);
+	}
+
+	/** returns the length of the (uncompressed) stream of messages */
+	private
+	long size()
+	throws IOException
+	{
+		return blocks == null ? channel.size() : blocks.size();
+	}
+
+	/** returns (read-only) view on the given range of the (uncompressed) stream of messages */
+	private
+	ByteBuffer map(final long offset, final long length)
+	throws IOException
+	{
+		return blocks == null ? channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+		                      : blocks.map(offset, length);
+	}
+
+	@Override
+	public
+	void close()
+	throws IOException
+	{
+		if (blocks != null) blocks.close();
+		channel.close();
+	}
+
+	//--------------------------------------------
+
+	/** returns (a view on) the message that starts at the data's position(),
+	    and moves the position after the message (and its delimiter); empty lines
+	    are skipped over, and null is returned if there is no (complete) message left */
+	public static
+	ByteBuffer nextMessage(final ByteBuffer data)
+	{
+		while (data.hasRemaining())
+		{
+			final int pos = data.position();
+			int end = getMessageEnd(data);
+			if (end < 0) return null;
+
+			//the next message (if any) starts after the newline
+			data.position( Math.min(end+1, data.limit()) );
+
+			//tolerate also the "\r\n" line endings
+			if (end > pos && data.get(end-1) == '\r' && !BinaryProtocol.isBinaryMessage(data)) --end;
+
+			//NB: empty lines are ignored
+			if (end > pos)
+			{
+				final ByteBuffer msg = data.duplicate();
+				msg.position(pos).limit(end);
+				return msg;
+			}
+		}
+		return null;
+	}
+
+	/** returns the position just after the message that starts at the current position
+	    of the 'data' (that is where the newline delimiter of this message is or should be),
+	    or -1 if the message is not complete within the 'data' */
+	public static
+	int getMessageEnd(final ByteBuffer data)
+	{
+		if (BinaryProtocol.isBinaryMessage(data))
+		{
+			final long len = BinaryProtocol.getMessageLength(data);
+			return len < 0 || len > data.remaining() ? -1 : data.position() + (int)len;
+		}
+
+		int pos = data.position();
+		while (pos < data.limit() && data.get(pos) != '\n') ++pos;
+		return pos;
+	}
+
+	/** returns true if the message is the "tick" message */
+	public static
+	boolean isTickMessage(final ByteBuffer msg)
+	{
+		return MessageTokenizer.startsWith(msg,"v1 tick");
+	}
+
+	//--------------------------------------------
+
+	private
+	void scanTimepoints()
+	throws IOException
+	{
+		final long size = size();
+		int window = SCAN_WINDOW;
+
+		long pos = 0;              //where the next message starts in the file
+		boolean openedTp = false;  //has the current time point any messages yet?
+
+		//to learn about the elements in the messages
+		final NetMessagesProcessor parser = new NetMessagesProcessor(null);
+		final ElementsBatch batch = new ElementsBatch();
+		resetTimepointStats(tpCount);
+
+		while (pos < size)
+		{
+			//NB: the compressed recording is scanned block by block, no message spans over two blocks
+			final long scanEnd = blocks == null ? size : blocks.getBlockEnd(pos);
+			final ByteBuffer buf = map(pos, Math.min(window, scanEnd-pos));
+			final boolean reachesEOF = pos + buf.limit() == scanEnd;
+
+			//scan complete messages within this window
+			int scanned = 0;
+			while (scanned < buf.limit())
+			{
+				buf.position(scanned);
+				final int end = getMessageEnd(buf);
+
+				//incomplete message? (textual one is complete at the EOF even without the newline)
+				if (end < 0 || (end == buf.limit() && !reachesEOF)) break;
+
+				if (end > scanned && !isEmptyLine(buf,scanned,end))
+				{
+					openedTp = true;
+					if (isTickMessage(buf))
+					{
+						addTimepointEnd(pos + Math.min(end+1, buf.limit()));
+						resetTimepointStats(tpCount);
+						openedTp = false;
+					}
+					else
+					{
+						final ByteBuffer msg = buf.duplicate();
+						msg.limit(end);
+						if (parser.parseMsg(msg,batch)) addToTimepointStats(tpCount,batch);
+					}
+				}
+				scanned = end+1;
+			}
+
+			if (scanned == 0)
+			{
+				if (reachesEOF || window == Integer.MAX_VALUE)
+				{
+					System.out.println("FlightRecording: Truncated message at byte "+pos+", ignoring the rest of the file");
+					break;
+				}
+
+				//the message is longer than the window, try again with a larger one
+				window = (int)Math.min(2L*window, Integer.MAX_VALUE);
+				continue;
+			}
+
+			pos += Math.min(scanned, buf.limit());
+		}
+
+		//the time point after the last "tick" message (if there are some messages)
+		if (openedTp) addTimepointEnd(Math.min(pos,size));
+	}
+
+	private static
+	boolean isEmptyLine(final ByteBuffer buf, final int from, final int to)
+	{
+		return to == from+1 && buf.get(from) == '\r';
+	}
+
+	private
+	void addTimepointEnd(final long offset)
+	{
+		if (tpCount == tpEnds.length) tpEnds = Arrays.copyOf(tpEnds, 2*tpCount);
+		tpEnds[tpCount++] = offset;
+	}
+
+	private
+	void resetTimepointStats(final int tp)
+	{
+		if (3*tp >= tpCounts.length)
+		{
+			tpCounts = Arrays.copyOf(tpCounts, 2*tpCounts.length);
+			tpBoxes  = Arrays.copyOf(tpBoxes,  2*tpBoxes.length);
+		}
+
+		tpCounts[3*tp] = tpCounts[3*tp+1] = tpCounts[3*tp+2] = 0;
+		for (int d = 0; d < 3; ++d)
+		{
+			tpBoxes[6*tp + d]   = Float.POSITIVE_INFINITY;
+			tpBoxes[6*tp + 3+d] = Float.NEGATIVE_INFINITY;
+		}
+	}
+
+	private
+	void addToTimepointStats(final int tp, final ElementsBatch batch)
+	{
+		final float[] pos = batch.positions;
+		final float[] vec = batch.vectors;
+		for (int i = 0, i3 = 0; i < batch.count; ++i, i3 += 3)
+		{
+			//NB: negative color is a signal to remove the element
+			if (batch.colorsRGB[i3] < 0) continue;
+
+			for (int d = 0; d < 3; ++d)
+			{
+				if (batch.type == ElementsBatch.Type.POINTS)
+				{
+					final float r = batch.radii[i];
+					if (r < 0) break;
+					updateBox(tp, pos[i3+d]-r, d);
+					updateBox(tp, pos[i3+d]+r, d);
+				}
+				else
+				{
+					updateBox(tp, pos[i3+d], d);
+					updateBox(tp, pos[i3+d]+vec[i3+d], d);
+				}
+			}
+		}
+
+		switch (batch.type)
+		{
+		case POINTS:  tpCounts[3*tp+0] += batch.count; break;
+		case LINES:   tpCounts[3*tp+1] += batch.count; break;
+		case VECTORS: tpCounts[3*tp+2] += batch.count; break;
+		default:
+		}
+	}
+
+	private
+	void updateBox(final int tp, final float value, final int d)
+	{
+		tpBoxes[6*tp + d]   = Math.min(tpBoxes[6*tp + d],   value);
+		tpBoxes[6*tp + 3+d] = Math.max(tpBoxes[6*tp + 3+d], value);
+	}
+
+	//--------------------------------------------
+
+	/** the first bytes of every sidecar index file */
+	static final long INDEX_MAGIC = 0x5356465249445831L; //"SVFRIDX1"
+
+	/** the sizes (in bytes) of the index file's header (magic, fileSize,
+	    fileMTime, count) and of its record of one time point */
+	static final int INDEX_HEADER_SIZE = 3*8 + 4;
+	static final int INDEX_RECORD_SIZE = 8 + 3*4 + 6*4;
+
+	private
+	void saveIndex(final Path indexFile, final long fileSize, final long fileMTime)
+	throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(
+		        new BufferedOutputStream(Files.newOutputStream(indexFile))))
+		{
+			out.writeLong(INDEX_MAGIC);
+			out.writeLong(fileSize);
+			out.writeLong(fileMTime);
+			out.writeInt(tpCount);
+			for (int tp = 0; tp < tpCount; ++tp)
+			{
+				out.writeLong(tpEnds[tp]);
+				for (int i = 0; i < 3; ++i) out.writeInt(tpCounts[3*tp+i]);
+				for (int i = 0; i < 6; ++i) out.writeFloat(tpBoxes[6*tp+i]);
+			}
+		}
+	}
+
+	/** returns true if the index file was valid for the given recording
+	    and its content was loaded, returns false otherwise; the index is
+	    considered invalid (and the recording is to be rescanned) also when
+	    its length does not match its count of time points, or when the time
+	    points' ends are not ascending within the recording's size */
+	private
+	boolean loadIndex(final Path indexFile, final long fileSize, final long fileMTime)
+	{
+		try (DataInputStream in = new DataInputStream(
+		        new BufferedInputStream(Files.newInputStream(indexFile))))
+		{
+			if (in.readLong() != INDEX_MAGIC || in.readLong() != fileSize || in.readLong() != fileMTime)
+			{
+				System.out.println("FlightRecording: Outdated index "+indexFile+", will re-create it");
+				return false;
+			}
+
+			//NB: check the count before anything gets allocated according to it
+			final int count = in.readInt();
+			if (count < 0 || Files.size(indexFile) != INDEX_HEADER_SIZE + (long)INDEX_RECORD_SIZE*count)
+			{
+				System.out.println("FlightRecording: Corrupted index "+indexFile+", will re-create it");
+				return false;
+			}
+
+			final long[] ends   = new long[Math.max(count,1)];
+			final int[] counts  = new int[3*Math.max(count,1)];
+			final float[] boxes = new float[6*Math.max(count,1)];
+			for (int tp = 0; tp < count; ++tp)
+			{
+				ends[tp] = in.readLong();
+				if (ends[tp] < (tp > 0 ? ends[tp-1] : 0) || ends[tp] > fileSize)
+				{
+					System.out.println("FlightRecording: Corrupted index "+indexFile+", will re-create it");
+					return false;
+				}
+				for (int i = 0; i < 3; ++i) counts[3*tp+i] = in.readInt();
+				for (int i = 0; i < 6; ++i) boxes[6*tp+i] = in.readFloat();
+			}
+
+			tpEnds   = ends;
+			tpCounts = counts;
+			tpBoxes  = boxes;
+			tpCount  = count;
+			return true;
+		}
+		catch (NoSuchFileException e) {
+			return false;
+		}
+		catch (IOException e) {
+			System.out.println("FlightRecording: Cannot read the index "+indexFile+": "+e.getMessage());
+			tpCount = 0;
+			return false;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read access to the blocks of a compressed FlightRecording file (see the
+ * CompressedFlightRecordingWriter for its format). Only the block index is
+ * loaded when opened; a block is inflated first when some of its content
+ * is asked for with map(), and the last few inflated blocks are cached.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+class FlightRecordingBlocks
+{
+	/** returns true if the channel's content starts with the MAGIC of the compressed recordings */
+	static
+	boolean isCompressed(final FileChannel channel)
+	throws IOException
+	{
+		if (channel.size() < 8 + 4 + CompressedFlightRecordingWriter.TRAILER_SIZE) return false;
+
+		final ByteBuffer head = ByteBuffer.allocate(8);
+		while (head.hasRemaining() && channel.read(head, head.position()) > 0) ;
+		return head.getLong(0) == CompressedFlightRecordingWriter.MAGIC;
+	}
+
+	/** reads the index of the blocks */
+	FlightRecordingBlocks(final FileChannel channel)
+	throws IOException
+	{
+		this.channel = channel;
+		final long fileSize = channel.size();
+
+		final ByteBuffer trailer = readFully(fileSize - CompressedFlightRecordingWriter.TRAILER_SIZE,
+		                                     CompressedFlightRecordingWriter.TRAILER_SIZE);
+		final long indexPos = trailer.getLong(0);
+		if (trailer.getLong(8) != CompressedFlightRecordingWriter.MAGIC || indexPos < 8 || indexPos > fileSize-20)
+			throw new IOException("Truncated compressed recording (no valid trailer found)");
+
+		final ByteBuffer index = readFully(indexPos, (int)(fileSize - CompressedFlightRecordingWriter.TRAILER_SIZE - indexPos));
+		final int count = index.getInt();
+		if (count < 0 || index.remaining() < 16L*count)
+			throw new IOException("Corrupted index of the compressed recording");
+
+		fileOffsets = new long[count];
+		compressedLengths = new int[count];
+		starts = new long[count+1];
+		for (int b = 0; b < count; ++b)
+		{
+			fileOffsets[b] = index.getLong();
+			compressedLengths[b] = index.getInt();
+			starts[b+1] = starts[b] + index.getInt();
+		}
+	}
+
+	private final FileChannel channel;
+
+	/** where the block 'b' starts in the file, and how long it is there */
+	private final long[] fileOffsets;
+	private final int[]  compressedLengths;
+
+	/** starts[b] is the offset of the block 'b' in the uncompressed stream,
+	    starts[blocksCount] is thus the length of the whole stream */
+	private final long[] starts;
+
+	/** the recently inflated blocks (and their numbers) */
+	private final int[] cachedIdx = { -1,-1,-1,-1 };
+	private final byte[][] cachedData = new byte[cachedIdx.length][];
+	private int cacheNextSlot = 0;
+
+	private final Inflater inflater = new Inflater();
+
+	//--------------------------------------------
+
+	/** returns the length of the uncompressed stream of messages */
+	long size()
+	{
+		return starts[starts.length-1];
+	}
+
+	/** returns the offset (in the uncompressed stream) just after the block
+	    that contains the given offset, no message ever spans over this */
+	long getBlockEnd(final long offset)
+	{
+		return starts[findBlock(offset)+1];
+	}
+
+	/** returns (read-only) view on the given range of the uncompressed stream,
+	    the range must lie within one block, which is inflated (if not cached) */
+	synchronized
+	ByteBuffer map(final long offset, final long length)
+	throws IOException
+	{
+		final int b = findBlock(offset);
+		if (offset+length > starts[b+1])
+			throw new IOException("Range "+offset+"+"+length+" spans over more blocks of the compressed recording");
+
+		final byte[] data = getBlock(b);
+		//NB: the cache never modifies the arrays, it may only drop them,
+		//    so the returned view stays valid even after its block is evicted
+		return ByteBuffer.wrap(data, (int)(offset-starts[b]), (int)length).slice().asReadOnlyBuffer();
+	}
+
+	synchronized
+	void close()
+	{
+		inflater.end();
+	}
+
+	//--------------------------------------------
+
+	private
+	int findBlock(final long offset)
+	{
+		//the last block whose start is not after the offset
+		int lo = 0, hi = starts.length-2;
+		while (lo < hi)
+		{
+			final int mid = (lo+hi+1) >>> 1;
+			if (starts[mid] <= offset) lo = mid;
+			else hi = mid-1;
+		}
+		return lo;
+	}
+
+	private
+	byte[] getBlock(final int b)
+	throws IOException
+	{
+		for (int i = 0; i < cachedIdx.length; ++i)
+			if (cachedIdx[i] == b) return cachedData[i];
+
+		final ByteBuffer compressed = readFully(fileOffsets[b], compressedLengths[b]);
+		final byte[] data = new byte[(int)(starts[b+1]-starts[b])];
+
+		inflater.reset();
+		inflater.setInput(compressed.array(), 0, compressed.limit());
+		try {
+			int inflated = 0;
+			while (inflated < data.length && !inflater.finished())
+			{
+				final int len = inflater.inflate(data, inflated, data.length-inflated);
+				if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				inflated += len;
+			}
+			if (inflated != data.length)
+				throw new IOException("Block "+b+" of the compressed recording is truncated");
+		}
+		catch (DataFormatException e) {
+			throw new IOException("Block "+b+" of the compressed recording is corrupted: "+e.getMessage());
+		}
+
+		cachedIdx[cacheNextSlot] = b;
+		cachedData[cacheNextSlot] = data;
+		cacheNextSlot = (cacheNextSlot+1) % cachedIdx.length;
+		return data;
+	}
+
+	private
+	ByteBuffer readFully(final long position, final int length)
+	throws IOException
+	{
+		final ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining())
+			if (channel.read(buf, position+buf.position()) < 0)
+				throw new IOException("Unexpected end of the compressed recording");
+		buf.flip();
+		return buf;
+	}
+}
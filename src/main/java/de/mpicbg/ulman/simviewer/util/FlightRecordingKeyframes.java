@@ -0,0 +1,383 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds, in its own thread (the run() method), full-state snapshots ("keyframes")
+ * of a FlightRecording: the recording is replayed headlessly, without any scene,
+ * and after every 'interval'-th time point the complete state of the would-be
+ * displayed scene is stored. The state is the result of replaying all time points
+ * from the beginning without any garbage collection, and every element remembers
+ * the time point in which it was last updated (so that the effect of the garbage
+ * collection can be reproduced when a keyframe is restored). The elements not
+ * updated for more than 'maxAge' time points are, however, dropped from the state
+ * (and are thus not restored even if the garbage collection is off).
+ *
+ * The keyframes are not kept on the heap: they are appended into a sidecar file
+ * (typically the recording's filename with ".kf" appended, or a temporary file if
+ * that cannot be created), which is deleted with close(). A keyframe is stored
+ * there as a sequence of records (see RECORD_SIZE), first all points, then lines
+ * and vectors, and the elements of every type are sorted by the time point of
+ * their last update. Only the positions of the keyframes in the file are kept on
+ * the heap, and a keyframe is memory-mapped (see Keyframe.map()) when restored.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class FlightRecordingKeyframes implements Runnable, Closeable
+{
+	/** constructor to create keyframes of the given recording, one keyframe after
+	    every 'interval' time points, that hold the elements last updated at most 'maxAge'
+	    time points before the keyframe's time point; the keyframes are stored into
+	    the 'keyframesFile' (which is overwritten), or into a temporary file if this
+	    one cannot be created */
+	public FlightRecordingKeyframes(final FlightRecording recording, final int interval,
+	                                final int maxAge, final Path keyframesFile)
+	throws IOException
+	{
+		if (interval < 1)
+			throw new IllegalArgumentException("FlightRecordingKeyframes: Interval must be at least 1.");
+		if (maxAge < 0)
+			throw new IllegalArgumentException("FlightRecordingKeyframes: Max age must not be negative.");
+
+		this.recording = recording;
+		this.interval = interval;
+		this.maxAge = maxAge;
+
+		Path f = keyframesFile;
+		FileChannel c;
+		try {
+			c = FileChannel.open(f, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+			                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		catch (IOException e) {
+			f = Files.createTempFile("SimViewerKeyframes", ".kf");
+			System.out.println("FlightRecordingKeyframes: Cannot create "+keyframesFile
+				+" ("+e.getMessage()+"), using "+f+" instead");
+			c = FileChannel.open(f, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		file = f;
+		channel = c;
+		file.toFile().deleteOnExit();
+	}
+
+	/** the recording to create keyframes for */
+	private final FlightRecording recording;
+
+	/** a keyframe is created after every 'interval' time points */
+	public final int interval;
+
+	/** a keyframe holds only elements last updated at most 'maxAge' time points before it */
+	public final int maxAge;
+
+	/** the file with the keyframes, and its opened channel */
+	private final Path file;
+	private final FileChannel channel;
+
+	/** the size of one element in the keyframes file: ID, last update time point (ints),
+	    x,y,z position, x,y,z vector, radius, r,g,b color (floats), in the native byte order */
+	public static final int RECORD_SIZE = 48;
+
+	/** the keyframes built so far, in the order of their time points,
+	    access only within synchronized(keyframes) */
+	private final List<Keyframe> keyframes = new ArrayList<>();
+
+	/** the full state of the (would-be) scene right after one time point,
+	    the elements themselves are in the keyframes file */
+	public class Keyframe
+	{
+		/** the time point after which this state is */
+		public final int timepoint;
+
+		/** the numbers of elements, indexed with the ElementsBatch.Type's ordinal() */
+		public final int[] counts = new int[3];
+
+		/** where the records of this keyframe start in the keyframes file */
+		private final long offset;
+
+		Keyframe(final int tp, final long offset)
+		{
+			timepoint = tp;
+			this.offset = offset;
+		}
+
+		/** returns the index (in the map()-ed records) of the first element of the given type */
+		public
+		int getFirstIndex(final ElementsBatch.Type type)
+		{
+			int first = 0;
+			for (int t = 0; t < type.ordinal(); ++t) first += counts[t];
+			return first;
+		}
+
+		/** memory-maps (read-only) the records of all elements of this keyframe */
+		public
+		ByteBuffer map()
+		throws IOException
+		{
+			final long length = (long)RECORD_SIZE * (counts[0]+counts[1]+counts[2]);
+			return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.nativeOrder());
+		}
+	}
+
+	/** returns the time point when the 'index'-th element of the map()-ed records was last updated */
+	public static
+	int getLastSeen(final ByteBuffer records, final int index)
+	{
+		return records.getInt(RECORD_SIZE*index + 4);
+	}
+
+	/** fills the batch with the elements 'from' (inclusive) to 'to' (exclusive)
+	    of the map()-ed records, the elements must be of the given type */
+	public static
+	void readElements(final ByteBuffer records, final int from, final int to,
+	                  final ElementsBatch.Type type, final ElementsBatch batch)
+	{
+		final int N = to-from;
+		batch.reset(type, N);
+		for (int i = 0, i3 = 0, pos = RECORD_SIZE*from; i < N; ++i, i3 += 3, pos += RECORD_SIZE)
+		{
+			batch.IDs[i] = records.getInt(pos);
+			for (int d = 0; d < 3; ++d)
+			{
+				batch.positions[i3+d] = records.getFloat(pos +  8 + 4*d);
+				batch.vectors[i3+d]   = records.getFloat(pos + 20 + 4*d);
+				batch.colorsRGB[i3+d] = records.getFloat(pos + 36 + 4*d);
+			}
+			batch.radii[i] = records.getFloat(pos + 32);
+		}
+		batch.count = N;
+	}
+
+	//--------------------------------------------
+
+	/** returns the latest keyframe whose time point is not after 'tp',
+	    or null if there is no such keyframe (yet) */
+	public
+	Keyframe getKeyframeAtOrBefore(final int tp)
+	{
+	 synchronized (keyframes)
+	 {
+		//NB: keyframes are made regularly, so we could compute the index directly
+		//if all were built already, this way we are correct even if they are not
+		int i = Math.min(keyframes.size(), (tp+1) / interval) -1;
+		while (i >= 0 && keyframes.get(i).timepoint > tp) --i;
+		return i >= 0 ? keyframes.get(i) : null;
+	 }
+	}
+
+	/** returns the number of keyframes built so far */
+	public
+	int getKeyframesCount()
+	{
+	 synchronized (keyframes)
+	 {
+		return keyframes.size();
+	 }
+	}
+
+	/** closes and deletes the keyframes file, the run() must not be running anymore */
+	public
+	void close()
+	throws IOException
+	{
+		channel.close();
+		Files.deleteIfExists(file);
+	}
+
+	//--------------------------------------------
+
+	/** one element of the headless scene */
+	private static class TrackedElement
+	{
+		/** x,y,z position, x,y,z vector, radius, r,g,b color */
+		final float[] data = new float[10];
+		int lastSeen;
+	}
+
+	/** the headless scene, one map per element type */
+	@SuppressWarnings("unchecked")
+	private final IntObjectMap<TrackedElement>[] scene = (IntObjectMap<TrackedElement>[])new IntObjectMap<?>[] {
+		new IntObjectMap<TrackedElement>(1024),
+		new IntObjectMap<TrackedElement>(1024),
+		new IntObjectMap<TrackedElement>(1024) };
+
+	/** the (re-usable) buffer to write the records through, and the end of the keyframes file */
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(RECORD_SIZE << 14).order(ByteOrder.nativeOrder());
+	private long fileEnd = 0;
+
+	/** replays the recording headlessly and builds the keyframes, until
+	    the end of the recording or until interrupted */
+	public void run()
+	{
+		final NetMessagesProcessor parser = new NetMessagesProcessor(null);
+		final ElementsBatch batch = new ElementsBatch();
+		final long time = System.currentTimeMillis();
+
+		try {
+			for (int tp = 0; tp < recording.getTimepointsCount(); ++tp)
+			{
+				if (Thread.interrupted())
+					throw new InterruptedException("while building keyframes");
+
+				final ByteBuffer tpData = recording.mapTimepoint(tp);
+				ByteBuffer msg;
+				while ((msg = FlightRecording.nextMessage(tpData)) != null)
+					if (!FlightRecording.isTickMessage(msg) && parser.parseMsg(msg,batch))
+						update(batch,tp);
+
+				if ((tp+1) % interval == 0)
+				{
+					dropOlderThan(tp - maxAge);
+					final Keyframe kf = snapshot(tp);
+				 synchronized (keyframes)
+				 {
+					keyframes.add(kf);
+				 }
+				}
+			}
+			System.out.println("FlightRecordingKeyframes: Built "+getKeyframesCount()+" keyframes in "
+				+(System.currentTimeMillis()-time)+" ms, "+(fileEnd >> 20)+" MB in "+file);
+		}
+		catch (InterruptedException e) {
+			System.out.println("FlightRecordingKeyframes: Stopped after "+getKeyframesCount()+" keyframes");
+		}
+		catch (IOException e) {
+			System.out.println("FlightRecordingKeyframes: Stopped, error reading the recording"
+				+" or writing the keyframes: "+e.getMessage());
+		}
+	}
+
+	private
+	void update(final ElementsBatch batch, final int tp)
+	{
+		final IntObjectMap<TrackedElement> elems = scene[batch.type.ordinal()];
+		for (int i = 0, i3 = 0; i < batch.count; ++i, i3 += 3)
+		{
+			final int ID = batch.IDs[i];
+
+			//the same removal rules as in the DisplayScene
+			if (batch.colorsRGB[i3] < 0 || (batch.type == ElementsBatch.Type.POINTS && batch.radii[i] < 0))
+			{
+				elems.remove(ID);
+				continue;
+			}
+
+			TrackedElement e = elems.get(ID);
+			if (e == null)
+			{
+				e = new TrackedElement();
+				elems.put(ID,e);
+			}
+
+			System.arraycopy(batch.positions,i3, e.data,0, 3);
+			if (batch.type == ElementsBatch.Type.POINTS) e.data[6] = batch.radii[i];
+			else System.arraycopy(batch.vectors,i3, e.data,3, 3);
+			System.arraycopy(batch.colorsRGB,i3, e.data,7, 3);
+			e.lastSeen = tp;
+		}
+	}
+
+	/** removes the elements last updated before the given time point from the headless scene */
+	private
+	void dropOlderThan(final int tp)
+	{
+		for (IntObjectMap<TrackedElement> elems : scene)
+			for (int s = elems.firstSlot(); s >= 0; s = elems.nextSlot(s))
+				if (elems.valueAt(s).lastSeen < tp) elems.removeAt(s);
+	}
+
+	/** appends the headless scene into the keyframes file */
+	private
+	Keyframe snapshot(final int tp)
+	throws IOException
+	{
+		final Keyframe kf = new Keyframe(tp, fileEnd);
+		writeBuffer.clear();
+
+		for (int t = 0; t < 3; ++t)
+		{
+			final IntObjectMap<TrackedElement> elems = scene[t];
+			final int N = elems.size();
+
+			final int[] IDs = new int[N];
+			final TrackedElement[] data = new TrackedElement[N];
+			final long[] order = new long[N];
+			int n = 0;
+			for (int s = elems.firstSlot(); s >= 0; s = elems.nextSlot(s))
+			{
+				IDs[n]  = elems.keyAt(s);
+				data[n] = elems.valueAt(s);
+				//sort key: the lastSeen first, then the position in these arrays
+				order[n] = ((long)data[n].lastSeen << 32) | n;
+				++n;
+			}
+			Arrays.sort(order);
+
+			for (int i = 0; i < N; ++i)
+			{
+				if (writeBuffer.remaining() < RECORD_SIZE) flushWriteBuffer();
+
+				final int j = (int)(order[i] & 0xFFFFFFFFL);
+				writeBuffer.putInt(IDs[j]);
+				writeBuffer.putInt(data[j].lastSeen);
+				final float[] d = data[j].data;
+				for (int k = 0; k < 3; ++k) writeBuffer.putFloat(d[k]);   //position
+				for (int k = 3; k < 6; ++k) writeBuffer.putFloat(d[k]);   //vector
+				writeBuffer.putFloat(d[6]);                                //radius
+				for (int k = 7; k < 10; ++k) writeBuffer.putFloat(d[k]);  //color
+			}
+			kf.counts[t] = N;
+		}
+		flushWriteBuffer();
+		return kf;
+	}
+
+	private
+	void flushWriteBuffer()
+	throws IOException
+	{
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining())
+			fileEnd += channel.write(writeBuffer, fileEnd);
+		writeBuffer.clear();
+	}
+}
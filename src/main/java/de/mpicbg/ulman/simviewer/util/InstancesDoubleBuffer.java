@@ -0,0 +1,131 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The instances of one master instance kept in two lists: the back list, in which
+ * all changes are made, and the front list, which is the one handed over to the
+ * renderer (typically set to the master with setInstances()). The changes become
+ * visible only after publish(), which makes the front list a snapshot of the back
+ * list -- typically once at the end of every tick. The renderer thus never sees
+ * a half-updated tick, and instances that are added and removed between two
+ * publish()-es never get displayed.
+ *
+ * The back list is an InstancesIndex over a plain list: the instances are added
+ * and removed in O(1) (see the InstancesIndex for how the owner should keep the
+ * indices of its instances), and their indices are the indices in the back list.
+ * The front list, once published, is never modified again (the renderer may
+ * iterate it at any time, without any locking) and is replaced with a new one
+ * in the next publish() -- that is one bulk copy of the references, and only if
+ * there were some changes. The class is not synchronized otherwise.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class InstancesDoubleBuffer<T>
+{
+	/** the list in which all changes are made */
+	private final InstancesIndex<T> back = new InstancesIndex<>(new ArrayList<>());
+
+	/** the last published list */
+	private volatile CopyOnWriteArrayList<T> front = new CopyOnWriteArrayList<>();
+
+	/** were there any changes since the last publish()? */
+	private boolean changed = false;
+
+	/** appends the instance (that displays the element in the given slot)
+	    to the back list, and returns its index */
+	public
+	int add(final T instance, final int slot)
+	{
+		changed = true;
+		return back.add(instance, slot);
+	}
+
+	/** removes the instance at the given index from the back list by moving the
+	    last instance into its place, and returns the slot of the element of the
+	    moved instance, or -1 if the removed instance was the last one */
+	public
+	int removeAt(final int index)
+	{
+		changed = true;
+		return back.removeAt(index);
+	}
+
+	/** returns the slot of the element of the index-th instance of the back list */
+	public
+	int getSlot(final int index)
+	{
+		return back.getSlot(index);
+	}
+
+	/** returns the number of instances in the back list */
+	public
+	int size()
+	{
+		return back.size();
+	}
+
+	/** returns true if the back list differs from the front one */
+	public
+	boolean hasChanged()
+	{
+		return changed;
+	}
+
+	/** makes the front list a snapshot of the back list (if they differ),
+	    and returns true if the front list has been replaced */
+	public
+	boolean publish()
+	{
+		if (!changed) return false;
+
+		front = new CopyOnWriteArrayList<>(back.instances);
+		changed = false;
+		return true;
+	}
+
+	/** returns the last published list, which must not be modified */
+	public
+	CopyOnWriteArrayList<T> getFront()
+	{
+		return front;
+	}
+
+	/** returns the back list, which must not be modified */
+	public
+	List<T> getBack()
+	{
+		return back.instances;
+	}
+}
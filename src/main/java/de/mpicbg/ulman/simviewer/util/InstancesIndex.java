@@ -0,0 +1,107 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The list of instances of one master instance (typically the master's getInstances())
+ * together with the ElementsStore's slots of the elements that the instances display:
+ * the i-th instance displays the element in the getSlot(i). The owner keeps, for every
+ * element, the index of its instance (the index returned from add()), and with it,
+ * an instance is removed in O(1) with removeAt(): the last instance is moved into
+ * the place of the removed one, and the slot of its element is returned so that
+ * the owner can update the element's index -- which is then the index of the just
+ * removed instance. The order of the instances is therefore not preserved.
+ *
+ * (The List.remove(Object), in contrast, searches the list and shifts the rest
+ * of it, and removing many instances is then quadratic in their number.)
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class InstancesIndex<T>
+{
+	/** wraps around the given (typically empty) list of instances,
+	    whose elements are considered to be in no slot */
+	public InstancesIndex(final List<T> instances)
+	{
+		this.instances = instances;
+		slots = new int[Math.max(instances.size(),16)];
+		Arrays.fill(slots, -1);
+	}
+
+	/** the wrapped list of instances */
+	public final List<T> instances;
+
+	/** the slots of the elements of the instances, in the order of the instances */
+	private int[] slots;
+
+	/** appends the instance (that displays the element in the given slot),
+	    and returns its index in the list */
+	public
+	int add(final T instance, final int slot)
+	{
+		final int index = instances.size();
+		if (index == slots.length) slots = Arrays.copyOf(slots, 2*index);
+
+		instances.add(instance);
+		slots[index] = slot;
+		return index;
+	}
+
+	/** removes the instance at the given index by moving the last instance
+	    into its place, and returns the slot of the element of the moved
+	    instance, or -1 if the removed instance was the last one */
+	public
+	int removeAt(final int index)
+	{
+		final int last = instances.size()-1;
+		final T lastInstance = instances.remove(last);
+		if (index == last) return -1;
+
+		instances.set(index, lastInstance);
+		slots[index] = slots[last];
+		return slots[index];
+	}
+
+	/** returns the slot of the element of the index-th instance */
+	public
+	int getSlot(final int index)
+	{
+		return slots[index];
+	}
+
+	public
+	int size()
+	{
+		return instances.size();
+	}
+}
@@ -0,0 +1,299 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to objects, a replacement of the HashMap<Integer,V> that
+ * neither boxes the keys nor creates an entry object per mapping: the keys and
+ * values are stored directly in two arrays (open addressing with linear probing),
+ * so one mapping costs 4+4 bytes (plus 1 byte of the slot's state) of
+ * the (at most half full) arrays.
+ *
+ * The keys are typically the elements' IDs of the DisplayScene (see its MASK_ELEM,
+ * MASK_DEBUG and MASK_CELLID): the element's number is in the lowest 16 bits and
+ * the cell's number in the upper bits, IDs of one cell are thus dense but IDs of
+ * different cells are 2^17 apart. The keys are therefore spread over the slots
+ * with the (multiplicative) Fibonacci hashing that mixes the upper bits into
+ * the lower ones, instead of the identity hash of the Integer. Any int key is
+ * however supported.
+ *
+ * The map can be iterated without any allocation, slot by slot:
+ *
+ * for (int s = map.firstSlot(); s >= 0; s = map.nextSlot(s))
+ *     doSomething( map.keyAt(s), map.valueAt(s) );
+ *
+ * and the current slot may be removed with removeAt(s) while iterating. The removed
+ * slots become "tombstones" (so that the other keys remain reachable) and they are
+ * cleaned up only when the arrays are rebuilt, which happens only in the put().
+ * The map is not synchronized.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class IntObjectMap<V>
+{
+	/** creates an empty map that holds expectedSize mappings without growing */
+	public IntObjectMap(final int expectedSize)
+	{
+		allocate( capacityFor(expectedSize) );
+	}
+
+	public IntObjectMap()
+	{
+		this(16);
+	}
+
+	/** the states of the slots */
+	private static final byte FREE = 0, USED = 1, REMOVED = 2;
+
+	private int[]    keys;
+	private Object[] values;
+	private byte[]   states;
+
+	/** capacity-1, the capacity is always a power of two */
+	private int mask;
+	/** 32 - log2(capacity), to take the upper bits of the hash */
+	private int shift;
+
+	/** the number of mappings */
+	private int size = 0;
+	/** the number of the REMOVED slots */
+	private int removed = 0;
+
+	/** the max ratio of the non-FREE slots */
+	static final float MAX_LOAD = 0.5f;
+
+	//--------------------------------------------
+
+	public
+	int size()
+	{
+		return size;
+	}
+
+	public
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/** returns the value mapped to the key, or null if there is no such */
+	@SuppressWarnings("unchecked")
+	public
+	V get(final int key)
+	{
+		final int s = findSlot(key);
+		return s < 0 ? null : (V)values[s];
+	}
+
+	public
+	boolean containsKey(final int key)
+	{
+		return findSlot(key) >= 0;
+	}
+
+	/** maps the value to the key, returns the previously mapped value or null */
+	@SuppressWarnings("unchecked")
+	public
+	V put(final int key, final V value)
+	{
+		int s = findSlot(key);
+		if (s >= 0)
+		{
+			final V old = (V)values[s];
+			values[s] = value;
+			return old;
+		}
+
+		//new mapping, make sure there will be a FREE slot left
+		if (size+removed+1 > MAX_LOAD * (mask+1))
+			rehash( size+1 > MAX_LOAD/2 * (mask+1) ? 2*(mask+1) : mask+1 );
+
+		//the first non-USED slot on the key's probing path
+		s = hash(key);
+		while (states[s] == USED) s = (s+1) & mask;
+
+		if (states[s] == REMOVED) --removed;
+		states[s] = USED;
+		keys[s]   = key;
+		values[s] = value;
+		++size;
+		return null;
+	}
+
+	/** removes the mapping of the key, returns the removed value or null */
+	public
+	V remove(final int key)
+	{
+		final int s = findSlot(key);
+		return s < 0 ? null : removeAt(s);
+	}
+
+	/** removes all mappings, keeps the capacity */
+	public
+	void clear()
+	{
+		Arrays.fill(states, FREE);
+		Arrays.fill(values, null);
+		size = 0;
+		removed = 0;
+	}
+
+	//--------------------------------------------
+
+	/** returns the first used slot, or -1 if the map is empty */
+	public
+	int firstSlot()
+	{
+		return nextSlot(-1);
+	}
+
+	/** returns the next used slot after the slot s, or -1 if there is no such */
+	public
+	int nextSlot(int s)
+	{
+		while (++s <= mask)
+			if (states[s] == USED) return s;
+		return -1;
+	}
+
+	/** returns the key of the used slot s */
+	public
+	int keyAt(final int s)
+	{
+		return keys[s];
+	}
+
+	/** returns the value of the used slot s */
+	@SuppressWarnings("unchecked")
+	public
+	V valueAt(final int s)
+	{
+		return (V)values[s];
+	}
+
+	/** removes the mapping in the used slot s, returns its value;
+	    this never moves other mappings, so it is safe during an iteration */
+	@SuppressWarnings("unchecked")
+	public
+	V removeAt(final int s)
+	{
+		final V old = (V)values[s];
+		values[s] = null;
+		--size;
+
+		//NB: no probing path goes over a FREE slot, so if the next slot
+		//    is FREE, this one can become FREE too (and not a tombstone)
+		if (states[(s+1) & mask] == FREE) states[s] = FREE;
+		else
+		{
+			states[s] = REMOVED;
+			++removed;
+		}
+		return old;
+	}
+
+	/** the callback for the forEach() */
+	public interface EntryConsumer<V>
+	{
+		void accept(int key, V value);
+	}
+
+	/** calls the consumer on every mapping, the consumer must not modify this map */
+	@SuppressWarnings("unchecked")
+	public
+	void forEach(final EntryConsumer<V> consumer)
+	{
+		for (int s = 0; s <= mask; ++s)
+			if (states[s] == USED) consumer.accept(keys[s], (V)values[s]);
+	}
+
+	//--------------------------------------------
+
+	/** Fibonacci hashing: the upper bits of the key*golden ratio */
+	private
+	int hash(final int key)
+	{
+		return (key * 0x9E3779B9) >>> shift;
+	}
+
+	/** returns the slot with the key, or -1 if there is no such */
+	private
+	int findSlot(final int key)
+	{
+		int s = hash(key);
+		while (states[s] != FREE)
+		{
+			if (states[s] == USED && keys[s] == key) return s;
+			s = (s+1) & mask;
+		}
+		return -1;
+	}
+
+	private static
+	int capacityFor(final int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity * MAX_LOAD < expectedSize) capacity <<= 1;
+		return capacity;
+	}
+
+	private
+	void allocate(final int capacity)
+	{
+		keys   = new int[capacity];
+		values = new Object[capacity];
+		states = new byte[capacity];
+		mask   = capacity-1;
+		shift  = 32 - Integer.numberOfTrailingZeros(capacity);
+	}
+
+	/** rebuilds the arrays (with the given capacity), gets rid of the tombstones */
+	private
+	void rehash(final int capacity)
+	{
+		final int[]    oldKeys   = keys;
+		final Object[] oldValues = values;
+		final byte[]   oldStates = states;
+		allocate(capacity);
+
+		for (int i = 0; i < oldStates.length; ++i)
+			if (oldStates[i] == USED)
+			{
+				int s = hash(oldKeys[i]);
+				while (states[s] == USED) s = (s+1) & mask;
+				states[s] = USED;
+				keys[s]   = oldKeys[i];
+				values[s] = oldValues[i];
+			}
+		removed = 0;
+	}
+}
@@ -0,0 +1,323 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.nio.ByteBuffer;
+import java.util.InputMismatchException;
+
+/**
+ * A whitespace-delimited tokenizer that reads ints and floats directly from
+ * the bytes of a (text) message, that is, without decoding the message into
+ * a String first and without creating any object per token. It is a drop-in
+ * replacement of the java.util.Scanner (with Locale.ENGLISH) for the purpose
+ * of the NetMessagesProcessor: tokens are separated with any amount of white
+ * space (all bytes with value up to the ASCII space), ints are optionally
+ * signed decimal numbers, floats are optionally signed decimal numbers with
+ * optional fractional part and optional exponent (or NaN or Infinity).
+ *
+ * Just like the Scanner, an InputMismatchException is thrown when the next
+ * token is not of the requested type or when there are no more tokens.
+ *
+ * This class is not thread-safe, every parsing thread shall use its own instance.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class MessageTokenizer
+{
+	/** the message being tokenized currently */
+	private ByteBuffer msg;
+
+	/** the current reading position within the msg, and its first invalid position */
+	private int pos, end;
+
+	/** starts tokenizing of the msg, from its current position() up to its limit(),
+	    the msg's position() and limit() are not changed by this tokenizer */
+	public
+	MessageTokenizer reset(final ByteBuffer msg)
+	{
+		this.msg = msg;
+		this.pos = msg.position();
+		this.end = msg.limit();
+		return this;
+	}
+
+	/** returns true if the message (from its very beginning, not from
+	    the current position) starts with the given ASCII-only prefix */
+	public static
+	boolean startsWith(final ByteBuffer msg, final String prefix)
+	{
+		final int start = msg.position();
+		if (msg.limit()-start < prefix.length()) return false;
+
+		for (int i=0; i < prefix.length(); ++i)
+			if (msg.get(start+i) != (byte)prefix.charAt(i)) return false;
+		return true;
+	}
+
+	/** returns the current reading position (absolute w.r.t. the message buffer) */
+	public
+	int position()
+	{ return pos; }
+
+	/** returns true if there is at least one more token available */
+	public
+	boolean hasNext()
+	{
+		skipWhiteSpaces();
+		return pos < end;
+	}
+
+	/** skips over the next token, whatever it is */
+	public
+	void skip()
+	{
+		startToken();
+		while (pos < end && !isWhiteSpace(msg.get(pos))) ++pos;
+	}
+
+	/** reads over the next token and returns true if it is exactly the given ASCII-only one;
+	    the token is read over (consumed) regardless of the returned value */
+	public
+	boolean nextIs(final String token)
+	{
+		startToken();
+		final int start = pos;
+		while (pos < end && !isWhiteSpace(msg.get(pos))) ++pos;
+
+		if (pos-start != token.length()) return false;
+		for (int i=0; i < token.length(); ++i)
+			if (msg.get(start+i) != (byte)token.charAt(i)) return false;
+		return true;
+	}
+
+	/** reads over the next token and returns it as an int */
+	public
+	int nextInt()
+	{
+		startToken();
+		final int start = pos;
+
+		boolean negative = false;
+		byte c = msg.get(pos);
+		if (c == '-' || c == '+')
+		{
+			negative = c == '-';
+			++pos;
+		}
+
+		//NB: accumulate as negative number to be able to represent Integer.MIN_VALUE
+		int val = 0;
+		int digits = 0;
+		while (pos < end && (c = msg.get(pos)) >= '0' && c <= '9')
+		{
+			final int d = c - '0';
+			if (val < (Integer.MIN_VALUE + d) / 10) throw mismatch(start, "int out of range");
+			val = val*10 - d;
+			++digits;
+			++pos;
+		}
+
+		if (digits == 0 || (pos < end && !isWhiteSpace(msg.get(pos))))
+			throw mismatch(start, "not an int");
+
+		if (negative) return val;
+		if (val == Integer.MIN_VALUE) throw mismatch(start, "int out of range");
+		return -val;
+	}
+
+	/** reads over the next token and returns it as the count of the items that
+	    follow in the message; since every item is at least one token, that is at
+	    least one byte and a separator, a count that is negative or larger than
+	    what the rest of the message could hold is refused (InputMismatchException
+	    is thrown), and it is thus safe to allocate according to the returned count */
+	public
+	int nextCount()
+	{
+		skipWhiteSpaces();
+		final int start = pos;
+		final int count = nextInt();
+		if (count < 0 || count > (end-pos)/2) throw mismatch(start, "count out of range");
+		return count;
+	}
+
+	/** reads over the next token and returns it as a float */
+	public
+	float nextFloat()
+	{
+		startToken();
+		final int start = pos;
+
+		boolean negative = false;
+		byte c = msg.get(pos);
+		if (c == '-' || c == '+')
+		{
+			negative = c == '-';
+			++pos;
+		}
+
+		if (pos < end && (msg.get(pos) == 'N' || msg.get(pos) == 'I'))
+		{
+			if (nextIsWord("NaN")) return Float.NaN;
+			if (nextIsWord("Infinity")) return negative ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY;
+			throw mismatch(start, "not a float");
+		}
+
+		//significant digits are accumulated into 'mantissa' (at most 18 of them to fit into long),
+		//'exponent' is then the power of ten to scale the mantissa with
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		int digits = 0;
+
+		//integer part
+		while (pos < end && (c = msg.get(pos)) >= '0' && c <= '9')
+		{
+			if (significantDigits < 18)
+			{
+				mantissa = mantissa*10 + (c - '0');
+				if (mantissa > 0) ++significantDigits;
+			}
+			else ++exponent;
+			++digits;
+			++pos;
+		}
+
+		//fractional part
+		if (pos < end && msg.get(pos) == '.')
+		{
+			++pos;
+			while (pos < end && (c = msg.get(pos)) >= '0' && c <= '9')
+			{
+				if (significantDigits < 18)
+				{
+					mantissa = mantissa*10 + (c - '0');
+					if (mantissa > 0) ++significantDigits;
+					--exponent;
+				}
+				++digits;
+				++pos;
+			}
+		}
+		if (digits == 0) throw mismatch(start, "not a float");
+
+		//exponent part
+		if (pos < end && ((c = msg.get(pos)) == 'e' || c == 'E'))
+		{
+			++pos;
+			boolean expNegative = false;
+			if (pos < end && ((c = msg.get(pos)) == '-' || c == '+'))
+			{
+				expNegative = c == '-';
+				++pos;
+			}
+
+			int expVal = 0;
+			int expDigits = 0;
+			while (pos < end && (c = msg.get(pos)) >= '0' && c <= '9')
+			{
+				if (expVal < 10000) expVal = expVal*10 + (c - '0');
+				++expDigits;
+				++pos;
+			}
+			if (expDigits == 0) throw mismatch(start, "not a float");
+			exponent += expNegative ? -expVal : expVal;
+		}
+
+		if (pos < end && !isWhiteSpace(msg.get(pos)))
+			throw mismatch(start, "not a float");
+
+		final double val = scaleByPowerOfTen(mantissa, exponent);
+		return (float)(negative ? -val : val);
+	}
+	//----------------------------------------------------------------------------
+
+	/** exactly representable powers of ten */
+	private static final double[] POW10 = {
+		1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static
+	double scaleByPowerOfTen(final long mantissa, final int exponent)
+	{
+		if (mantissa == 0) return 0.0;
+		if (exponent == 0) return mantissa;
+		if (exponent > 0)
+			return exponent < POW10.length ? mantissa * POW10[exponent] : mantissa * Math.pow(10.0, exponent);
+		return -exponent < POW10.length ? mantissa / POW10[-exponent] : mantissa / Math.pow(10.0, -exponent);
+	}
+
+	private static
+	boolean isWhiteSpace(final byte c)
+	{
+		//NB: ASCII space and all control chars, and also
+		//    all non-ASCII bytes are considered a white space
+		return c <= ' ';
+	}
+
+	private
+	void skipWhiteSpaces()
+	{
+		while (pos < end && isWhiteSpace(msg.get(pos))) ++pos;
+	}
+
+	/** moves onto the beginning of the next token, or complains if there is none */
+	private
+	void startToken()
+	{
+		skipWhiteSpaces();
+		if (pos == end) throw new InputMismatchException("no more tokens in the message");
+	}
+
+	/** reads over the given word if it is the rest of the current token */
+	private
+	boolean nextIsWord(final String word)
+	{
+		if (end-pos < word.length()) return false;
+		for (int i=0; i < word.length(); ++i)
+			if (msg.get(pos+i) != (byte)word.charAt(i)) return false;
+		if (pos+word.length() < end && !isWhiteSpace(msg.get(pos+word.length()))) return false;
+
+		pos += word.length();
+		return true;
+	}
+
+	/** creates the exception, the token that failed to parse is
+	    rendered into the exception's message (this allocates, of course) */
+	private
+	InputMismatchException mismatch(final int tokenStart, final String reason)
+	{
+		int tokenEnd = tokenStart;
+		while (tokenEnd < end && !isWhiteSpace(msg.get(tokenEnd))) ++tokenEnd;
+
+		final StringBuilder sb = new StringBuilder(reason).append(": ");
+		for (int i = tokenStart; i < tokenEnd; ++i) sb.append((char)msg.get(i));
+		return new InputMismatchException(sb.toString());
+	}
+}
@@ -0,0 +1,309 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Connects the parsing and applying stages of the NetMessagesProcessor with
+ * a bounded queue of pre-decoded messages (ElementsBatch-es). The producer
+ * (e.g. the CommandFromNetwork) calls submit() which parses the message in
+ * the producer's thread, without touching the scene at all, and enqueues the
+ * result. The consumer, which is the run() method of this class and which
+ * shall be therefore started in its own thread, takes the batches one by one
+ * and applies them into the scene; the scene gets locked only for the time
+ * of applying one batch, and not during the parsing (as it used to be).
+ *
+ * When the queue is full, the submit() behaves according to the Policy:
+ * it either waits until there is room in the queue (BLOCK), or it drops
+ * the oldest queued batch that is not a "tick" message (DROP_OLDEST); the
+ * "tick" messages are never dropped not to change the counting of time points.
+ * The batches are pooled and re-used to avoid allocations per message.
+ *
+ * Optionally, the pipeline can conflate the time points: when a "tick" is
+ * submitted (which completes a time point) while an older complete time point
+ * is still waiting in the queue, the older one is skipped entirely (and so is
+ * the not-yet-applied rest of the time point that is being applied currently).
+ * The displayed scene thus jumps to the newest state instead of falling further
+ * behind a live simulation. This assumes every time point describes the whole
+ * scene. In this mode, the queue is bounded by the time points, and not by the
+ * number of batches (the depth and the Policy are not used): it holds at most
+ * the newest complete time point and the one that is being received, no matter
+ * how many batches a time point is made of. The skipped time points are counted
+ * and reported only with the reportStats().
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class MessagesPipeline implements Runnable
+{
+	public enum Policy { BLOCK, DROP_OLDEST }
+
+	/** constructor to link to a shared NetMessagesProcessor,
+	    and to create the queue of the given depth */
+	public MessagesPipeline(final NetMessagesProcessor nmp, final int depth, final Policy policy)
+	{
+		this(nmp, depth, policy, false);
+	}
+
+	/** constructor to link to a shared NetMessagesProcessor, to create
+	    the queue of the given depth, and to possibly skip older time points
+	    (in which case the queue is bounded by the time points instead) */
+	public MessagesPipeline(final NetMessagesProcessor nmp, final int depth, final Policy policy,
+	                        final boolean conflateTicks)
+	{
+		if (depth < 1)
+			throw new IllegalArgumentException("MessagesPipeline: Queue depth must be at least 1.");
+
+		netMsgProcessor = nmp;
+		queueDepth = depth;
+		this.policy = policy;
+		this.conflateTicks = conflateTicks;
+		queue = new ArrayDeque<>(depth);
+		pool = new ArrayDeque<>(depth+2);
+	}
+
+	/** constructor with the queue of 16 messages that blocks when full */
+	public MessagesPipeline(final NetMessagesProcessor nmp)
+	{
+		this(nmp, 16, Policy.BLOCK);
+	}
+
+	/** reference on the messages processor */
+	private
+	final NetMessagesProcessor netMsgProcessor;
+
+	/** the max number of batches waiting to be applied, not used when conflating */
+	public
+	final int queueDepth;
+
+	/** what to do when the queue is full */
+	public
+	final Policy policy;
+
+	/** should older complete time points be skipped when a newer one is waiting */
+	public
+	final boolean conflateTicks;
+
+	/** the batches waiting to be applied, access only within synchronized(queue) */
+	private
+	final ArrayDeque<ElementsBatch> queue;
+
+	/** the batches available for re-use, access only within synchronized(pool) */
+	private
+	final ArrayDeque<ElementsBatch> pool;
+
+	/** how many "tick" batches are in the queue, access only within synchronized(queue) */
+	private
+	int queuedTicks = 0;
+
+	/** how many batches were dropped so far because of the full queue */
+	private
+	long droppedBatches = 0;
+
+	/** how many time points were skipped so far because of the conflation */
+	private
+	long skippedTicks = 0;
+
+	//--------------------------------------------
+
+	/** the producer's entry: parses the message and enqueues it,
+	    may wait for the room in the queue if the Policy.BLOCK is used */
+	public
+	void submit(final byte[] msg)
+	throws InterruptedException
+	{
+		submit( ByteBuffer.wrap(msg) );
+	}
+
+	/** the producer's entry: parses the message and enqueues it,
+	    may wait for the room in the queue if the Policy.BLOCK is used */
+	public
+	void submit(final ByteBuffer msg)
+	throws InterruptedException
+	{
+		final ElementsBatch batch = obtainBatch();
+		if (!netMsgProcessor.parseMsg(msg,batch))
+		{
+			returnBatch(batch);
+			return;
+		}
+
+		ElementsBatch dropped = null;
+	 synchronized (queue)
+	 {
+		//NB: when conflating, the queue is bounded by the time points (see skipOlderTicks())
+		if (!conflateTicks && queue.size() >= queueDepth)
+		{
+			if (policy == Policy.DROP_OLDEST) dropped = removeOldestNonTick();
+			while (dropped == null && queue.size() >= queueDepth) queue.wait();
+		}
+		queue.addLast(batch);
+		if (batch.type == ElementsBatch.Type.TICK)
+		{
+			++queuedTicks;
+			if (conflateTicks) skipOlderTicks();
+		}
+		queue.notifyAll();
+	 }
+		if (dropped != null) returnBatch(dropped);
+	}
+
+	/** removes and returns the oldest non-tick batch from the queue,
+	    or returns null if there is no such; to be called within synchronized(queue) */
+	private
+	ElementsBatch removeOldestNonTick()
+	{
+		final Iterator<ElementsBatch> it = queue.iterator();
+		while (it.hasNext())
+		{
+			final ElementsBatch b = it.next();
+			if (b.type != ElementsBatch.Type.TICK)
+			{
+				it.remove();
+				++droppedBatches;
+				return b;
+			}
+		}
+		return null;
+	}
+
+	/** removes all queued batches up to (and including) the last but one
+	    "tick" batch, leaving only the newest complete time point in the queue;
+	    to be called within synchronized(queue) */
+	private
+	void skipOlderTicks()
+	{
+		while (queuedTicks > 1)
+		{
+			final ElementsBatch b = queue.removeFirst();
+			if (b.type == ElementsBatch.Type.TICK)
+			{
+				--queuedTicks;
+				++skippedTicks;
+			}
+			returnBatch(b);
+			//NB: the pool has its own lock, and it never locks the queue
+		}
+	}
+
+	/** the consumer: applies the queued batches until interrupted */
+	public void run()
+	{
+		System.out.println("Messages pipeline: Started with queue depth "+queueDepth+" and policy "+policy
+			+(conflateTicks ? ", skipping older time points." : "."));
+		try {
+			while (true)
+			{
+				final ElementsBatch batch;
+			 synchronized (queue)
+			 {
+				while (queue.isEmpty()) queue.wait();
+				batch = queue.removeFirst();
+				if (batch.type == ElementsBatch.Type.TICK) --queuedTicks;
+				queue.notifyAll();
+			 }
+
+				netMsgProcessor.applyBatch(batch);
+				returnBatch(batch);
+			}
+		}
+		catch (InterruptedException e) {
+			System.out.println("Messages pipeline interrupted: "+e.getMessage());
+		}
+		finally {
+			System.out.println("Messages pipeline: Stopped, "+reportStats());
+		}
+	}
+
+	//--------------------------------------------
+
+	/** returns the number of the queued (not yet applied) batches */
+	public
+	int getQueueSize()
+	{
+	 synchronized (queue)
+	 {
+		return queue.size();
+	 }
+	}
+
+	/** returns how many batches were dropped so far because of the full queue */
+	public
+	long getDroppedBatches()
+	{
+	 synchronized (queue)
+	 {
+		return droppedBatches;
+	 }
+	}
+
+	/** returns how many time points were skipped so far because of the conflation */
+	public
+	long getSkippedTicks()
+	{
+	 synchronized (queue)
+	 {
+		return skippedTicks;
+	 }
+	}
+
+	/** returns a one-line report on the state of this pipeline */
+	public
+	String reportStats()
+	{
+	 synchronized (queue)
+	 {
+		return (conflateTicks ? queue.size()+" in "+queuedTicks+" ticks (latest tick only)"
+		                      : queue.size()+"/"+queueDepth+" ("+policy+")")
+		     +"  dropped batches: "+droppedBatches+"  skipped ticks: "+skippedTicks;
+	 }
+	}
+
+	private
+	ElementsBatch obtainBatch()
+	{
+	 synchronized (pool)
+	 {
+		return pool.isEmpty() ? new ElementsBatch() : pool.removeFirst();
+	 }
+	}
+
+	private
+	void returnBatch(final ElementsBatch batch)
+	{
+	 synchronized (pool)
+	 {
+		//NB: keep only as many as can be in the flight at the same time
+		if (pool.size() < queueDepth+2) pool.addLast(batch);
+	 }
+	}
+}
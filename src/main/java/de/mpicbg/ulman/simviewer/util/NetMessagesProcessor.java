@@ -29,14 +29,12 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package de.mpicbg.ulman.simviewer.util;
 
-import java.util.Locale;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 
-import org.joml.Vector3f;
 import de.mpicbg.ulman.simviewer.DisplayScene;
-import de.mpicbg.ulman.simviewer.elements.Point;
-import de.mpicbg.ulman.simviewer.elements.Line;
-import de.mpicbg.ulman.simviewer.elements.Vector;
 
 /**
  * A class to parse the messages according the "network-protocol" and
@@ -47,6 +45,16 @@ import de.mpicbg.ulman.simviewer.elements.Vector;
  * is utilized, e.g., in the CommandFromNetwork and CommandFromFlightRecorder
  * classes.
  *
+ * The messages are parsed directly from their bytes with the MessageTokenizer,
+ * which is why the processMsg() is available also for byte[] and ByteBuffer.
+ * Besides the textual "v1" and "v2" messages, the binary "v3" messages are
+ * understood too, see the BinaryProtocol class for their definition.
+ *
+ * The changes of the displayed elements are made visible (all at once) only
+ * with the "tick" message (see the DisplayScene.publishChanges()), the elements
+ * sent in messages that are not followed by a "tick" are thus not displayed
+ * until the next "tick" arrives.
+ *
  * This file was created and is being developed by Vladimir Ulman, 2019.
  */
 public class NetMessagesProcessor
@@ -58,39 +66,172 @@ public class NetMessagesProcessor
 		scene = _scene;
 	}
 
-	/** the entry function to process the incoming message; since the "tick" message
-	    may trigger a short waiting before a screen shot of the commanding window is
-	    requested (see the code of the processTickMessage()) and the waiting can be
-	    interrupted, this method may throw an InterruptedException */
+	/** the entry function to process the incoming message given as a String,
+	    see processMsg(ByteBuffer) for the details */
 	public
 	void processMsg(final String msg)
 	throws InterruptedException
 	{
-	 synchronized (scene.lockOnChangingSceneContent)
+		processMsg( msg.getBytes(StandardCharsets.ISO_8859_1) );
+	}
+
+	/** the entry function to process the incoming message given as bytes
+	    (e.g. as received from the network), see processMsg(ByteBuffer) for the details */
+	public
+	void processMsg(final byte[] msg)
+	throws InterruptedException
+	{
+		processMsg( ByteBuffer.wrap(msg) );
+	}
+
+	/** the entry function to process the incoming message, the message spans
+	    from the msg's position() to its limit(); since the "tick" message
+	    may trigger a short waiting before a screen shot of the commanding window is
+	    requested (see the code of the applyTickMessage()) and the waiting can be
+	    interrupted, this method may throw an InterruptedException;
+	    the message is parsed first (without locking the scene), and only
+	    then applied (with the scene locked only for the time of the update) */
+	public
+	void processMsg(final ByteBuffer msg)
+	throws InterruptedException
+	{
+	 synchronized (directBatch)
 	 {
+		if (parseMsg(msg,directBatch)) applyBatch(directBatch);
+	 }
+	}
+
+	/** the parsing stage: decodes the msg (from its position() to its limit())
+	    into the given batch, the scene is not touched at all; returns false if
+	    the message was not understood (and the batch shall be ignored) */
+	public synchronized
+	boolean parseMsg(final ByteBuffer msg, final ElementsBatch batch)
+	{
 		try {
-			if (msg.startsWith("v1 points")) processPoints(msg,true);
+			if (BinaryProtocol.isBinaryMessage(msg)) return parseBinary(msg,batch);
+			else
+			if (MessageTokenizer.startsWith(msg,"v1 points")) return parsePoints(msg,batch,true);
 			else
-			if (msg.startsWith("v1 lines")) processLines(msg,true);
+			if (MessageTokenizer.startsWith(msg,"v1 lines")) return parseLines(msg,batch,true);
 			else
-			if (msg.startsWith("v1 vectors")) processVectors(msg,true);
+			if (MessageTokenizer.startsWith(msg,"v1 vectors")) return parseVectors(msg,batch,true);
 			else
-			if (msg.startsWith("v2 points")) processPoints(msg);
+			if (MessageTokenizer.startsWith(msg,"v2 points")) return parsePoints(msg,batch);
 			else
-			if (msg.startsWith("v2 lines")) processLines(msg);
+			if (MessageTokenizer.startsWith(msg,"v2 lines")) return parseLines(msg,batch);
 			else
-			if (msg.startsWith("v2 vectors")) processVectors(msg);
+			if (MessageTokenizer.startsWith(msg,"v2 vectors")) return parseVectors(msg,batch);
 			else
-			if (msg.startsWith("v1 triangles")) processTriangles(msg);
+			if (MessageTokenizer.startsWith(msg,"v1 triangles")) return parseTriangles(msg);
 			else
-			if (msg.startsWith("v1 tick")) processTickMessage(msg.substring(8));
+			if (MessageTokenizer.startsWith(msg,"v1 tick"))
+			{
+				batch.reset(ElementsBatch.Type.TICK, 0);
+				batch.tickMessage = tickMessageText(msg);
+				return true;
+			}
 			else
-				System.out.println("NetMessagesProcessor: Don't understand this msg: "+msg);
-			scene.refreshInspectorPanel();
+				System.out.println("NetMessagesProcessor: Don't understand this msg: "+asString(msg));
 		}
 		catch (java.util.InputMismatchException e) {
 			System.out.println("NetMessagesProcessor: Parsing error: " + e.getMessage());
 		}
+		return false;
+	}
+
+	/** the applying stage: commits the content of the batch, which was
+	    filled with the parseMsg(), into the scene; the scene's lock is
+	    taken only for the time of the update itself */
+	public
+	void applyBatch(final ElementsBatch batch)
+	throws InterruptedException
+	{
+		applyBatch(batch,true);
+	}
+
+	/** the same as applyBatch(batch), except when 'present' is false: then the
+	    sciview's inspector panel is not refreshed and no screen shot is saved,
+	    which is intended for content that is not meant to be watched (e.g. when
+	    the FlightRecording's player cannot keep up and drops a time point) */
+	public
+	void applyBatch(final ElementsBatch batch, final boolean present)
+	throws InterruptedException
+	{
+		switch (batch.type)
+		{
+		case POINTS:
+			scene.addUpdateOrRemovePoints(batch.IDs, batch.positions, batch.radii, batch.colorsRGB, batch.count);
+			break;
+		case LINES:
+			scene.addUpdateOrRemoveLines(batch.IDs, batch.positions, batch.vectors, batch.colorsRGB, batch.count);
+			break;
+		case VECTORS:
+			scene.addUpdateOrRemoveVectors(batch.IDs, batch.positions, batch.vectors, batch.colorsRGB, batch.count);
+			break;
+		case TICK:
+			applyTickMessage(batch.tickMessage, present);
+			break;
+		}
+		if (present) scene.refreshInspectorPanel();
+	}
+	/** replaces the whole content of the scene with the given keyframe, or makes
+	    the scene empty if null is given; the restored elements are given "ages"
+	    (relative to the current tick counter) as if the keyframe's time point was
+	    just replayed, and, if the scene is garbage collecting, only the elements
+	    updated in the keyframe's time point are restored (just like when replaying) */
+	public
+	void restoreKeyframe(final FlightRecordingKeyframes.Keyframe kf)
+	throws InterruptedException
+	{
+	 synchronized (scene.lockOnChangingSceneContent)
+	 {
+		//NB: the scene is emptied and refilled "behind the scenes",
+		//    and only the restored content is displayed (at once)
+		scene.suspendNodesUpdating();
+		scene.removeAllObjects();
+		scene.resumeNodesUpdating();
+		if (kf == null)
+		{
+			scene.publishChanges();
+			return;
+		}
+
+		final ByteBuffer records;
+		try {
+			records = kf.map();
+		}
+		catch (IOException e) {
+			System.out.println("NetMessagesProcessor: Cannot read the keyframe of time point "
+				+kf.timepoint+": "+e.getMessage());
+			scene.publishChanges();
+			return;
+		}
+
+		final int currentTick = scene.getTickCounter();
+		for (ElementsBatch.Type type : RESTORED_TYPES)
+		{
+			final int first = kf.getFirstIndex(type);
+			final int last  = first + kf.counts[type.ordinal()];
+
+			//restore the elements in groups of the same "age"
+			int from = first;
+			while (from < last)
+			{
+				final int lastSeen = FlightRecordingKeyframes.getLastSeen(records, from);
+				int to = from+1;
+				while (to < last && FlightRecordingKeyframes.getLastSeen(records, to) == lastSeen) ++to;
+
+				if (!scene.garbageCollecting || lastSeen == kf.timepoint)
+				{
+					FlightRecordingKeyframes.readElements(records, from,to, type, restoreBatch);
+					scene.setTickCounter(currentTick-1 - (kf.timepoint-lastSeen));
+					applyBatch(restoreBatch);
+				}
+				from = to;
+			}
+		}
+		scene.setTickCounter(currentTick);
+		scene.publishChanges();
 	 }
 	}
 	//----------------------------------------------------------------------------
@@ -98,207 +239,265 @@ public class NetMessagesProcessor
 	/** reference on the controlled rendering display */
 	private final DisplayScene scene;
 
+	/** the (re-usable) parser of the messages */
+	private final MessageTokenizer s = new MessageTokenizer();
+
+	/** the (re-usable) container of the elements parsed in the processMsg() */
+	private final ElementsBatch directBatch = new ElementsBatch();
+
+	/** the (re-usable) container of the elements used in the restoreKeyframe() */
+	private final ElementsBatch restoreBatch = new ElementsBatch();
+
+	/** the types of elements stored in the keyframes */
+	private static final ElementsBatch.Type[] RESTORED_TYPES =
+		{ ElementsBatch.Type.POINTS, ElementsBatch.Type.LINES, ElementsBatch.Type.VECTORS };
+
 
 	private
-	void processPoints(final String msg)
-	{ processPoints(msg,false); }
+	boolean parsePoints(final ByteBuffer msg, final ElementsBatch batch)
+	{ return parsePoints(msg,batch,false); }
 
 	private
-	void processPoints(final String msg, boolean oldV1colors)
+	boolean parsePoints(final ByteBuffer msg, final ElementsBatch batch, boolean oldV1colors)
 	{
-		Scanner s = new Scanner(msg).useLocale(Locale.ENGLISH);
+		s.reset(msg);
 
-		//System.out.println("processing point msg: "+msg);
+		//System.out.println("processing point msg: "+asString(msg));
 
 		//this skips the "v1 points" - the two tokens
-		s.next();
-		s.next();
-		final int N = s.nextInt();
-
-		if (N > 10) scene.suspendNodesUpdating();
+		s.skip();
+		s.skip();
+		final int N = s.nextCount();
 
 		//is the next token 'dim'?
-		if (s.next("dim").startsWith("dim") == false)
+		if (s.nextIs("dim") == false)
 		{
-			System.out.println("NetMessagesProcessor: Don't understand this msg: "+msg);
-			s.close();
-			return;
+			System.out.println("NetMessagesProcessor: Don't understand this msg: "+asString(msg));
+			return false;
 		}
 
 		//so the next token is dimensionality of the points
 		final int D = s.nextInt();
 
 		//now, point by point is reported
-		final Point p = new Point();
+		batch.reset(ElementsBatch.Type.POINTS, N);
+		final float[] centres = batch.positions;
 
 		for (int n=0; n < N; ++n)
 		{
 			//extract the point ID
-			int ID = s.nextInt();
+			batch.IDs[n] = s.nextInt();
 
 			//now read and save coordinates
-			int d=0;
-			for (; d < D && d < 3; ++d) p.centre.setComponent(d, s.nextFloat());
-			//read possibly remaining coordinates (for which we have no room to store them)
-			for (; d < D; ++d) s.nextFloat();
+			readCoordinates(D, centres, 3*n);
 			//NB: all points in the same message (in this function call) are of the same dimensionality
 
-			p.radius.x = s.nextFloat();
-			p.radius.y = p.radius.x;
-			p.radius.z = p.radius.x;
-			if (oldV1colors) readV1Color(s,p.colorRGB);
-			else             readV2Color(s,p.colorRGB);
-
-			scene.addUpdateOrRemovePoint(ID,p);
+			batch.radii[n] = s.nextFloat();
+			if (oldV1colors) readV1Color(s,batch.colorsRGB,3*n);
+			else             readV2Color(s,batch.colorsRGB,3*n);
 		}
-
-		s.close();
-
-		if (N > 10) scene.resumeNodesUpdating();
+		batch.count = N;
+		return true;
 	}
 
 
 	private
-	void processLines(final String msg)
-	{ processLines(msg,false); }
+	boolean parseLines(final ByteBuffer msg, final ElementsBatch batch)
+	{ return parseLines(msg,batch,false); }
 
 	private
-	void processLines(final String msg, boolean oldV1colors)
+	boolean parseLines(final ByteBuffer msg, final ElementsBatch batch, boolean oldV1colors)
 	{
-		Scanner s = new Scanner(msg).useLocale(Locale.ENGLISH);
+		s.reset(msg);
 
-		//System.out.println("processing point msg: "+msg);
+		//System.out.println("processing point msg: "+asString(msg));
 
 		//this skips the "v1 lines" - the two tokens
-		s.next();
-		s.next();
-		final int N = s.nextInt();
-
-		if (N > 10) scene.suspendNodesUpdating();
+		s.skip();
+		s.skip();
+		final int N = s.nextCount();
 
 		//is the next token 'dim'?
-		if (s.next("dim").startsWith("dim") == false)
+		if (s.nextIs("dim") == false)
 		{
-			System.out.println("NetMessagesProcessor: Don't understand this msg: "+msg);
-			s.close();
-			return;
+			System.out.println("NetMessagesProcessor: Don't understand this msg: "+asString(msg));
+			return false;
 		}
 
 		//so the next token is dimensionality of the points
 		final int D = s.nextInt();
 
 		//now, point pair by pair is reported
-		final Line l = new Line();
+		batch.reset(ElementsBatch.Type.LINES, N);
+		final float[] bases   = batch.positions;
+		final float[] vectors = batch.vectors;
 
 		for (int n=0; n < N; ++n)
 		{
 			//extract the point ID
-			int ID = s.nextInt();
+			batch.IDs[n] = s.nextInt();
 
 			//now read the first in the pair and save coordinates
-			int d=0;
-			for (; d < D && d < 3; ++d) l.base.setComponent(d, s.nextFloat());
-			//read possibly remaining coordinates (for which we have no room to store them)
-			for (; d < D; ++d) s.nextFloat();
+			readCoordinates(D, bases, 3*n);
 
 			//now read the second in the pair and save sizes
-			d=0;
-			for (; d < D && d < 3; ++d) l.vector.setComponent(d, s.nextFloat() - l.base.get(d));
-			//read possibly remaining coordinates (for which we have no room to store them)
-			for (; d < D; ++d) s.nextFloat();
-
-			if (oldV1colors) readV1Color(s,l.colorRGB);
-			else             readV2Color(s,l.colorRGB);
+			readCoordinates(D, vectors, 3*n);
+			vectors[3*n+0] -= bases[3*n+0];
+			vectors[3*n+1] -= bases[3*n+1];
+			vectors[3*n+2] -= bases[3*n+2];
 
-			scene.addUpdateOrRemoveLine(ID,l);
+			if (oldV1colors) readV1Color(s,batch.colorsRGB,3*n);
+			else             readV2Color(s,batch.colorsRGB,3*n);
 		}
-
-		s.close();
-
-		if (N > 10) scene.resumeNodesUpdating();
+		batch.count = N;
+		return true;
 	}
 
 
 	private
-	void processVectors(final String msg)
-	{ processVectors(msg,false); }
+	boolean parseVectors(final ByteBuffer msg, final ElementsBatch batch)
+	{ return parseVectors(msg,batch,false); }
 
 	private
-	void processVectors(final String msg, boolean oldV1colors)
+	boolean parseVectors(final ByteBuffer msg, final ElementsBatch batch, boolean oldV1colors)
 	{
-		Scanner s = new Scanner(msg).useLocale(Locale.ENGLISH);
+		s.reset(msg);
 
-		//System.out.println("processing point msg: "+msg);
+		//System.out.println("processing point msg: "+asString(msg));
 
 		//this skips the "v1 vectors" - the two tokens
-		s.next();
-		s.next();
-		final int N = s.nextInt();
-
-		if (N > 10) scene.suspendNodesUpdating();
+		s.skip();
+		s.skip();
+		final int N = s.nextCount();
 
 		//is the next token 'dim'?
-		if (s.next("dim").startsWith("dim") == false)
+		if (s.nextIs("dim") == false)
 		{
-			System.out.println("NetMessagesProcessor: Don't understand this msg: "+msg);
-			s.close();
-			return;
+			System.out.println("NetMessagesProcessor: Don't understand this msg: "+asString(msg));
+			return false;
 		}
 
 		//so the next token is dimensionality of the points
 		final int D = s.nextInt();
 
 		//now, point pair by pair is reported
-		final Vector v = new Vector();
+		batch.reset(ElementsBatch.Type.VECTORS, N);
 
 		for (int n=0; n < N; ++n)
 		{
 			//extract the point ID
-			int ID = s.nextInt();
+			batch.IDs[n] = s.nextInt();
 
 			//now read the first in the pair and save coordinates
-			int d=0;
-			for (; d < D && d < 3; ++d) v.base.setComponent(d, s.nextFloat());
-			//read possibly remaining coordinates (for which we have no room to store them)
-			for (; d < D; ++d) s.nextFloat();
+			readCoordinates(D, batch.positions, 3*n);
 
 			//now read the second in the pair and save sizes
-			d=0;
-			for (; d < D && d < 3; ++d) v.vector.setComponent(d, s.nextFloat());
-			//read possibly remaining coordinates (for which we have no room to store them)
-			for (; d < D; ++d) s.nextFloat();
+			readCoordinates(D, batch.vectors, 3*n);
 
-			if (oldV1colors) readV1Color(s,v.colorRGB);
-			else             readV2Color(s,v.colorRGB);
+			if (oldV1colors) readV1Color(s,batch.colorsRGB,3*n);
+			else             readV2Color(s,batch.colorsRGB,3*n);
+		}
+		batch.count = N;
+		return true;
+	}
 
-			scene.addUpdateOrRemoveVector(ID,v);
+	/** reads D coordinates into the xyz[offset+0..2], coordinates beyond the 3rd are
+	    read over (for which we have no room to store them), and missing ones are zeroed */
+	private
+	void readCoordinates(final int D, final float[] xyz, final int offset)
+	{
+		int d=0;
+		for (; d < D && d < 3; ++d) xyz[offset+d] = s.nextFloat();
+		for (; d < 3; ++d) xyz[offset+d] = 0.f;
+		for (; d < D; ++d) s.nextFloat();
+	}
+
+
+	private
+	boolean parseBinary(final ByteBuffer msg, final ElementsBatch batch)
+	{
+		final long length = BinaryProtocol.getMessageLength(msg);
+		if (length < 0 || length > msg.remaining())
+		{
+			System.out.println("NetMessagesProcessor: Truncated or unknown binary msg of "+msg.remaining()+" bytes");
+			return false;
 		}
 
-		s.close();
+		//NB: a view on the msg not to disturb the byte order of the caller's buffer
+		final ByteBuffer b = msg.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		final int N = BinaryProtocol.getCount(msg);
+		int pos = msg.position() + BinaryProtocol.HEADER_SIZE;
 
-		if (N > 10) scene.resumeNodesUpdating();
+		switch (BinaryProtocol.getType(msg))
+		{
+		case BinaryProtocol.TYPE_POINTS:
+			batch.reset(ElementsBatch.Type.POINTS, N);
+			for (int n=0; n < N; ++n, pos += BinaryProtocol.POINT_RECORD_SIZE)
+			{
+				batch.IDs[n] = b.getInt(pos);
+				readBinaryTriplet(b,pos+4, batch.positions,3*n);
+				batch.radii[n] = b.getFloat(pos+16);
+				readBinaryTriplet(b,pos+20, batch.colorsRGB,3*n);
+			}
+			batch.count = N;
+			return true;
+
+		case BinaryProtocol.TYPE_LINES:
+			batch.reset(ElementsBatch.Type.LINES, N);
+			readBinaryLinesOrVectors(b,pos,N,batch);
+			return true;
+
+		case BinaryProtocol.TYPE_VECTORS:
+			batch.reset(ElementsBatch.Type.VECTORS, N);
+			readBinaryLinesOrVectors(b,pos,N,batch);
+			return true;
+		}
+		return false;
 	}
 
+	private static
+	void readBinaryLinesOrVectors(final ByteBuffer b, int pos, final int N, final ElementsBatch batch)
+	{
+		for (int n=0; n < N; ++n, pos += BinaryProtocol.LINE_RECORD_SIZE)
+		{
+			batch.IDs[n] = b.getInt(pos);
+			readBinaryTriplet(b,pos+4,  batch.positions,3*n);
+			readBinaryTriplet(b,pos+16, batch.vectors,  3*n);
+			readBinaryTriplet(b,pos+28, batch.colorsRGB,3*n);
+		}
+		batch.count = N;
+	}
 
-	private
-	void processTriangles(final String msg)
+	private static
+	void readBinaryTriplet(final ByteBuffer b, final int pos, final float[] xyz, final int offset)
 	{
-		System.out.println("NetMessagesProcessor: not implemented yet: "+msg);
+		xyz[offset+0] = b.getFloat(pos);
+		xyz[offset+1] = b.getFloat(pos+4);
+		xyz[offset+2] = b.getFloat(pos+8);
 	}
 
 
+	private
+	boolean parseTriangles(final ByteBuffer msg)
+	{
+		System.out.println("NetMessagesProcessor: not implemented yet: "+asString(msg));
+		return false;
+	}
+
 	/** this is a general (free format) message, which is assumed
 	    to be sent typically after one simulation round is over */
 	private
-	void processTickMessage(final String msg)
+	void applyTickMessage(final String msg, final boolean present)
 	throws InterruptedException
 	{
 		System.out.println("NetMessagesProcessor: Got tick message: "+msg);
 
 		//check if we should save the screen
-		if (scene.savingScreenshots)
+		final boolean savingScreenshot = present && scene.savingScreenshots;
+		if (savingScreenshot)
 		{
 			//give scenery some grace time to redraw everything
+			//NB: outside the lock not to block the rendering meanwhile
 			try {
 				Thread.sleep(2000);
 			} catch (InterruptedException e) {
@@ -307,64 +506,89 @@ public class NetMessagesProcessor
 				e.printStackTrace();
 				throw e;
 			}
-
-			scene.saveNextScreenshot();
 		}
 
+	 synchronized (scene.lockOnChangingSceneContent)
+	 {
+		if (savingScreenshot) scene.saveNextScreenshot();
 		if (scene.garbageCollecting) scene.garbageCollect();
-
 		scene.increaseTickCounter();
+	 }
+
+		//NB: outside the lock, it rebuilds the scene (and only if it has to)
+		if (scene.autoFitScene) scene.autoFitSceneIfNeeded();
 	}
 
 
 	private
-	void readV1Color(final Scanner s, final Vector3f color)
+	void readV1Color(final MessageTokenizer s, final float[] rgb, final int offset)
 	{
 		final int colorIndex = s.nextInt();
 		switch (colorIndex)
 		{
 		case 1:
-			color.x = 1.0f;
-			color.y = 0.0f;
-			color.z = 0.0f;
+			rgb[offset+0] = 1.0f;
+			rgb[offset+1] = 0.0f;
+			rgb[offset+2] = 0.0f;
 			break;
 		case 2:
-			color.x = 0.0f;
-			color.y = 1.0f;
-			color.z = 0.0f;
+			rgb[offset+0] = 0.0f;
+			rgb[offset+1] = 1.0f;
+			rgb[offset+2] = 0.0f;
 			break;
 		case 3:
-			color.x = 0.0f;
-			color.y = 0.0f;
-			color.z = 1.0f;
+			rgb[offset+0] = 0.0f;
+			rgb[offset+1] = 0.0f;
+			rgb[offset+2] = 1.0f;
 			break;
 		case 4:
-			color.x = 0.0f;
-			color.y = 1.0f;
-			color.z = 1.0f;
+			rgb[offset+0] = 0.0f;
+			rgb[offset+1] = 1.0f;
+			rgb[offset+2] = 1.0f;
 			break;
 		case 5:
-			color.x = 1.0f;
-			color.y = 0.0f;
-			color.z = 1.0f;
+			rgb[offset+0] = 1.0f;
+			rgb[offset+1] = 0.0f;
+			rgb[offset+2] = 1.0f;
 			break;
 		case 6:
-			color.x = 1.0f;
-			color.y = 1.0f;
-			color.z = 0.0f;
+			rgb[offset+0] = 1.0f;
+			rgb[offset+1] = 1.0f;
+			rgb[offset+2] = 0.0f;
 			break;
 		default:
-			color.x = 1.0f;
-			color.y = 1.0f;
-			color.z = 1.0f;
+			rgb[offset+0] = 1.0f;
+			rgb[offset+1] = 1.0f;
+			rgb[offset+2] = 1.0f;
 		}
 	}
 
 	private
-	void readV2Color(final Scanner s, final Vector3f color)
+	void readV2Color(final MessageTokenizer s, final float[] rgb, final int offset)
+	{
+		rgb[offset+0] = s.nextFloat();
+		rgb[offset+1] = s.nextFloat();
+		rgb[offset+2] = s.nextFloat();
+	}
+
+	/** returns the free-format text of the "v1 tick" message */
+	static
+	String tickMessageText(final ByteBuffer msg)
+	{
+		final int start = msg.position() + 8; //skips over "v1 tick "
+		if (start >= msg.limit()) return "";
+
+		final byte[] text = new byte[msg.limit()-start];
+		for (int i=0; i < text.length; ++i) text[i] = msg.get(start+i);
+		return new String(text, StandardCharsets.ISO_8859_1);
+	}
+
+	/** returns the whole message as a String, e.g. to report it */
+	static
+	String asString(final ByteBuffer msg)
 	{
-		color.x = s.nextFloat();
-		color.y = s.nextFloat();
-		color.z = s.nextFloat();
+		final byte[] text = new byte[msg.remaining()];
+		for (int i=0; i < text.length; ++i) text[i] = msg.get(msg.position()+i);
+		return new String(text, StandardCharsets.ISO_8859_1);
 	}
 }
@@ -0,0 +1,105 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an action over a range of indices (typically the slots of an ElementsStore)
+ * split into chunks that are processed in parallel in the common ForkJoinPool.
+ * The range is halved recursively until the chunks are not longer than 'chunkSize';
+ * short ranges are thus processed right in the calling thread, without any overhead.
+ *
+ * The action must be safe to run concurrently on disjoint ranges, that is it may
+ * read the shared data, but it may write only the data of the indices of its range
+ * (e.g. the Nodes of the elements in these slots). The method returns after
+ * all chunks have been processed.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class ParallelRanges
+{
+	/** the action on the indices [from,to) */
+	public interface RangeAction
+	{
+		void apply(final int from, final int to);
+	}
+
+	/** the default length of the chunks, which amortizes the forking
+	    well enough for the per-element transform computations */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	/** processes the range [from,to) in chunks of at most DEFAULT_CHUNK_SIZE indices */
+	public static
+	void forEachChunk(final int from, final int to, final RangeAction action)
+	{
+		forEachChunk(from, to, DEFAULT_CHUNK_SIZE, action);
+	}
+
+	/** processes the range [from,to) in chunks of at most 'chunkSize' indices */
+	public static
+	void forEachChunk(final int from, final int to, final int chunkSize, final RangeAction action)
+	{
+		if (to-from <= chunkSize || ForkJoinPool.getCommonPoolParallelism() < 2)
+			action.apply(from, to);
+		else
+			ForkJoinPool.commonPool().invoke( new Chunk(from, to, Math.max(chunkSize,1), action) );
+	}
+
+	private static class Chunk extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		Chunk(final int from, final int to, final int chunkSize, final RangeAction action)
+		{
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.action = action;
+		}
+
+		final int from, to, chunkSize;
+		final RangeAction action;
+
+		@Override
+		protected void compute()
+		{
+			if (to-from <= chunkSize)
+			{
+				action.apply(from, to);
+				return;
+			}
+
+			final int mid = (from+to) >>> 1;
+			invokeAll( new Chunk(from, mid, chunkSize, action), new Chunk(mid, to, chunkSize, action) );
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Merges the "tick" messages of several producers (e.g. ranks of a distributed
+ * simulation, each sending its own part of the scene) into one "tick" of the
+ * displayed scene: the tick is let through only when every registered producer
+ * has sent its "tick". Producers are told apart by their identities (e.g. the
+ * identity frames of the ZeroMQ's ROUTER socket), and get registered as they
+ * appear. A producer may get ahead of the others, its surplus "ticks" are
+ * remembered and used in the next rounds.
+ *
+ * If the number of expected producers is given, no tick is let through until
+ * that many producers have been seen; if it is 0, the tick is let through
+ * as soon as all producers seen so far have ticked.
+ *
+ * A producer that is finishing shall say goodbye (the "v1 bye" message) to
+ * be unregistered, otherwise the merging would wait for its "ticks" forever.
+ * Since a producer may also die without saying goodbye, a warning is printed
+ * whenever the waiting for the missing "ticks" takes too long, that is when
+ * some producer gets ahead of the slowest one by another stallWarningTicks.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class ProducersTickMerger
+{
+	/** constructor with the number of producers to wait for, or 0 to
+	    work with whichever producers have been seen so far */
+	public ProducersTickMerger(final int expectedProducers)
+	{
+		if (expectedProducers < 0)
+			throw new IllegalArgumentException("ProducersTickMerger: Number of producers cannot be negative.");
+		this.expectedProducers = expectedProducers;
+	}
+
+	/** the number of producers to wait for, or 0 */
+	public final int expectedProducers;
+
+	/** registered producers and the number of their "ticks" not yet merged */
+	private final Map<String,Integer> pendingTicks = new HashMap<>();
+
+	/** how many merged "ticks" have been let through so far */
+	private int mergedTicks = 0;
+
+	/** how many producers have been registered so far, including the departed ones */
+	private int producersSeen = 0;
+
+	/** after how many "ticks" of waiting for the missing ones a warning is printed, 0 - never */
+	public int stallWarningTicks = 100;
+
+	//--------------------------------------------
+
+	/** makes the producer known (does nothing if it is known already) */
+	public synchronized
+	void registerProducer(final byte[] identity)
+	{
+		if (pendingTicks.putIfAbsent(asKey(identity),0) == null)
+		{
+			++producersSeen;
+			System.out.println("ProducersTickMerger: New producer registered, now having "
+				+pendingTicks.size()+(expectedProducers > 0 ? " of "+expectedProducers : "")+".");
+		}
+	}
+
+	/** forgets the producer (which has said goodbye), and returns how many
+	    merged "ticks" shall be let through because the rounds that were
+	    waiting only for this producer are over now */
+	public synchronized
+	int unregisterProducer(final byte[] identity)
+	{
+		if (pendingTicks.remove(asKey(identity)) == null) return 0;
+		System.out.println("ProducersTickMerger: Producer unregistered, now having "
+			+pendingTicks.size()+".");
+
+		int ticks = 0;
+		while (isRoundOver()) ++ticks;
+		return ticks;
+	}
+
+	/** notes the "tick" of the given producer, and returns true if this was
+	    the last missing "tick" in the current round (and the merged "tick"
+	    shall be therefore let through) */
+	public synchronized
+	boolean tickFrom(final byte[] identity)
+	{
+		registerProducer(identity);
+		final int ahead = pendingTicks.merge(asKey(identity),1,Integer::sum);
+
+		if (isRoundOver()) return true;
+
+		if (stallWarningTicks > 0 && ahead % stallWarningTicks == 0)
+			System.out.println("ProducersTickMerger: Still waiting for "+getWaitedForCount()
+				+" producer(s), others are "+ahead+" ticks ahead (has some died without saying goodbye?)");
+		return false;
+	}
+
+	/** if all producers have ticked, closes the round and returns true;
+	    to be called within synchronized(this) */
+	private
+	boolean isRoundOver()
+	{
+		if (producersSeen < expectedProducers || pendingTicks.isEmpty()) return false;
+		for (int ticks : pendingTicks.values())
+			if (ticks == 0) return false;
+
+		//all have ticked, the round is over
+		pendingTicks.replaceAll((k,ticks) -> ticks-1);
+		++mergedTicks;
+		return true;
+	}
+
+	/** returns how many producers have not ticked in the current round,
+	    to be called within synchronized(this) */
+	private
+	int getWaitedForCount()
+	{
+		int cnt = 0;
+		for (int ticks : pendingTicks.values())
+			if (ticks == 0) ++cnt;
+		return cnt + Math.max(expectedProducers-producersSeen, 0);
+	}
+
+	/** returns the number of producers seen so far */
+	public synchronized
+	int getProducersCount()
+	{
+		return pendingTicks.size();
+	}
+
+	/** returns how many merged "ticks" have been let through so far */
+	public synchronized
+	int getMergedTicks()
+	{
+		return mergedTicks;
+	}
+
+	private static
+	String asKey(final byte[] identity)
+	{
+		//NB: this charset maps every byte to exactly one char, so the keys are unique
+		return new String(identity, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,366 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over the elements of one ElementsStore: the scene box (given with
+ * its offset and size, just like the DisplayScene's sceneOffset and sceneSize) is
+ * split into cubic grid cells, and every element is kept in the grid cell of its
+ * position (the centre of a point, the base of a line or vector). The elements
+ * outside the box are kept in the nearest border grid cell, so nothing is ever
+ * lost, only the queries become slower if too many elements are outside (which
+ * is why the grid should be reshaped whenever the scene is resized).
+ *
+ * The elements of one grid cell are chained, with the prev[] and next[] arrays
+ * indexed with the store's slots, into a list whose first slot is in the head[].
+ * The store reports every change of an element (see ElementsStore.elementChanged()),
+ * which is O(1): if the element remains in its grid cell -- the typical case of
+ * the cells that move only a little every tick -- nothing is changed at all,
+ * otherwise the slot is moved to the list of its new grid cell.
+ *
+ * The queries (elements within a box, within a radius, and nearest to a ray)
+ * visit only the grid cells that overlap with the query, and always test the
+ * elements' actual positions. They report the slots of the found elements,
+ * the IDs are then in the store's IDs[]. The grid is not synchronized.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class SpatialGrid
+{
+	/** creates an empty grid over the given box of the scene, for the elements of the given store,
+	    the longest side of the box is split into 'resolution' grid cells */
+	public SpatialGrid(final ElementsStore store,
+	                   final float[] sOffset, final float[] sSize, final int resolution)
+	{
+		this.store = store;
+		this.resolution = resolution;
+		reshape(sOffset,sSize);
+	}
+
+	/** the store with the elements */
+	private final ElementsStore store;
+
+	/** the number of grid cells along the longest side of the scene */
+	private final int resolution;
+
+	/** the geometry of the grid: the corner, the side of a grid cell, and the numbers of grid cells */
+	private final float[] offset = new float[3];
+	private float cellSize, invCellSize;
+	private int nx, ny, nz;
+
+	/** the first slot (or -1) in every grid cell, the grid cell index is x + nx*(y + ny*z) */
+	private int[] head;
+
+	/** the grid cell of every slot (or -1 if not in the grid), and the neighbouring slots (or -1) */
+	private int[] cellOfSlot = new int[0];
+	private int[] prev = new int[0], next = new int[0];
+
+	/** the number of grid cells visited (incl. repeated visits) by the last query */
+	private int visitedCells = 0;
+
+	/** the distance to the ray of the element found with the last findNearestToRay() */
+	private float lastRayDistance = Float.POSITIVE_INFINITY;
+
+	/** the findNearestToRay() makes at most this many steps per grid cell along the longest side */
+	static final int MAX_RAY_STEPS_PER_CELL = 4;
+
+	/** stamps to visit every grid cell at most once during one ray query */
+	private int[] visitStamps;
+	private int visitStamp = 0;
+
+	// ------- maintenance -------
+	/** re-creates the grid over the given box of the scene, and re-inserts all elements of the store */
+	public
+	void reshape(final float[] sOffset, final float[] sSize)
+	{
+		final float longestSide = Math.max(Math.max(sSize[0],sSize[1]),sSize[2]);
+		cellSize = longestSide > 0 ? longestSide / resolution : 1.f;
+		invCellSize = 1.f / cellSize;
+
+		for (int d = 0; d < 3; ++d) offset[d] = sOffset[d];
+		nx = Math.max((int)Math.ceil(sSize[0]*invCellSize), 1);
+		ny = Math.max((int)Math.ceil(sSize[1]*invCellSize), 1);
+		nz = Math.max((int)Math.ceil(sSize[2]*invCellSize), 1);
+
+		head = new int[nx*ny*nz];
+		Arrays.fill(head, -1);
+		visitStamps = new int[nx*ny*nz];
+		visitStamp = 0;
+
+		Arrays.fill(cellOfSlot, -1);
+		for (int s = 0; s < store.getSlotsCount(); ++s)
+			if (store.isUsed(s)) update(s);
+	}
+
+	/** puts the slot into the grid cell of its current position */
+	public
+	void update(final int slot)
+	{
+		if (slot >= cellOfSlot.length) grow(Math.max(2*cellOfSlot.length, slot+1));
+
+		final float[] p = store.positions;
+		final int cell = cellIndex( toGrid(p[3*slot],0,nx), toGrid(p[3*slot+1],1,ny), toGrid(p[3*slot+2],2,nz) );
+
+		//no change in the grid cell, the typical case
+		if (cell == cellOfSlot[slot]) return;
+
+		remove(slot);
+		cellOfSlot[slot] = cell;
+		prev[slot] = -1;
+		next[slot] = head[cell];
+		if (head[cell] > -1) prev[head[cell]] = slot;
+		head[cell] = slot;
+	}
+
+	/** takes the slot out of the grid */
+	public
+	void remove(final int slot)
+	{
+		if (slot >= cellOfSlot.length || cellOfSlot[slot] == -1) return;
+
+		final int p = prev[slot];
+		final int n = next[slot];
+		if (p > -1) next[p] = n; else head[cellOfSlot[slot]] = n;
+		if (n > -1) prev[n] = p;
+		cellOfSlot[slot] = -1;
+	}
+
+	// ------- queries -------
+	/** reports slots of all elements whose position is within the box given with
+	    its min and max corners, and returns their number */
+	public
+	int findInBox(final float[] min, final float[] max, final IntConsumer slotsConsumer)
+	{
+		visitedCells = 0;
+		int found = 0;
+
+		final int x0 = toGrid(min[0],0,nx), x1 = toGrid(max[0],0,nx);
+		final int y0 = toGrid(min[1],1,ny), y1 = toGrid(max[1],1,ny);
+		final int z0 = toGrid(min[2],2,nz), z1 = toGrid(max[2],2,nz);
+
+		final float[] pos = store.positions;
+		for (int z = z0; z <= z1; ++z)
+		for (int y = y0; y <= y1; ++y)
+		for (int x = x0; x <= x1; ++x)
+		{
+			++visitedCells;
+			for (int s = head[cellIndex(x,y,z)]; s > -1; s = next[s])
+			{
+				final float px = pos[3*s], py = pos[3*s+1], pz = pos[3*s+2];
+				if (px >= min[0] && px <= max[0] && py >= min[1] && py <= max[1] && pz >= min[2] && pz <= max[2])
+				{
+					slotsConsumer.accept(s);
+					++found;
+				}
+			}
+		}
+		return found;
+	}
+
+	/** reports slots of all elements whose position is not further than 'radius'
+	    from the given centre, and returns their number */
+	public
+	int findInRadius(final float cx, final float cy, final float cz, final float radius,
+	                 final IntConsumer slotsConsumer)
+	{
+		visitedCells = 0;
+		int found = 0;
+
+		final int x0 = toGrid(cx-radius,0,nx), x1 = toGrid(cx+radius,0,nx);
+		final int y0 = toGrid(cy-radius,1,ny), y1 = toGrid(cy+radius,1,ny);
+		final int z0 = toGrid(cz-radius,2,nz), z1 = toGrid(cz+radius,2,nz);
+		final float rr = radius*radius;
+
+		final float[] pos = store.positions;
+		for (int z = z0; z <= z1; ++z)
+		for (int y = y0; y <= y1; ++y)
+		for (int x = x0; x <= x1; ++x)
+		{
+			++visitedCells;
+			for (int s = head[cellIndex(x,y,z)]; s > -1; s = next[s])
+			{
+				final float dx = pos[3*s]-cx, dy = pos[3*s+1]-cy, dz = pos[3*s+2]-cz;
+				if (dx*dx + dy*dy + dz*dz <= rr)
+				{
+					slotsConsumer.accept(s);
+					++found;
+				}
+			}
+		}
+		return found;
+	}
+
+	/** returns the slot of the element whose position is the closest to the given ray
+	    (only the part of the line in the direction of the ray counts), but not further
+	    than 'maxDistance' from it, or -1 if there is no such element; the direction
+	    need not be normalized; the distance of the found element is available
+	    afterwards with getLastRayDistance(); the grid cells are visited along the
+	    ray only within the span of the box around the grid and all elements
+	    (the part of the ray where the closest points to the elements can be) */
+	public
+	int findNearestToRay(final float[] origin, final float[] direction, final float maxDistance)
+	{
+		if (!(maxDistance >= 0) || Float.isInfinite(maxDistance))
+			throw new IllegalArgumentException("The maxDistance must be finite and non-negative, got: "+maxDistance);
+
+		visitedCells = 0;
+		lastRayDistance = Float.POSITIVE_INFINITY;
+
+		final float len = (float)Math.sqrt(direction[0]*direction[0] + direction[1]*direction[1] + direction[2]*direction[2]);
+		if (len == 0) return -1;
+		final float[] dir = { direction[0]/len, direction[1]/len, direction[2]/len };
+
+		//the box around the grid and all elements, the elements outside the grid
+		//are in its border grid cells, which are then visited from "outside"
+		final float[] boxMin = { offset[0], offset[1], offset[2] };
+		final float[] boxMax = { offset[0]+nx*cellSize, offset[1]+ny*cellSize, offset[2]+nz*cellSize };
+		store.extendBoundingBox(boxMin,boxMax);
+
+		//the span of the box along the ray (projections of its corners onto the ray),
+		//the closest point on the ray to any element is within this span
+		float tMin = 0, tMax = 0;
+		for (int d = 0; d < 3; ++d)
+		{
+			final float lo = (boxMin[d] - origin[d]) * dir[d];
+			final float hi = (boxMax[d] - origin[d]) * dir[d];
+			tMin += Math.min(lo,hi);
+			tMax += Math.max(lo,hi);
+		}
+		tMin = Math.max(tMin, 0.f);
+		tMax = Math.max(tMax, 0.f);
+		if (!(tMax - tMin < Float.POSITIVE_INFINITY)) return -1; //NB: also for NaN
+
+		//new stamp for this query (and clear all stamps on overflow)
+		if (++visitStamp == Integer.MAX_VALUE)
+		{
+			Arrays.fill(visitStamps, 0);
+			visitStamp = 1;
+		}
+
+		//march along the ray in steps of half a grid cell (or longer not to make
+		//more than MAX_RAY_STEPS_PER_CELL*resolution steps if some elements are
+		//far away from the grid), and visit all grid cells within maxDistance
+		//from the current point
+		final float step = Math.max(0.5f * cellSize, (tMax - tMin) / (MAX_RAY_STEPS_PER_CELL * resolution));
+		final int steps = (int)Math.ceil((tMax - tMin) / step);
+		final float reach = maxDistance + step;
+		final float maxDist2 = maxDistance*maxDistance;
+		final float[] pos = store.positions;
+
+		int best = -1;
+		float bestDist2 = Float.POSITIVE_INFINITY;
+
+		for (int i = 0; i <= steps; ++i)
+		{
+			final float t = tMin + i*step;
+			final float qx = origin[0] + t*dir[0];
+			final float qy = origin[1] + t*dir[1];
+			final float qz = origin[2] + t*dir[2];
+
+			final int x0 = toGrid(qx-reach,0,nx), x1 = toGrid(qx+reach,0,nx);
+			final int y0 = toGrid(qy-reach,1,ny), y1 = toGrid(qy+reach,1,ny);
+			final int z0 = toGrid(qz-reach,2,nz), z1 = toGrid(qz+reach,2,nz);
+
+			for (int z = z0; z <= z1; ++z)
+			for (int y = y0; y <= y1; ++y)
+			for (int x = x0; x <= x1; ++x)
+			{
+				final int cell = cellIndex(x,y,z);
+				if (visitStamps[cell] == visitStamp) continue;
+				visitStamps[cell] = visitStamp;
+				++visitedCells;
+
+				for (int s = head[cell]; s > -1; s = next[s])
+				{
+					//distance of the element's position from the ray
+					final float vx = pos[3*s]-origin[0], vy = pos[3*s+1]-origin[1], vz = pos[3*s+2]-origin[2];
+					final float along = Math.max(vx*dir[0] + vy*dir[1] + vz*dir[2], 0.f);
+					final float ex = vx - along*dir[0], ey = vy - along*dir[1], ez = vz - along*dir[2];
+					final float dist2 = ex*ex + ey*ey + ez*ez;
+					if (dist2 <= maxDist2 && dist2 < bestDist2)
+					{
+						best = s;
+						bestDist2 = dist2;
+					}
+				}
+			}
+
+			//all grid cells visited already?
+			if (x0 == 0 && y0 == 0 && z0 == 0 && x1 == nx-1 && y1 == ny-1 && z1 == nz-1) break;
+		}
+
+		if (best > -1) lastRayDistance = (float)Math.sqrt(bestDist2);
+		return best;
+	}
+
+	/** returns the distance to the ray of the element found with the last findNearestToRay() */
+	public
+	float getLastRayDistance()
+	{
+		return lastRayDistance;
+	}
+
+	/** returns the number of grid cells visited by the last query */
+	public
+	int getVisitedCells()
+	{
+		return visitedCells;
+	}
+
+	// ------- helpers -------
+	/** returns the grid coordinate along the axis 'd', clamped into [0,n-1] */
+	private
+	int toGrid(final float coord, final int d, final int n)
+	{
+		final float g = (coord - offset[d]) * invCellSize;
+		if (!(g >= 0)) return 0;  //NB: also for NaN
+		if (g >= n) return n-1;
+		return (int)g;
+	}
+
+	private
+	int cellIndex(final int x, final int y, final int z)
+	{
+		return x + nx*(y + ny*z);
+	}
+
+	private
+	void grow(final int capacity)
+	{
+		final int oldLength = cellOfSlot.length;
+		cellOfSlot = Arrays.copyOf(cellOfSlot, capacity);
+		Arrays.fill(cellOfSlot, oldLength, capacity, -1);
+		prev = Arrays.copyOf(prev, capacity);
+		next = Arrays.copyOf(next, capacity);
+	}
+}
@@ -0,0 +1,266 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+/**
+ * Records the live stream of messages into FlightRecording file(s) while
+ * they are being displayed. The receiver (e.g. the CommandFromNetwork) calls
+ * offer() with every message, exactly as received (textual or binary "v3"),
+ * which only enqueues it and never waits for the disk. The run() method of
+ * this class, which shall be therefore started in its own thread, takes the
+ * queued messages, gathers them (each followed by a newline, see the format
+ * in the CommandFromFlightRecorder) in a large buffer and writes them out
+ * in big chunks. (The writing itself is not interruptible, so stopping this
+ * thread never loses the messages that have been already taken from the queue.)
+ *
+ * The queue is bounded by the total size of the queued messages. When it is
+ * full, the offered message is not queued but counted as overflown instead;
+ * the "tick" messages are however always queued (they are small) not to change
+ * the counting of the time points in the recording.
+ *
+ * Optionally, the recording is split into more files: a new file is started
+ * (right after a "tick" message, so files always hold whole time points) once
+ * the current one has reached the given size or the given number of "tick"
+ * messages. The files are then named after the given file with a sequence
+ * number inserted before its extension, e.g. rec_0001.txt, rec_0002.txt, ...
+ * Note that every file holds only the messages of its time points, it is thus
+ * fully replayable only if the simulation re-sends the whole scene every time point.
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class StreamRecorder implements Runnable
+{
+	/** constructor to record into one file, with the queue of the given size (in bytes) */
+	public StreamRecorder(final Path file, final long maxQueuedBytes)
+	{
+		this(file, maxQueuedBytes, 0, 0);
+	}
+
+	/** constructor to record into a sequence of files, a new one is started after the
+	    rotateAfterBytes or rotateAfterTicks is reached (0 means "no limit" for either) */
+	public StreamRecorder(final Path file, final long maxQueuedBytes,
+	                      final long rotateAfterBytes, final int rotateAfterTicks)
+	{
+		if (maxQueuedBytes < 1)
+			throw new IllegalArgumentException("StreamRecorder: Queue size must be positive.");
+
+		this.file = file;
+		this.maxQueuedBytes = maxQueuedBytes;
+		this.rotateAfterBytes = rotateAfterBytes;
+		this.rotateAfterTicks = rotateAfterTicks;
+	}
+
+	/** the (base) name of the recording */
+	public
+	final Path file;
+
+	/** the max total size of the messages waiting to be written */
+	public
+	final long maxQueuedBytes;
+
+	/** the file sizes and numbers of "tick" messages that start a new file */
+	public
+	final long rotateAfterBytes;
+	public
+	final int rotateAfterTicks;
+
+	/** the messages waiting to be written, access only within synchronized(queue) */
+	private
+	final ArrayDeque<byte[]> queue = new ArrayDeque<>(1024);
+
+	/** the total size of the messages in the queue */
+	private
+	long queuedBytes = 0;
+
+	/** how many messages were not recorded because of the full queue */
+	private
+	long overflownMessages = 0;
+
+	/** how many messages and bytes were written so far (changed only from the writer thread) */
+	private volatile
+	long writtenMessages = 0, writtenBytes = 0;
+
+	/** the size of the writing buffer */
+	static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	//--------------------------------------------
+
+	/** the receiver's entry: enqueues the message to be recorded, never waits;
+	    the message is kept by reference, its content must not be changed later;
+	    returns false if the message was not queued because the queue is full */
+	public
+	boolean offer(final byte[] msg)
+	{
+	 synchronized (queue)
+	 {
+		if (queuedBytes + msg.length > maxQueuedBytes && !FlightRecording.isTickMessage(ByteBuffer.wrap(msg)))
+		{
+			++overflownMessages;
+			return false;
+		}
+
+		queue.addLast(msg);
+		queuedBytes += msg.length;
+		queue.notifyAll();
+		return true;
+	 }
+	}
+
+	/** the writer: writes the queued messages until interrupted,
+	    the remaining queued messages are written then too */
+	public void run()
+	{
+		System.out.println("Stream recorder: Started recording into "+file
+			+(rotateAfterBytes > 0 || rotateAfterTicks > 0 ? " (and the following files)." : "."));
+
+		final ArrayDeque<byte[]> toBeWritten = new ArrayDeque<>(1024);
+
+		OutputStream out = null;
+		int fileNo = 0;
+		long bytesInFile = 0;
+		int ticksInFile = 0;
+
+		boolean keepRecording = true;
+		try {
+			out = openFile(rotateAfterBytes > 0 || rotateAfterTicks > 0 ? ++fileNo : 0);
+
+			while (keepRecording)
+			{
+				//take over all queued messages at once
+			 synchronized (queue)
+			 {
+				try {
+					while (queue.isEmpty()) queue.wait();
+				}
+				catch (InterruptedException e) {
+					//finish what has been queued, and stop then
+					System.out.println("Stream recorder interrupted: "+e.getMessage());
+					keepRecording = false;
+				}
+				toBeWritten.addAll(queue);
+				queue.clear();
+				queuedBytes = 0;
+			 }
+
+				byte[] msg;
+				while ((msg = toBeWritten.pollFirst()) != null)
+				{
+					//NB: the large messages bypass the buffer and are written directly
+					out.write(msg);
+					out.write('\n');
+
+					bytesInFile += msg.length+1;
+					writtenBytes += msg.length+1;
+					++writtenMessages;
+
+					if (FlightRecording.isTickMessage(ByteBuffer.wrap(msg)))
+					{
+						++ticksInFile;
+						if ((rotateAfterBytes > 0 && bytesInFile >= rotateAfterBytes)
+						 || (rotateAfterTicks > 0 && ticksInFile >= rotateAfterTicks))
+						{
+							out.close();
+							out = null;
+							out = openFile(++fileNo);
+							bytesInFile = 0;
+							ticksInFile = 0;
+						}
+					}
+				}
+
+				//NB: not to keep the recorded data only in the memory for too long
+				out.flush();
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Stream recorder stopped, error: "+e.getMessage());
+		}
+		finally {
+			try {
+				if (out != null) out.close();
+			}
+			catch (IOException e) {
+				System.out.println("Stream recorder: Cannot close the recording: "+e.getMessage());
+			}
+			System.out.println("Stream recorder: Stopped, "+reportStats());
+		}
+	}
+
+	private
+	OutputStream openFile(final int fileNo)
+	throws IOException
+	{
+		final Path f = fileNo == 0 ? file : numberedFile(fileNo);
+		System.out.println("Stream recorder: Recording into "+f);
+		return new BufferedOutputStream(Files.newOutputStream(f), WRITE_BUFFER_SIZE);
+	}
+
+	/** returns the file name with the "_NNNN" inserted before its extension */
+	Path numberedFile(final int fileNo)
+	{
+		final String name = file.getFileName().toString();
+		final int dot = name.lastIndexOf('.');
+		final String numbered = dot > 0 ? String.format("%s_%04d%s", name.substring(0,dot), fileNo, name.substring(dot))
+		                                : String.format("%s_%04d", name, fileNo);
+		return file.resolveSibling(numbered);
+	}
+
+	//--------------------------------------------
+
+	/** returns how many messages were not recorded because of the full queue */
+	public
+	long getOverflownMessages()
+	{
+	 synchronized (queue)
+	 {
+		return overflownMessages;
+	 }
+	}
+
+	/** returns a one-line report on the state of this recorder */
+	public
+	String reportStats()
+	{
+	 synchronized (queue)
+	 {
+		return "written "+writtenMessages+" msgs ("+(writtenBytes >> 10)+" kB), queued "
+		     +queue.size()+" msgs ("+(queuedBytes >> 10)+"/"+(maxQueuedBytes >> 10)+" kB), overflown "
+		     +overflownMessages+" msgs";
+	 }
+	}
+}
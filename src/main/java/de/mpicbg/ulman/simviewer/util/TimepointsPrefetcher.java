@@ -0,0 +1,235 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Vladimír Ulman
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package de.mpicbg.ulman.simviewer.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads ahead a FlightRecording: in its own thread (the run() method), it maps
+ * the time points one after another, starting from the given one, and parses
+ * their messages into ready-to-apply ElementsBatch-es. Up to 'depth' such
+ * prefetched time points are kept, the consumer takes them with poll() in
+ * the order of the time points and returns them with release() after they
+ * have been applied (so that the batches can be re-used). The consumer may
+ * also make the reading ahead continue from a later time point, see skipTo().
+ *
+ * This file was created and is being developed by Vladimir Ulman, 2019.
+ */
+public class TimepointsPrefetcher implements Runnable
+{
+	/** constructor to read ahead the given recording, starting from the time
+	    point 'firstTp', parsing with the given NetMessagesProcessor (whose
+	    parseMsg() is used only) and keeping up to 'depth' time points */
+	public TimepointsPrefetcher(final FlightRecording recording, final NetMessagesProcessor parser,
+	                            final int firstTp, final int depth)
+	{
+		if (depth < 1)
+			throw new IllegalArgumentException("TimepointsPrefetcher: Depth must be at least 1.");
+
+		this.recording = recording;
+		this.parser = parser;
+		this.nextTp = firstTp;
+		this.depth = depth;
+		ready = new ArrayDeque<>(depth);
+	}
+
+	private final FlightRecording recording;
+	private final NetMessagesProcessor parser;
+	/** the time point to be read next, access only within synchronized(ready) */
+	private int nextTp;
+
+	/** how many times the skipTo() was used, access only within synchronized(ready) */
+	private int skips = 0;
+
+	/** the max number of prefetched time points */
+	public final int depth;
+
+	/** one parsed time point */
+	public static class Timepoint
+	{
+		/** which time point this is */
+		public int timepoint;
+
+		/** the parsed messages of this time point, in their order */
+		public final List<ElementsBatch> batches = new ArrayList<>();
+	}
+
+	/** the prefetched time points, access only within synchronized(ready) */
+	private final ArrayDeque<Timepoint> ready;
+
+	/** the batches available for re-use, access only within synchronized(pool) */
+	private final ArrayDeque<ElementsBatch> pool = new ArrayDeque<>();
+
+	/** has the reading ahead reached the end of the recording, or has it stopped? */
+	private volatile boolean finished = false;
+
+	//--------------------------------------------
+
+	/** returns the next prefetched time point, or null if none is ready (yet) */
+	public
+	Timepoint poll()
+	{
+	 synchronized (ready)
+	 {
+		final Timepoint tp = ready.pollFirst();
+		if (tp != null) ready.notifyAll();
+		return tp;
+	 }
+	}
+
+	/** returns true when there is no time point ready and no more will come */
+	public
+	boolean isFinished()
+	{
+	 synchronized (ready)
+	 {
+		return finished && ready.isEmpty();
+	 }
+	}
+
+	/** returns the number of time points ready to be taken */
+	public
+	int getReadyCount()
+	{
+	 synchronized (ready)
+	 {
+		return ready.size();
+	 }
+	}
+
+	/** makes the reading ahead continue from the given time point, the already
+	    prefetched time points are thrown away; returns false if the reading
+	    ahead has finished already (and nothing was changed) */
+	public
+	boolean skipTo(final int timepoint)
+	{
+	 synchronized (ready)
+	 {
+		if (finished) return false;
+
+		for (Timepoint tp : ready) release(tp);
+		ready.clear();
+		nextTp = timepoint;
+		++skips;
+		ready.notifyAll();
+		return true;
+	 }
+	}
+
+	/** gives back the time point (obtained with poll()) for its batches to be re-used */
+	public
+	void release(final Timepoint tp)
+	{
+	 synchronized (pool)
+	 {
+		pool.addAll(tp.batches);
+	 }
+		tp.batches.clear();
+	}
+
+	//--------------------------------------------
+
+	/** reads ahead until the end of the recording, or until interrupted */
+	public void run()
+	{
+		try {
+			while (true)
+			{
+				final int t, skipsBefore;
+			 synchronized (ready)
+			 {
+				//NB: deciding under the lock so that the skipTo() knows if it is too late
+				if (nextTp >= recording.getTimepointsCount())
+				{
+					finished = true;
+					break;
+				}
+				t = nextTp++;
+				skipsBefore = skips;
+			 }
+
+				final Timepoint tp = new Timepoint();
+				tp.timepoint = t;
+
+				final ByteBuffer tpData = recording.mapTimepoint(t);
+				ElementsBatch batch = obtainBatch();
+				ByteBuffer msg;
+				while ((msg = FlightRecording.nextMessage(tpData)) != null)
+				{
+					if (parser.parseMsg(msg,batch))
+					{
+						tp.batches.add(batch);
+						batch = obtainBatch();
+					}
+				}
+				returnBatch(batch);
+
+			 synchronized (ready)
+			 {
+				while (ready.size() >= depth && skips == skipsBefore) ready.wait();
+				//NB: a time point read before a skipTo() is not wanted anymore
+				if (skips == skipsBefore) ready.addLast(tp);
+				else release(tp);
+			 }
+			}
+		}
+		catch (InterruptedException e) {
+			//stopped by the consumer, that's fine
+		}
+		catch (IOException e) {
+			System.out.println("TimepointsPrefetcher: Stopped, error reading the recording: "+e.getMessage());
+		}
+		finally {
+			finished = true;
+		}
+	}
+
+	private
+	ElementsBatch obtainBatch()
+	{
+	 synchronized (pool)
+	 {
+		return pool.isEmpty() ? new ElementsBatch() : pool.removeFirst();
+	 }
+	}
+
+	private
+	void returnBatch(final ElementsBatch batch)
+	{
+	 synchronized (pool)
+	 {
+		pool.addLast(batch);
+	 }
+	}
+}
@@ -0,0 +1,115 @@
+#version 450 core
+#extension GL_ARB_separate_shader_objects: enable
+
+/*
+   This file is a copy of the ParticleDemo.vert file originally created
+   by (I believe) Kyle Harrington, University of Idaho and Ulrik Guenther,
+   MPI-CBG. Original was here (as of 7th Aug 2019):
+   https://github.com/scenerygraphics/sciview/blob/master/src/main/resources/sc/iview/commands/demo/ParticleDemo.vert
+
+   Btw, the file seems to be color-acknowledged variant of the
+   DefaultDeferredInstanced.vert from the scenery project, compare to:
+   https://github.com/scenerygraphics/scenery/blob/master/src/main/resources/graphics/scenery/backends/shaders/DefaultDeferredInstanced.vert
+*/
+
+/*
+   This is the DisplayScene.vert that additionally shapes the head of the Arrow:
+   the vertices of the head (recognized with their TexCoord.y = 1) keep their
+   absolute lateral distance from the arrow's axis, unless the arrow (its
+   instance) is shorter than 1 unit in which case the head is narrowed
+   proportionally -- just like the VectorSH does with its separate head.
+   The instance's length is the ratio of the scales of its y and x axes.
+*/
+
+layout(location = 0) in vec3 vertexPosition;
+layout(location = 1) in vec3 vertexNormal;
+layout(location = 2) in vec2 vertexTexCoord;
+layout(location = 3) in mat4 iModelMatrix;
+layout(location = 7) in vec4 vertexColor;
+
+layout(location = 0) out VertexData {
+    vec3 FragPosition;
+    vec3 Normal;
+    vec2 TexCoord;
+    vec4 Color;
+} Vertex;
+
+layout(set = 2, binding = 0) uniform Matrices {
+    mat4 ModelMatrix;
+    mat4 NormalMatrix;
+    int isBillboard;
+} ubo;
+
+struct Light {
+    float Linear;
+    float Quadratic;
+    float Intensity;
+    float Radius;
+    vec4 Position;
+    vec4 Color;
+};
+
+layout(set = 1, binding = 0) uniform LightParameters {
+    mat4 ViewMatrices[2];
+    mat4 InverseViewMatrices[2];
+    mat4 ProjectionMatrix;
+    mat4 InverseProjectionMatrix;
+    vec3 CamPosition;
+};
+
+layout(set = 0, binding = 0) uniform VRParameters {
+    mat4 projectionMatrices[2];
+    mat4 inverseProjectionMatrices[2];
+    mat4 headShift;
+    float IPD;
+    int stereoEnabled;
+} vrParameters;
+
+layout(push_constant) uniform currentEye_t {
+    int eye;
+} currentEye;
+
+void main()
+{
+mat4 mv;
+    mat4 nMVP;
+    mat4 projectionMatrix;
+
+    mv = (vrParameters.stereoEnabled ^ 1) * ViewMatrices[0] * iModelMatrix + (vrParameters.stereoEnabled * ViewMatrices[currentEye.eye] * iModelMatrix);
+    projectionMatrix = (vrParameters.stereoEnabled ^ 1) * ProjectionMatrix + vrParameters.stereoEnabled * vrParameters.projectionMatrices[currentEye.eye];
+
+    if(ubo.isBillboard > 0) {
+        mv[0][0] = 1.0f;
+        mv[0][1] = .0f;
+        mv[0][2] = .0f;
+
+        mv[1][0] = .0f;
+        mv[1][1] = 1.0f;
+        mv[1][2] = .0f;
+
+        mv[2][0] = .0f;
+        mv[2][1] = .0f;
+        mv[2][2] = 1.0f;
+    }
+
+    nMVP = projectionMatrix*mv;
+
+    vec3 position = vertexPosition;
+    vec3 normal = vertexNormal;
+    if(vertexTexCoord.y > 0.5f) {
+        float arrowLength = length(iModelMatrix[1].xyz) / length(iModelMatrix[0].xyz);
+        float xzScale = min(arrowLength, 1.0f);
+        position.xz *= xzScale;
+        normal.y *= xzScale;
+    }
+
+    mat4 normalMatrix = transpose(inverse(iModelMatrix));
+    Vertex.Normal = mat3(normalMatrix) * normalize(normal);
+    Vertex.TexCoord = vertexTexCoord;
+    Vertex.FragPosition = vec3(iModelMatrix * vec4(position, 1.0));
+    Vertex.Color = vertexColor;
+
+    gl_Position = nMVP * vec4(position, 1.0);
+}
+
+
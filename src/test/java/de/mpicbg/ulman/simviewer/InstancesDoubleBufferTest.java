@@ -0,0 +1,85 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import de.mpicbg.ulman.simviewer.util.InstancesDoubleBuffer;
+
+public class InstancesDoubleBufferTest
+{
+	//the "scene": the instance of the element in the slot 's' is the string "s",
+	//and the index of its instance is kept in instanceAt[s] (or -1)
+	static final InstancesDoubleBuffer<String> buffer = new InstancesDoubleBuffer<>();
+	static final int[] instanceAt = new int[100];
+
+	static void add(final int slot)
+	{
+		instanceAt[slot] = buffer.add(String.valueOf(slot), slot);
+	}
+
+	static void remove(final int slot)
+	{
+		final int at = instanceAt[slot];
+		final int moved = buffer.removeAt(at);
+		if (moved > -1) instanceAt[moved] = at;
+		instanceAt[slot] = -1;
+	}
+
+	public static void main(String... args)
+	{
+		Arrays.fill(instanceAt, -1);
+		int errors = 0;
+
+		//the first "tick": elements 0..9
+		for (int s = 0; s < 10; ++s) add(s);
+		errors += check("before the 1st publish", buffer.getFront());
+		buffer.publish();
+		errors += check("after the 1st publish", buffer.getFront(), 0,1,2,3,4,5,6,7,8,9);
+		final List<String> firstFront = buffer.getFront();
+
+		//the second "tick": add, update and remove within one batch
+		add(10);                 //added only
+		add(11); remove(11);     //added and removed
+		add(12);                 //added, then "updated" (the instance stays as it is)
+		remove(3);               //removed from the middle
+		remove(9);               //removed the last one
+		remove(10); add(10);     //removed and re-added
+
+		//nothing has changed on the display so far
+		errors += check("the 2nd batch, before its publish", buffer.getFront(), 0,1,2,3,4,5,6,7,8,9);
+		buffer.publish();
+		errors += check("the 2nd batch, after its publish", buffer.getFront(), 0,1,2,4,5,6,7,8,10,12);
+		errors += check("the 1st published list, kept intact", firstFront, 0,1,2,3,4,5,6,7,8,9);
+
+		//the third "tick": no changes, the front list is not replaced
+		final List<String> secondFront = buffer.getFront();
+		if (buffer.publish() || buffer.getFront() != secondFront)
+		{
+			System.out.println("the unchanged front list was replaced");
+			++errors;
+		}
+
+		//the kept indices must point on the right instances
+		for (int s = 0; s < instanceAt.length; ++s)
+			if (instanceAt[s] > -1 && (buffer.getSlot(instanceAt[s]) != s
+			    || !buffer.getBack().get(instanceAt[s]).equals(String.valueOf(s))))
+			{
+				System.out.println("wrong index of the element "+s);
+				++errors;
+			}
+
+		System.out.println(errors == 0 ? "all OK" : errors+" ERRORS");
+	}
+
+	static int check(final String msg, final List<String> list, final int... expectedSlots)
+	{
+		final Set<String> expected = new HashSet<>();
+		for (int s : expectedSlots) expected.add(String.valueOf(s));
+
+		final boolean ok = list.size() == expected.size() && expected.equals(new HashSet<>(list));
+		System.out.println(msg+": "+list+(ok ? " OK" : " WRONG, expected "+expected));
+		return ok ? 0 : 1;
+	}
+}
@@ -0,0 +1,64 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import de.mpicbg.ulman.simviewer.util.InstancesIndex;
+
+public class InstancesIndexTest
+{
+	public static void main(String... args)
+	{
+		final int N = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int R = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		System.out.println("removing "+R+" of "+N+" instances:");
+
+		//the elements (given with their slots) to be removed, in a random order
+		final int[] toBeRemoved = new int[N];
+		for (int i = 0; i < N; ++i) toBeRemoved[i] = i;
+		final Random rnd = new Random(42);
+		for (int i = N-1; i > 0; --i)
+		{
+			final int j = rnd.nextInt(i+1);
+			final int t = toBeRemoved[i]; toBeRemoved[i] = toBeRemoved[j]; toBeRemoved[j] = t;
+		}
+
+		for (int round = 0; round < 3; ++round)
+		{
+			//the instances, as the DisplaySceneAllInstancing has them: one per slot
+			final Object[] nodes = new Object[N];
+			for (int i = 0; i < N; ++i) nodes[i] = new Object();
+
+			//the List.remove(Object) is way too slow, so only its first R/100 removals are measured
+			final List<Object> list = new ArrayList<>(N);
+			for (Object n : nodes) list.add(n);
+			long time = System.nanoTime();
+			for (int r = 0; r < R/100; ++r) list.remove(nodes[toBeRemoved[r]]);
+			final long listTime = (System.nanoTime() - time) * 100;
+
+			final InstancesIndex<Object> index = new InstancesIndex<>(new ArrayList<>(N));
+			final int[] instanceAt = new int[N];
+			for (int i = 0; i < N; ++i) instanceAt[i] = index.add(nodes[i], i);
+			time = System.nanoTime();
+			for (int r = 0; r < R; ++r)
+			{
+				final int at = instanceAt[toBeRemoved[r]];
+				final int moved = index.removeAt(at);
+				if (moved > -1) instanceAt[moved] = at;
+			}
+			final long indexTime = System.nanoTime() - time;
+
+			System.out.printf("round %d: List.remove() %8.1f ms (extrapolated), InstancesIndex.removeAt() %6.1f ms%n",
+				round, listTime/1e6, indexTime/1e6);
+
+			//check: the remaining instances are exactly the not-removed ones, and are where they are said to be
+			final boolean[] removed = new boolean[N];
+			for (int r = 0; r < R; ++r) removed[toBeRemoved[r]] = true;
+			boolean ok = index.size() == N-R;
+			for (int i = 0; i < N && ok; ++i)
+				if (!removed[i]) ok = index.instances.get(instanceAt[i]) == nodes[i] && index.getSlot(instanceAt[i]) == i;
+			if (!ok) System.out.println("ERROR: the index is inconsistent");
+		}
+	}
+}
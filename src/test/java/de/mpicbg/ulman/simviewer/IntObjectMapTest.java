@@ -0,0 +1,138 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import de.mpicbg.ulman.simviewer.util.IntObjectMap;
+
+public class IntObjectMapTest
+{
+	public static void main(String... args)
+	{
+		System.out.println("consistency check against the HashMap:");
+		checkConsistency();
+
+		//the memory and throughput comparison on the typical scene's IDs
+		final int N = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int[] IDs = createIDs(N);
+		final Object value = new Object();
+		System.out.println("\ncomparison with "+N+" elements:");
+
+		System.out.printf("memory: HashMap %6.1f MB, IntObjectMap %6.1f MB%n",
+			measureMemory(() -> { final Map<Integer,Object> m = new HashMap<>(); for (int ID : IDs) m.put(ID,value); return m; }) / 1e6,
+			measureMemory(() -> { final IntObjectMap<Object> m = new IntObjectMap<>(); for (int ID : IDs) m.put(ID,value); return m; }) / 1e6);
+
+		for (int round = 0; round < 5; ++round)
+		{
+			final Map<Integer,Object> hm = new HashMap<>();
+			final IntObjectMap<Object> im = new IntObjectMap<>();
+
+			long time = System.nanoTime();
+			for (int ID : IDs) hm.put(ID,value);
+			final long putH = System.nanoTime() - time;
+			time = System.nanoTime();
+			for (int ID : IDs) im.put(ID,value);
+			final long putI = System.nanoTime() - time;
+
+			//the update pass of one time point: every element is looked up
+			int found = 0;
+			time = System.nanoTime();
+			for (int ID : IDs) if (hm.get(ID) != null) ++found;
+			final long getH = System.nanoTime() - time;
+			time = System.nanoTime();
+			for (int ID : IDs) if (im.get(ID) != null) ++found;
+			final long getI = System.nanoTime() - time;
+
+			//the garbage collection: every other element is removed while iterating
+			time = System.nanoTime();
+			final Iterator<Integer> it = hm.keySet().iterator();
+			while (it.hasNext()) if ((it.next() & 1) == 0) it.remove();
+			final long gcH = System.nanoTime() - time;
+			time = System.nanoTime();
+			for (int s = im.firstSlot(); s >= 0; s = im.nextSlot(s)) if ((im.keyAt(s) & 1) == 0) im.removeAt(s);
+			final long gcI = System.nanoTime() - time;
+
+			System.out.printf("round %d: put %6.1f vs %6.1f ms, get %6.1f vs %6.1f ms, sweep %6.1f vs %6.1f ms (HashMap vs IntObjectMap), %d/%d left%n",
+				round, putH/1e6, putI/1e6, getH/1e6, getI/1e6, gcH/1e6, gcI/1e6, hm.size(), im.size());
+			if (found != 2*N) System.out.println("ERROR: not all elements were found");
+		}
+	}
+
+	/** IDs of N elements of the ID space of the DisplayScene: up to
+	    250 elements per cell, every other cell has debug elements */
+	static int[] createIDs(final int N)
+	{
+		final int[] IDs = new int[N];
+		for (int n = 0; n < N; ++n)
+		{
+			final int cell = 1 + n/250;
+			final int debug = (cell & 1) * ((n % 250) & 1);
+			IDs[n] = (cell << 17) | (debug << 16) | (n % 250);
+		}
+		return IDs;
+	}
+
+	static void checkConsistency()
+	{
+		final Random rnd = new Random(42);
+		final Map<Integer,Integer> hm = new HashMap<>();
+		final IntObjectMap<Integer> im = new IntObjectMap<>();
+
+		int errors = 0;
+		for (int step = 0; step < 200000; ++step)
+		{
+			final int key = rnd.nextInt(5000) - 100; //NB: incl. few negative ones
+			final int op = rnd.nextInt(10);
+			if (op < 5)
+			{
+				if (!equal(hm.put(key,step), im.put(key,step))) ++errors;
+			}
+			else if (op < 9)
+			{
+				if (!equal(hm.remove(key), im.remove(key))) ++errors;
+			}
+			else if (!equal(hm.get(key), im.get(key))) ++errors;
+
+			if (step % 20000 == 0)
+			{
+				//remove during the iteration
+				final int mod = 2 + rnd.nextInt(3);
+				for (int s = im.firstSlot(); s >= 0; s = im.nextSlot(s))
+					if (im.keyAt(s) % mod == 0) im.removeAt(s);
+				hm.keySet().removeIf(k -> k % mod == 0);
+			}
+		}
+
+		int iterated = 0;
+		for (int s = im.firstSlot(); s >= 0; s = im.nextSlot(s), ++iterated)
+			if (!equal(hm.get(im.keyAt(s)), im.valueAt(s))) ++errors;
+		if (iterated != hm.size() || im.size() != hm.size()) ++errors;
+
+		System.out.println(errors == 0 ? "OK, "+im.size()+" mappings left" : "ERROR: "+errors+" differences found");
+	}
+
+	static boolean equal(final Object a, final Object b)
+	{
+		return a == null ? b == null : a.equals(b);
+	}
+
+	interface Builder
+	{
+		Object build();
+	}
+
+	/** returns the (approximate) number of bytes retained by the built object */
+	static long measureMemory(final Builder builder)
+	{
+		final Runtime rt = Runtime.getRuntime();
+		System.gc(); System.gc();
+		final long before = rt.totalMemory() - rt.freeMemory();
+		final Object o = builder.build();
+		System.gc(); System.gc();
+		final long after = rt.totalMemory() - rt.freeMemory();
+		if (o.hashCode() == 42) System.out.print(""); //NB: keeps the 'o' alive
+		return after - before;
+	}
+}
@@ -0,0 +1,121 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+import de.mpicbg.ulman.simviewer.util.MessageTokenizer;
+
+public class MessageTokenizerTest
+{
+	public static void main(String... args)
+	{
+		System.out.println("grammar checks:");
+		reportParsing("v1 points 2 dim 3 10 1.5 -2.25 3e2 4 1  11 0 0 0 0.5 7");
+		reportParsing("v2 points 1 dim 5 10 1.5 -2.25 3 99 98 4 0.1 0.2 0.3");
+		reportParsing("v2 points 1 dim 2\t10\n1.5 -.25 +4 0.1 0.2 0.3");
+
+		//the "throughput" comparison on a typical large message
+		final int N = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		final String msg = createPointsMsg(N);
+		final byte[] msgBytes = msg.getBytes(StandardCharsets.ISO_8859_1);
+		System.out.println("\nthroughput checks on a message with "+N+" points ("+msgBytes.length+" bytes):");
+
+		//warm-up and cross-check of the two parsers
+		final double sumS = parseWithScanner(msg);
+		final double sumT = parseWithTokenizer(msgBytes);
+		System.out.println("checksums: Scanner = "+sumS+", MessageTokenizer = "+sumT);
+
+		for (int round = 0; round < 5; ++round)
+		{
+			long time = System.nanoTime();
+			parseWithScanner(msg);
+			final long timeS = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			parseWithTokenizer(msgBytes);
+			final long timeT = System.nanoTime() - time;
+
+			System.out.printf("round %d: Scanner %7.2f ms, MessageTokenizer %7.2f ms, speed-up %5.1fx%n",
+				round, timeS/1e6, timeT/1e6, (double)timeS/(double)timeT);
+		}
+	}
+
+	static String createPointsMsg(final int N)
+	{
+		final Random rnd = new Random(42);
+		final StringBuilder sb = new StringBuilder("v2 points ").append(N).append(" dim 3");
+		for (int n = 0; n < N; ++n)
+		{
+			sb.append(' ').append((n+1) << 17);
+			sb.append(' ').append(500.f*rnd.nextFloat());
+			sb.append(' ').append(500.f*rnd.nextFloat());
+			sb.append(' ').append(500.f*rnd.nextFloat());
+			sb.append(' ').append(4.f*rnd.nextFloat());
+			sb.append(' ').append(rnd.nextFloat());
+			sb.append(' ').append(rnd.nextFloat());
+			sb.append(' ').append(rnd.nextFloat());
+		}
+		return sb.toString();
+	}
+
+	static double parseWithScanner(final String msg)
+	{
+		final Scanner s = new Scanner(msg).useLocale(Locale.ENGLISH);
+		s.next();
+		s.next();
+		final int N = s.nextInt();
+		s.next("dim");
+		final int D = s.nextInt();
+
+		double sum = 0;
+		for (int n = 0; n < N; ++n)
+		{
+			sum += s.nextInt() >> 17;
+			for (int d = 0; d < D+4; ++d) sum += s.nextFloat();
+		}
+		s.close();
+		return sum;
+	}
+
+	static double parseWithTokenizer(final byte[] msg)
+	{
+		final MessageTokenizer s = new MessageTokenizer().reset(ByteBuffer.wrap(msg));
+		s.skip();
+		s.skip();
+		final int N = s.nextInt();
+		s.nextIs("dim");
+		final int D = s.nextInt();
+
+		double sum = 0;
+		for (int n = 0; n < N; ++n)
+		{
+			sum += s.nextInt() >> 17;
+			for (int d = 0; d < D+4; ++d) sum += s.nextFloat();
+		}
+		return sum;
+	}
+
+	private static void reportParsing(final String msg)
+	{
+		final Scanner sc = new Scanner(msg).useLocale(Locale.ENGLISH);
+		final MessageTokenizer mt = new MessageTokenizer().reset(ByteBuffer.wrap(msg.getBytes(StandardCharsets.ISO_8859_1)));
+		sc.next(); sc.next(); mt.skip(); mt.skip();
+
+		final StringBuilder sbS = new StringBuilder();
+		final StringBuilder sbT = new StringBuilder();
+		sbS.append(sc.nextInt()).append(' ').append(sc.next()).append(' ').append(sc.nextInt());
+		sbT.append(mt.nextInt()).append(' ').append(mt.nextIs("dim") ? "dim" : "???").append(' ').append(mt.nextInt());
+		sbS.append(" |");
+		sbT.append(" |");
+		while (sc.hasNext()) sbS.append(' ').append(sc.nextFloat());
+		while (mt.hasNext()) sbT.append(' ').append(mt.nextFloat());
+		sc.close();
+
+		System.out.println(msg.replaceAll("\\s+"," "));
+		System.out.println("  Scanner          -> "+sbS);
+		System.out.println("  MessageTokenizer -> "+sbT);
+	}
+}
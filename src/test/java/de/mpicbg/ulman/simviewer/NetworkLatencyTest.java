@@ -0,0 +1,95 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import java.nio.ByteBuffer;
+import org.zeromq.SocketType;
+import org.zeromq.ZMQ;
+import de.mpicbg.ulman.simviewer.util.NetMessagesProcessor;
+
+public class NetworkLatencyTest
+{
+	public static void main(String... args)
+	throws InterruptedException
+	{
+		final int port   = args.length > 0 ? Integer.parseInt(args[0]) : 8799;
+		final int bursts = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		final int burstSize = 100;
+
+		//the receiving side: the real listener, but the messages are only timed
+		final LatencyRecorder recorder = new LatencyRecorder(bursts*burstSize);
+		final Thread listener = new Thread( new CommandFromNetwork(recorder, port) );
+		listener.start();
+
+		//the sending side: a local producer socket
+		final ZMQ.Context zmqContext = ZMQ.context(1);
+		final ZMQ.Socket socket = zmqContext.socket(SocketType.PAIR);
+		socket.connect("tcp://localhost:"+port);
+
+		//bursts of messages with pauses in between, the pauses are (much) longer than
+		//the time needed to process a burst, so the latency should be close to zero
+		for (int b = 0; b < bursts; ++b)
+		{
+			for (int m = 0; m < burstSize; ++m)
+				socket.send("v1 tick "+System.nanoTime());
+			Thread.sleep(100);
+		}
+
+		//wait until everything has arrived, but not forever
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (recorder.received < bursts*burstSize && System.currentTimeMillis() < deadline)
+			Thread.sleep(50);
+
+		listener.interrupt();
+		listener.join();
+		socket.close();
+		zmqContext.term();
+
+		recorder.report();
+		if (recorder.received < bursts*burstSize || recorder.maxLatency() > 100e6)
+		{
+			System.out.println("FAILED: messages were lost or delayed too much");
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	static class LatencyRecorder extends NetMessagesProcessor
+	{
+		LatencyRecorder(final int expectedMessages)
+		{
+			super(null);
+			latencies = new long[expectedMessages];
+		}
+
+		final long[] latencies;
+		volatile int received = 0;
+
+		@Override
+		public void processMsg(final ByteBuffer msg)
+		{
+			final long now = System.nanoTime();
+			final byte[] text = new byte[msg.remaining()];
+			msg.get(text);
+			final long sent = Long.parseLong(new String(text).substring(8).trim());
+
+			if (received < latencies.length) latencies[received] = now - sent;
+			++received;
+		}
+
+		long maxLatency()
+		{
+			long max = 0;
+			for (int i = 0; i < Math.min(received,latencies.length); ++i) max = Math.max(max,latencies[i]);
+			return max;
+		}
+
+		void report()
+		{
+			long sum = 0;
+			final int N = Math.min(received,latencies.length);
+			for (int i = 0; i < N; ++i) sum += latencies[i];
+			System.out.printf("received %d of %d messages, latency: mean %.3f ms, max %.3f ms%n",
+				received, latencies.length, N > 0 ? sum/1e6/N : 0.0, maxLatency()/1e6);
+		}
+	}
+}
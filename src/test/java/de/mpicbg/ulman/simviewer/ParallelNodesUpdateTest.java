@@ -0,0 +1,176 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.joml.Vector3f;
+import graphics.scenery.Node;
+import de.mpicbg.ulman.simviewer.elements.Line;
+import de.mpicbg.ulman.simviewer.elements.VectorSH;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
+import de.mpicbg.ulman.simviewer.util.ElementsStore;
+import de.mpicbg.ulman.simviewer.util.ParallelRanges;
+
+/** times the per-element work that the DisplaySceneAllInstancing runs through
+    the ParallelRanges.forEachChunk(), once as action.apply(0,N) and once in chunks,
+    on the very same elements: the transforms of the lines and vectors updated in
+    a batch (addUpdateOrRemoveLines/Vectors()), the rescaling of all vectors
+    (setVectorsStretch()), and the world matrices of all elements
+    (updateWorldOfAllElements()); the lines and the vectors are tested one
+    after another not to hold the Nodes of both at the same time */
+public class ParallelNodesUpdateTest
+{
+	public static void main(String... args)
+	{
+		final int N = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		System.out.println("processing "+N+" lines and "+N+" vectors, common pool parallelism "+parallelism+":");
+		if (parallelism < 2)
+			System.out.println("NB: forEachChunk() runs inline with this parallelism, both columns time the same code");
+
+		final float headLengthRatio = 0.2f;
+		int errors;
+
+		//lines
+		{
+			final Line[] serial   = createLines(N);
+			final Line[] parallel = createLines(N);
+
+			//as in the addUpdateOrRemoveLines()
+			final ParallelRanges.RangeAction serialBatch   = (from,to) -> updateLines(serial, from,to);
+			final ParallelRanges.RangeAction parallelBatch = (from,to) -> updateLines(parallel, from,to);
+			//as in the updateWorldOfAllElements()
+			final ParallelRanges.RangeAction serialWorld   = (from,to) -> { for (int s = from; s < to; ++s) serial[s].node.updateWorld(false,true); };
+			final ParallelRanges.RangeAction parallelWorld = (from,to) -> { for (int s = from; s < to; ++s) parallel[s].node.updateWorld(false,true); };
+
+			for (int round = 0; round < 5; ++round)
+				report("lines", round,
+					time( () -> serialBatch.apply(0,N) ),
+					time( () -> ParallelRanges.forEachChunk(0,N, parallelBatch) ),
+					time( () -> serialWorld.apply(0,N) ),
+					time( () -> ParallelRanges.forEachChunk(0,N, parallelWorld) ));
+
+			errors = 0;
+			for (int s = 0; s < N; ++s)
+				if (!serial[s].node.getWorld().equals(parallel[s].node.getWorld())) ++errors;
+			System.out.println(errors == 0 ? "all lines are OK" : errors+" lines are WRONG");
+		}
+
+		//vectors
+		{
+			final VectorSH[] serial   = createVectors(N);
+			final VectorSH[] parallel = createVectors(N);
+			final float[] stretch = { 1.f };
+
+			//as in the addUpdateOrRemoveVectors()
+			final ParallelRanges.RangeAction serialBatch   = (from,to) -> updateVectors(serial, stretch[0],headLengthRatio, from,to);
+			final ParallelRanges.RangeAction parallelBatch = (from,to) -> updateVectors(parallel, stretch[0],headLengthRatio, from,to);
+			//as in the setVectorsStretch()
+			final ParallelRanges.RangeAction serialStretch   = (from,to) -> stretchVectors(serial, stretch[0],headLengthRatio, from,to);
+			final ParallelRanges.RangeAction parallelStretch = (from,to) -> stretchVectors(parallel, stretch[0],headLengthRatio, from,to);
+
+			for (int round = 0; round < 5; ++round)
+			{
+				stretch[0] = 1.f + 0.1f*round;
+				report("vectors", round,
+					time( () -> serialBatch.apply(0,N) ),
+					time( () -> ParallelRanges.forEachChunk(0,N, parallelBatch) ),
+					time( () -> serialStretch.apply(0,N) ),
+					time( () -> ParallelRanges.forEachChunk(0,N, parallelStretch) ));
+			}
+
+			errors = 0;
+			for (int s = 0; s < N; ++s)
+				if (!serial[s].node.getWorld().equals(parallel[s].node.getWorld())
+				 || !serial[s].nodeHead.getWorld().equals(parallel[s].nodeHead.getWorld())) ++errors;
+			System.out.println(errors == 0 ? "all vectors are OK" : errors+" vectors are WRONG");
+		}
+	}
+
+	static Line[] createLines(final int N)
+	{
+		final ElementsStore store = new ElementsStore(ElementsBatch.Type.LINES, N);
+		final Line[] lines = new Line[N];
+		final Random rnd = new Random(42);
+		for (int i = 0; i < N; ++i)
+		{
+			final Line l = new Line(new Node(), store, store.allocate(i));
+			l.setBase(500.f*rnd.nextFloat(), 500.f*rnd.nextFloat(), 500.f*rnd.nextFloat());
+			l.setVector(10.f*rnd.nextFloat()-5.f, 10.f*rnd.nextFloat()-5.f, 10.f*rnd.nextFloat()-5.f);
+			l.syncNode();
+			lines[l.slot] = l;
+		}
+		return lines;
+	}
+
+	static VectorSH[] createVectors(final int N)
+	{
+		final ElementsStore store = new ElementsStore(ElementsBatch.Type.VECTORS, N);
+		final VectorSH[] vectors = new VectorSH[N];
+		final Random rnd = new Random(42);
+		for (int i = 0; i < N; ++i)
+		{
+			final VectorSH v = new VectorSH(new Node(), new Node(), store, store.allocate(i));
+			v.setBase(500.f*rnd.nextFloat(), 500.f*rnd.nextFloat(), 500.f*rnd.nextFloat());
+			v.setVector(10.f*rnd.nextFloat()-5.f, 10.f*rnd.nextFloat()-5.f, 10.f*rnd.nextFloat()-5.f);
+			v.syncNode();
+			vectors[v.slot] = v;
+		}
+		return vectors;
+	}
+
+	static void updateLines(final Line[] lines, final int from, final int to)
+	{
+		final Vector3f dir = new Vector3f();
+		for (int i = from; i < to; ++i)
+		{
+			final Line n = lines[i];
+			n.applyScale(1f);
+			DisplayScene.rotateNodeToDir(n.node, n.getVector(dir));
+			n.node.setNeedsUpdate(true);
+		}
+	}
+
+	static void updateVectors(final VectorSH[] vectors, final float stretch, final float headLengthRatio,
+	                          final int from, final int to)
+	{
+		final Vector3f dir = new Vector3f();
+		for (int i = from; i < to; ++i)
+		{
+			final VectorSH n = vectors[i];
+			n.applyScale(stretch,headLengthRatio);
+			DisplayScene.rotateNodeToDir(n.node, n.getVector(dir));
+			n.node.setNeedsUpdate(true);
+			n.nodeHead.setRotation(n.node.getRotation());
+			n.nodeHead.setNeedsUpdate(true);
+		}
+	}
+
+	static void stretchVectors(final VectorSH[] vectors, final float stretch, final float headLengthRatio,
+	                           final int from, final int to)
+	{
+		for (int s = from; s < to; ++s)
+		{
+			final VectorSH n = vectors[s];
+			n.applyScale(stretch,headLengthRatio);
+			n.node.updateWorld(false,true);
+			n.nodeHead.updateWorld(false,true);
+		}
+	}
+
+	static void report(final String what, final int round,
+	                   final long batchSerial, final long batchParallel,
+	                   final long allSerial, final long allParallel)
+	{
+		System.out.printf("%s round %d: batch apply(0,N) %7.1f ms, forEachChunk() %7.1f ms;"
+			+"  all apply(0,N) %7.1f ms, forEachChunk() %7.1f ms%n",
+			what, round, batchSerial/1e6, batchParallel/1e6, allSerial/1e6, allParallel/1e6);
+	}
+
+	static long time(final Runnable work)
+	{
+		final long time = System.nanoTime();
+		work.run();
+		return System.nanoTime() - time;
+	}
+}
@@ -0,0 +1,49 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import de.mpicbg.ulman.simviewer.util.ProducersTickMerger;
+
+public class ProducersTickMergerTest
+{
+	public static void main(String... args)
+	{
+		final byte[] A = { 1 }, B = { 2 }, C = { 3 };
+
+		//all seen so far must tick
+		ProducersTickMerger m = new ProducersTickMerger(0);
+		m.registerProducer(A);
+		m.registerProducer(B);
+		check(!m.tickFrom(A), "A alone shall not complete the round");
+		check(!m.tickFrom(A), "A again shall not complete the round");
+		check( m.tickFrom(B), "B shall complete the 1st round");
+		check( m.tickFrom(B), "B shall complete the 2nd round (A is ahead)");
+		check(!m.tickFrom(B), "B is now ahead");
+
+		//the goodbye of the slow one completes the waiting rounds
+		m.tickFrom(B);
+		check(m.unregisterProducer(A) == 2, "A's goodbye shall complete the two rounds of B");
+		check(m.unregisterProducer(A) == 0, "A is already gone");
+		check(m.tickFrom(B), "B alone shall complete the round");
+		check(m.getMergedTicks() == 5, "5 merged ticks expected, got "+m.getMergedTicks());
+
+		//the expected producers must be seen first, even if some has left meanwhile
+		m = new ProducersTickMerger(3);
+		m.stallWarningTicks = 2;
+		m.tickFrom(A);
+		m.tickFrom(B);
+		check(m.unregisterProducer(A) == 0, "C has not been seen yet");
+		check(!m.tickFrom(B), "C has not been seen yet");
+		check( m.tickFrom(C), "C shall complete the round");
+		check(m.unregisterProducer(C) == 1, "C's goodbye shall complete the round of B");
+		check(m.getProducersCount() == 1, "only B shall remain");
+
+		//the last one leaving does not produce any tick
+		check(m.unregisterProducer(B) == 0, "nobody is left to tick");
+		System.out.println("OK");
+	}
+
+	static void check(final boolean cond, final String msg)
+	{
+		if (!cond) throw new IllegalStateException("FAILED: "+msg);
+	}
+}
@@ -0,0 +1,128 @@
+package de.mpicbg.ulman.simviewer;
+
+
+import java.util.Arrays;
+import java.util.Random;
+import de.mpicbg.ulman.simviewer.util.ElementsBatch;
+import de.mpicbg.ulman.simviewer.util.ElementsStore;
+import de.mpicbg.ulman.simviewer.util.SpatialGrid;
+
+public class SpatialGridTest
+{
+	public static void main(String... args)
+	{
+		final int N = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		final int Q = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		final Random rnd = new Random(42);
+
+		//the points in the scene box [0,100]^3, and a few outside it
+		final float[] sOffset = { 0, 0, 0 };
+		final float[] sSize = { 100, 100, 100 };
+		final ElementsStore store = new ElementsStore(ElementsBatch.Type.POINTS, 1024);
+		final SpatialGrid grid = new SpatialGrid(store, sOffset,sSize, 16);
+		store.setGrid(grid);
+		for (int i = 0; i < N; ++i)
+		{
+			final int s = store.allocate(i);
+			final float spread = i % 100 == 0 ? 300 : 100;
+			for (int d = 0; d < 3; ++d) store.positions[3*s+d] = spread*rnd.nextFloat() - (spread-100)/2;
+			store.radii[s] = 1;
+			store.elementChanged(s);
+		}
+		System.out.println("testing "+Q+" queries of every kind over "+N+" points:");
+
+		boolean ok = true;
+		final int[] found = new int[N];
+		final int[] cnt = new int[1];
+		for (int q = 0; q < Q && ok; ++q)
+		{
+			//box
+			final float[] min = new float[3], max = new float[3];
+			for (int d = 0; d < 3; ++d)
+			{
+				min[d] = 120*rnd.nextFloat() - 10;
+				max[d] = min[d] + 30*rnd.nextFloat();
+			}
+			cnt[0] = 0;
+			grid.findInBox(min,max, s -> found[cnt[0]++] = s);
+			ok &= sameSlots(found,cnt[0], bruteForce(store, s -> {
+				final float[] p = store.positions;
+				return p[3*s] >= min[0] && p[3*s] <= max[0] && p[3*s+1] >= min[1] && p[3*s+1] <= max[1]
+				    && p[3*s+2] >= min[2] && p[3*s+2] <= max[2]; } ));
+
+			//radius
+			final float cx = 120*rnd.nextFloat()-10, cy = 120*rnd.nextFloat()-10, cz = 120*rnd.nextFloat()-10;
+			final float r = 20*rnd.nextFloat();
+			cnt[0] = 0;
+			grid.findInRadius(cx,cy,cz, r, s -> found[cnt[0]++] = s);
+			ok &= sameSlots(found,cnt[0], bruteForce(store, s -> {
+				final float[] p = store.positions;
+				final float dx = p[3*s]-cx, dy = p[3*s+1]-cy, dz = p[3*s+2]-cz;
+				return dx*dx + dy*dy + dz*dz <= r*r; } ));
+
+			//ray, also the ones that start or pass outside the scene
+			final float[] origin = { 300*rnd.nextFloat()-100, 300*rnd.nextFloat()-100, 300*rnd.nextFloat()-100 };
+			final float[] dir = { 50+50*rnd.nextFloat()-origin[0], 50+50*rnd.nextFloat()-origin[1], 50+50*rnd.nextFloat()-origin[2] };
+			final float maxDistance = q % 10 == 0 ? 1e9f : 5*rnd.nextFloat();
+			final int s = grid.findNearestToRay(origin,dir, maxDistance);
+			final float expected = nearestToRay(store, origin,dir, maxDistance);
+			final float got = s > -1 ? grid.getLastRayDistance() : Float.POSITIVE_INFINITY;
+			if (got != expected)
+			{
+				System.out.println("ray query "+q+": found distance "+got+", expected "+expected);
+				ok = false;
+			}
+		}
+
+		//the non-finite distances must be rejected (not to loop forever)
+		for (float maxDistance : new float[] { Float.POSITIVE_INFINITY, Float.NaN, -1 })
+		{
+			try
+			{
+				grid.findNearestToRay(new float[] {0,0,0}, new float[] {1,1,1}, maxDistance);
+				System.out.println("maxDistance "+maxDistance+" was not rejected");
+				ok = false;
+			}
+			catch (IllegalArgumentException e) { /* expected */ }
+		}
+
+		System.out.println(ok ? "OK" : "FAILED");
+		if (!ok) System.exit(1);
+	}
+
+	interface SlotTest { boolean test(int slot); }
+
+	static int[] bruteForce(final ElementsStore store, final SlotTest t)
+	{
+		return java.util.stream.IntStream.range(0, store.getSlotsCount())
+			.filter(s -> store.isUsed(s) && t.test(s)).toArray();
+	}
+
+	static boolean sameSlots(final int[] found, final int count, final int[] expected)
+	{
+		final int[] f = Arrays.copyOf(found, count);
+		Arrays.sort(f);
+		if (Arrays.equals(f, expected)) return true;
+		System.out.println("found "+count+" slots, expected "+expected.length);
+		return false;
+	}
+
+	/** the same distance computation as in the SpatialGrid, over all points */
+	static float nearestToRay(final ElementsStore store, final float[] origin, final float[] direction, final float maxDistance)
+	{
+		final float len = (float)Math.sqrt(direction[0]*direction[0] + direction[1]*direction[1] + direction[2]*direction[2]);
+		final float[] dir = { direction[0]/len, direction[1]/len, direction[2]/len };
+		final float[] pos = store.positions;
+		float best = Float.POSITIVE_INFINITY;
+		for (int s = 0; s < store.getSlotsCount(); ++s)
+		{
+			if (!store.isUsed(s)) continue;
+			final float vx = pos[3*s]-origin[0], vy = pos[3*s+1]-origin[1], vz = pos[3*s+2]-origin[2];
+			final float along = Math.max(vx*dir[0] + vy*dir[1] + vz*dir[2], 0.f);
+			final float ex = vx - along*dir[0], ey = vy - along*dir[1], ez = vz - along*dir[2];
+			final float dist2 = ex*ex + ey*ey + ez*ez;
+			if (dist2 <= maxDistance*maxDistance && dist2 < best) best = dist2;
+		}
+		return best < Float.POSITIVE_INFINITY ? (float)Math.sqrt(best) : best;
+	}
+}